@@ -11,6 +11,7 @@ import java.lang.ref.WeakReference;
 
 import kr.co.iefriends.pcsx2.activities.MainActivity;
 import kr.co.iefriends.pcsx2.utils.DataDirectoryManager;
+import kr.co.iefriends.pcsx2.utils.ResourceExtractor;
 
 public class NativeApp {
 	static {
@@ -33,6 +34,8 @@ public class NativeApp {
 	public static boolean hasNoNativeBinary;
 	public static boolean hasNativeTools;
 
+	private static final long RESOURCE_WAIT_TIMEOUT_MS = 30_000L;
+
 
 	protected static WeakReference<Context> mContext;
 	private static String sDataRootOverride;
@@ -67,6 +70,14 @@ public class NativeApp {
 		if (context == null) {
 			return;
 		}
+		// Called from native when a resource directory is missing; usually the startup
+		// extraction just hasn't reached it yet.
+		ResourceExtractor.awaitReady(RESOURCE_WAIT_TIMEOUT_MS);
+		// An existing directory may still be missing files, e.g. after an interrupted copy,
+		// so check it against the extraction manifest rather than trusting that it exists.
+		if (ResourceExtractor.ensureExtracted(context, relativePath)) {
+			return;
+		}
 		String assetPath = "resources";
 		if (!TextUtils.isEmpty(relativePath)) {
 			assetPath = assetPath + "/" + relativePath;
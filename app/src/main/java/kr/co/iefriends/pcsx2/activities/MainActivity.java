@@ -142,6 +142,14 @@ import java.util.zip.ZipInputStream;
 import kr.co.iefriends.pcsx2.BuildConfig;
 import kr.co.iefriends.pcsx2.NativeApp;
 import kr.co.iefriends.pcsx2.R;
+import kr.co.iefriends.pcsx2.disc.CsoBlockCache;
+import kr.co.iefriends.pcsx2.disc.CsoWriter;
+import kr.co.iefriends.pcsx2.disc.CueSheet;
+import kr.co.iefriends.pcsx2.disc.DiscFingerprint;
+import kr.co.iefriends.pcsx2.disc.DiscImageSource;
+import kr.co.iefriends.pcsx2.disc.DiscInfo;
+import kr.co.iefriends.pcsx2.disc.HashService;
+import kr.co.iefriends.pcsx2.disc.IsoFileSystem;
 import kr.co.iefriends.pcsx2.hid.HIDDeviceManager;
 import kr.co.iefriends.pcsx2.input.ControllerMappingDialog;
 import kr.co.iefriends.pcsx2.input.ControllerMappingManager;
@@ -149,12 +157,20 @@ import kr.co.iefriends.pcsx2.input.view.DPadView;
 import kr.co.iefriends.pcsx2.input.view.JoystickView;
 import kr.co.iefriends.pcsx2.input.view.PSButtonView;
 import kr.co.iefriends.pcsx2.input.view.PSShoulderButtonView;
+import kr.co.iefriends.pcsx2.utils.ChdConverter;
+import kr.co.iefriends.pcsx2.utils.CoverDecoder;
 import kr.co.iefriends.pcsx2.utils.DataDirectoryManager;
 import kr.co.iefriends.pcsx2.utils.DebugLog;
 import kr.co.iefriends.pcsx2.utils.DeviceProfiles;
 import kr.co.iefriends.pcsx2.utils.DiscordBridge;
+import kr.co.iefriends.pcsx2.utils.DocumentTreeWalker;
+import kr.co.iefriends.pcsx2.utils.GameIndex;
 import kr.co.iefriends.pcsx2.utils.GameSpecificSettingsManager;
+import kr.co.iefriends.pcsx2.utils.LibraryIndex;
+import kr.co.iefriends.pcsx2.utils.LibraryWatcher;
 import kr.co.iefriends.pcsx2.utils.LogcatRecorder;
+import kr.co.iefriends.pcsx2.utils.RedumpIndex;
+import kr.co.iefriends.pcsx2.utils.ResourceExtractor;
 import kr.co.iefriends.pcsx2.utils.RetroAchievementsBridge;
 import kr.co.iefriends.pcsx2.utils.SDLControllerManager;
 import kr.co.iefriends.pcsx2.utils.SDLSurface;
@@ -191,6 +207,7 @@ public class MainActivity extends AppCompatActivity {
                     NativeApp.setSetting("EmuCore", "EnableWideScreenPatches", "bool", isChecked ? "true" : "false");
 
     private static final int RUMBLE_DURATION_MS = 160;
+    private static final long RESOURCE_WAIT_TIMEOUT_MS = 30_000L;
     private static volatile int sLastControllerDeviceId = -1;
     private static volatile boolean sVibrationEnabled = true;
     private static WeakReference<MainActivity> sInstanceRef = new WeakReference<>(null);
@@ -211,8 +228,23 @@ public class MainActivity extends AppCompatActivity {
     private final Object coverPrefetchLock = new Object();
     private boolean coverPrefetchRunning;
     private boolean storagePromptShown = false;
-    private String pendingChdCachePath;
-    private String pendingChdDisplayName;
+    private boolean fullyDrawnReported;
+    private Uri pendingChdSourceUri;
+    private volatile ChdConverter activeChdConverter;
+    private java.util.concurrent.atomic.AtomicBoolean activeScanCancel;
+    private LibraryWatcher libraryWatcher;
+    /** Entries of {@link #libraryFolder} after its last completed scan or refresh; null while scanning. */
+    private volatile List<GameEntry> libraryEntries;
+    private volatile Uri libraryFolder;
+    private boolean libraryRefreshRunning;
+    private boolean libraryRefreshPending;
+    /** Grid keys of entries hidden because another copy of the same dump is shown instead. */
+    private Set<String> hiddenLocationKeys = Collections.emptySet();
+    /** Redump hash jobs still queued or running, so rows coming on screen can move ahead. */
+    private final Map<GameEntry, HashService.Job> pendingHashJobs = new java.util.concurrent.ConcurrentHashMap<>();
+    private Uri pendingCsoSourceUri;
+    private CsoWriter.Format pendingCsoFormat;
+    private volatile CsoWriter activeCsoWriter;
     private AlertDialog dataDirProgressDialog;
     private static final String PREFS = "armsx2";
     private static final String PREF_GAMES_URI = "games_folder_uri";
@@ -351,7 +383,7 @@ public class MainActivity extends AppCompatActivity {
 
         // Force immersive fullscreen
         applyFullscreen();
-        DataDirectoryManager.copyAssetAll(getApplicationContext(), "resources");
+        ResourceExtractor.extractAsync(getApplicationContext());
 
     Initialize();
 
@@ -418,7 +450,7 @@ public class MainActivity extends AppCompatActivity {
                 }
             });
         }
-        // FAB actions: convert ISO to CHD 
+        // FAB actions: convert ISO to CHD, compress ISO to CSO/ZSO
         com.google.android.material.floatingactionbutton.FloatingActionButton fab = findViewById(R.id.fab_actions);
         if (fab != null) {
             fab.setOnClickListener(v -> {
@@ -429,6 +461,10 @@ public class MainActivity extends AppCompatActivity {
                         startPickIsoForChd();
                         return true;
                     }
+                    if (item.getItemId() == R.id.menu_compress_iso_cso) {
+                        startPickIsoForCso();
+                        return true;
+                    }
                     return false;
                 });
                 pm.show();
@@ -565,6 +601,8 @@ public class MainActivity extends AppCompatActivity {
         }
         applySavedBackground();
     } catch (Throwable ignored) {}
+    // Without a games folder the empty home screen is all there is to draw.
+    if (gamesFolderUri == null) reportGridDrawn();
 
     boolean handledLaunch = false;
     try {
@@ -777,9 +815,7 @@ public class MainActivity extends AppCompatActivity {
             new Thread(() -> {
                 int downloaded = 0;
                 try {
-                    for (Uri root : roots) {
-                    downloaded += prefetchCoversForRoot(root, template, cacheDir);
-                    }
+                    downloaded = prefetchCoversForRoots(roots, template, cacheDir);
                 } finally {
                     synchronized (coverPrefetchLock) {
                         coverPrefetchRunning = false;
@@ -798,18 +834,44 @@ public class MainActivity extends AppCompatActivity {
         }, "CoverPrefetch").start();
     }
 
-    private int prefetchCoversForRoot(Uri root, String template, File cacheDir) {
-        if (root == null) {
-            return 0;
-        }
+    /**
+     * Scans every root first so a dump kept in several of them is looked up and fetched for once,
+     * through its fastest copy.
+     */
+    private int prefetchCoversForRoots(Iterable<Uri> roots, String template, File cacheDir) {
         if (cacheDir == null) {
             return 0;
         }
-        List<GameEntry> entries = GameScanner.scanFolder(this, root);
-        if (entries == null || entries.isEmpty()) {
+        List<GameEntry> entries = new ArrayList<>();
+        Map<Uri, List<GameEntry>> byRoot = new java.util.LinkedHashMap<>();
+        for (Uri root : roots) {
+            if (root == null) {
+                continue;
+            }
+            List<GameEntry> found = GameScanner.scanFolder(this, root);
+            if (found != null) {
+                entries.addAll(found);
+                byRoot.put(root, found);
+            }
+        }
+        if (entries.isEmpty()) {
             return 0;
         }
-        resolveMetadataForEntries(entries);
+        List<GameEntry> copies = GameScanner.groupLocations(entries);
+        entries.removeAll(copies);
+        if (!copies.isEmpty()) {
+            try { DebugLog.d("Covers", "Skipping " + copies.size() + " copies of dumps found in another folder"); } catch (Throwable ignored) {}
+        }
+        if (resolveMetadataForEntries(entries) > 0) {
+            for (GameEntry entry : entries) {
+                for (GameEntry other : entry.otherLocations) {
+                    other.redumpChecked = entry.redumpChecked;
+                }
+            }
+            for (Map.Entry<Uri, List<GameEntry>> root : byRoot.entrySet()) {
+                GameScanner.saveIndex(getApplicationContext(), root.getKey(), root.getValue());
+            }
+        }
         int downloaded = 0;
         Set<String> attempted = new HashSet<>();
         for (GameEntry entry : entries) {
@@ -820,11 +882,15 @@ public class MainActivity extends AppCompatActivity {
         return downloaded;
     }
 
-    private void resolveMetadataForEntries(List<GameEntry> entries) {
+    /**
+     * @return the number of entries whose Redump state changed and should be saved.
+     */
+    private int resolveMetadataForEntries(List<GameEntry> entries) {
         if (entries == null || entries.isEmpty()) {
-            return;
+            return 0;
         }
         android.content.ContentResolver cr = getContentResolver();
+        int changed = 0;
         for (GameEntry ge : entries) {
             if (ge == null || ge.uri == null) {
                 continue;
@@ -832,10 +898,27 @@ public class MainActivity extends AppCompatActivity {
             try {
                 boolean needsSerial = TextUtils.isEmpty(ge.serial);
                 boolean needsTitle = TextUtils.isEmpty(ge.gameTitle);
+                if (!needsSerial && needsTitle) {
+                    // The serial names the game; only discs without one need hashing.
+                    GameDB.apply(ge);
+                    if (!TextUtils.isEmpty(ge.gameTitle)) {
+                        changed++;
+                        continue;
+                    }
+                }
                 if (!needsSerial && !needsTitle) {
                     continue;
                 }
-                RedumpDB.Result rd = RedumpDB.lookupByFile(cr, ge.uri);
+                if (ge.redumpChecked && ge.md5 == null) {
+                    // Already looked up without a digest to reuse: nothing new to learn.
+                    continue;
+                }
+                boolean wasChecked = ge.redumpChecked;
+                RedumpDB.Result rd = RedumpDB.lookup(cr, ge);
+                ge.redumpChecked = true;
+                if (!wasChecked || rd != null) {
+                    changed++;
+                }
                 if (rd != null) {
                     if (needsSerial && !TextUtils.isEmpty(rd.serial)) {
                         ge.serial = rd.serial;
@@ -843,9 +926,11 @@ public class MainActivity extends AppCompatActivity {
                     if (needsTitle && !TextUtils.isEmpty(rd.name)) {
                         ge.gameTitle = rd.name;
                     }
+                    GameDB.apply(ge);
                 }
             } catch (Throwable ignored) {}
         }
+        return changed;
     }
 
     private static List<String> buildCoverCandidateUrls(GameEntry entry, String template) {
@@ -1178,40 +1263,18 @@ public class MainActivity extends AppCompatActivity {
 
     private final ActivityResultLauncher<Intent> startActivityResultSaveChd = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(), result -> {
-                if (pendingChdCachePath == null) {
-                    android.util.Log.w("ARMSX2_CHD", "Save handler invoked with no pending CHD path");
+                Uri source = pendingChdSourceUri;
+                pendingChdSourceUri = null;
+                if (source == null) {
+                    android.util.Log.w("ARMSX2_CHD", "Save handler invoked with no pending ISO");
                     return;
                 }
-
-                File chdFile = new File(pendingChdCachePath);
-                String cachePath = pendingChdCachePath;
-                pendingChdCachePath = null;
-                String displayName = pendingChdDisplayName;
-                pendingChdDisplayName = null;
-
-                if (!chdFile.exists()) {
-                    android.util.Log.e("ARMSX2_CHD", "Pending CHD file missing from cache: " + cachePath);
-                    showConversionResult(false, "Could not locate the converted CHD file. Please try converting again.");
-                    return;
-                }
-
                 if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null && result.getData().getData() != null) {
                     Uri destinationUri = result.getData().getData();
                     android.util.Log.d("ARMSX2_CHD", "User selected destination URI: " + destinationUri);
-                    boolean saved = saveChdToUri(chdFile, destinationUri);
-                    if (saved) {
-                        if (!chdFile.delete()) {
-                            android.util.Log.w("ARMSX2_CHD", "Failed to delete cached CHD after saving: " + cachePath);
-                        } else {
-                            android.util.Log.d("ARMSX2_CHD", "Deleted cached CHD after successful save");
-                        }
-                        showConversionResult(true, "CHD saved to the selected location.");
-                    } else {
-                        showConversionResult(false, "Failed to save CHD. The converted file is still available in the app cache:\n" + cachePath);
-                    }
+                    performIsoToChd(source, destinationUri);
                 } else {
                     android.util.Log.i("ARMSX2_CHD", "User cancelled CHD save dialog");
-                    showConversionResult(false, "Save cancelled. The converted CHD remains in the app cache:\n" + cachePath);
                 }
             });
 
@@ -1230,6 +1293,14 @@ public class MainActivity extends AppCompatActivity {
         title.setTextSize(18);
         title.setPadding(0, 0, 0, pad / 2);
         container.addView(title);
+        if (!TextUtils.isEmpty(e.serial)) {
+            android.widget.TextView details = new android.widget.TextView(this);
+            details.setText(TextUtils.isEmpty(e.region) ? e.serial : e.serial + "  ·  " + e.region);
+            details.setTextColor(0xB3FFFFFF);
+            details.setTextSize(13);
+            details.setPadding(0, 0, 0, pad / 2);
+            container.addView(details);
+        }
 
     float density = getResources().getDisplayMetrics().density;
     int primary = resolveThemeColor(android.R.attr.colorPrimary);
@@ -1282,6 +1353,22 @@ public class MainActivity extends AppCompatActivity {
             });
         }
 
+        if (!e.title.toLowerCase(Locale.ROOT).endsWith(".m3u")) {
+            MaterialButton verify = new MaterialButton(this);
+            LinearLayout.LayoutParams verifyParams = new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+            verifyParams.topMargin = spacing;
+            verify.setLayoutParams(verifyParams);
+            verify.setText(getString(R.string.verify_dump_button));
+            verify.setBackgroundTintList(ColorStateList.valueOf(surfaceVariant));
+            verify.setTextColor(onSurface);
+            container.addView(verify);
+            verify.setOnClickListener(v -> {
+                dlg.dismiss();
+                verifyDump(e);
+            });
+        }
+
         MaterialButton perGame = new MaterialButton(this);
         LinearLayout.LayoutParams perGameParams = new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
@@ -1300,6 +1387,123 @@ public class MainActivity extends AppCompatActivity {
         dlg.show();
     }
 
+    /**
+     * Hashes every file of the dump, each in a single read, and checks it against the Redump
+     * list. The verdict is kept in the library index.
+     */
+    private void verifyDump(GameEntry e) {
+        boolean cue = e.title.toLowerCase(Locale.ROOT).endsWith(".cue");
+        if (cue && e.tracks.isEmpty()) {
+            // Restored from the library index; the tracks are known once the folder is listed.
+            try { Toast.makeText(this, getString(R.string.verify_dump_scanning), Toast.LENGTH_SHORT).show(); } catch (Throwable ignored) {}
+            return;
+        }
+        final List<GameEntry> files = cue ? e.tracks : Collections.singletonList(e);
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        int padding = dpToPx(24);
+        android.widget.LinearLayout content = new android.widget.LinearLayout(this);
+        content.setOrientation(android.widget.LinearLayout.VERTICAL);
+        content.setPadding(padding, padding / 2, padding, 0);
+        LinearProgressIndicator progress = new LinearProgressIndicator(this);
+        progress.setMax(1000);
+        progress.setIndeterminate(true);
+        content.addView(progress);
+        TextView status = new TextView(this);
+        status.setPadding(0, padding / 2, 0, 0);
+        status.setText(e.title);
+        content.addView(status);
+        AlertDialog dialog = new MaterialAlertDialogBuilder(this)
+                .setTitle(getString(R.string.verify_dump_title))
+                .setView(content)
+                .setCancelable(false)
+                .setNegativeButton(android.R.string.cancel, (d, w) -> cancelled.set(true))
+                .create();
+        dialog.show();
+
+        new Thread(() -> {
+            final long started = SystemClock.elapsedRealtime();
+            List<RedumpDB.TrackCheck> checks = RedumpDB.verify(getContentResolver(), files, cancelled,
+                    (hashed, total) -> runOnUiThread(() -> {
+                        if (cancelled.get() || total <= 0) return;
+                        long ms = Math.max(1L, SystemClock.elapsedRealtime() - started);
+                        progress.setIndeterminate(false);
+                        progress.setProgressCompat((int) Math.min(1000L, hashed * 1000L / total), true);
+                        status.setText(String.format(Locale.US, "%d of %d MB  ·  %d MB/s",
+                                hashed >> 20, total >> 20, (hashed >> 20) * 1000L / ms));
+                    }));
+            if (checks == null) {
+                runOnUiThread(() -> { try { dialog.dismiss(); } catch (Throwable ignored) {} });
+                return;
+            }
+            Boolean verified = RedumpDB.isVerified(e, checks);
+            boolean unsupported = false;
+            for (RedumpDB.TrackCheck c : checks) unsupported |= c.unsupported;
+            final boolean cannotVerify = unsupported;
+            if (verified != null) {
+                e.dumpVerified = verified;
+                e.dumpMismatch = !verified;
+                for (RedumpDB.TrackCheck c : checks) {
+                    if (TextUtils.equals(c.file.documentId, e.documentId) && e.md5 == null) {
+                        e.md5 = c.md5;
+                        e.md5Size = c.size;
+                    }
+                }
+                Uri folder = libraryFolder;
+                List<GameEntry> latest = libraryEntries;
+                if (folder != null && latest != null) {
+                    GameScanner.saveIndex(getApplicationContext(), folder, latest);
+                }
+            }
+            try {
+                DebugLog.i("Redump", "Verified " + e.title + " in " + (SystemClock.elapsedRealtime() - started)
+                        + " ms: " + (cannotVerify ? "unsupported" : verified == null ? "unreadable" : verified ? "good" : "mismatch"));
+            } catch (Throwable ignored) {}
+            final String message = describeVerification(e, checks);
+            runOnUiThread(() -> {
+                try { dialog.dismiss(); } catch (Throwable ignored) {}
+                if (isFinishing() || isDestroyed()) return;
+                new MaterialAlertDialogBuilder(this)
+                        .setTitle(getString(cannotVerify ? R.string.verify_dump_cannot
+                                : verified == null ? R.string.verify_dump_failed
+                                : verified ? R.string.verify_dump_good : R.string.verify_dump_bad))
+                        .setMessage(message)
+                        .setPositiveButton(android.R.string.ok, (d, w) -> d.dismiss())
+                        .show();
+            });
+        }, "VerifyDump").start();
+    }
+
+    private String describeVerification(GameEntry e, List<RedumpDB.TrackCheck> checks) {
+        StringBuilder sb = new StringBuilder();
+        RedumpIndex.Match disc = null;
+        for (RedumpDB.TrackCheck c : checks) {
+            if (c.match != null && (disc == null || TextUtils.equals(c.file.documentId, e.documentId))) disc = c.match;
+            if (sb.length() > 0) sb.append("\n\n");
+            sb.append(c.file.title).append('\n');
+            if (c.md5 == null) {
+                sb.append(getString(c.unsupported ? R.string.verify_dump_unsupported : R.string.verify_dump_unreadable));
+                continue;
+            }
+            sb.append("CRC32 ").append(hex(c.crc32)).append('\n')
+                    .append("MD5 ").append(hex(c.md5)).append('\n')
+                    .append("SHA-1 ").append(hex(c.sha1)).append('\n')
+                    .append(getString(c.match != null ? R.string.verify_dump_listed : R.string.verify_dump_unlisted));
+        }
+        if (disc != null) {
+            sb.insert(0, disc.name + " (" + disc.serial + ")\n"
+                    + getString(R.string.verify_dump_tracks, checks.size(), disc.tracks) + "\n\n");
+        }
+        return sb.toString();
+    }
+
+    private static String hex(@Nullable byte[] bytes) {
+        if (bytes == null) return "";
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+        return sb.toString();
+    }
+
     private void showPerGameSettingsDialog(GameEntry entry) {
         if (entry == null) return;
         String gameKey = gameKeyFromEntry(entry);
@@ -3577,10 +3781,19 @@ public class MainActivity extends AppCompatActivity {
         loadHideTimeoutFromPrefs();
         refreshOnScreenUiStyleIfNeeded();
         refreshOnScreenUiScaleIfNeeded();
+        // Most providers do not notify, so pick up changes made while the app was away.
+        if (libraryWatcher != null && !libraryWatcher.isDirect()) {
+            libraryWatcher.requestRefresh();
+        }
     }
 
 	@Override
 	protected void onDestroy() {
+		if (activeScanCancel != null) activeScanCancel.set(true);
+		if (libraryWatcher != null) {
+			libraryWatcher.stop();
+			libraryWatcher = null;
+		}
 		stopEmuThread();
 		LogcatRecorder.shutdown();
 		super.onDestroy();
@@ -3752,7 +3965,7 @@ public class MainActivity extends AppCompatActivity {
 				NativeApp.setDataRootOverride(targetDir.getAbsolutePath());
 				NativeApp.reinitializeDataRoot(targetDir.getAbsolutePath());
 				LogcatRecorder.handleDataRootChanged();
-				DataDirectoryManager.copyAssetAll(getApplicationContext(), "resources");
+				ResourceExtractor.extractBlocking(getApplicationContext());
 			}
 			runOnUiThread(() -> {
                 dismissDataDirProgressDialog();
@@ -3845,6 +4058,9 @@ public class MainActivity extends AppCompatActivity {
                     }
                 } catch (Throwable ignored) {}
             });
+            if (!ResourceExtractor.awaitReady(RESOURCE_WAIT_TIMEOUT_MS)) {
+                DebugLog.w("VM", "Resource extraction still running; booting anyway");
+            }
             NativeApp.runVMThread(m_szGamefile);
         });
         mEmulationThread.start();
@@ -4231,7 +4447,7 @@ public class MainActivity extends AppCompatActivity {
                         try { new MaterialAlertDialogBuilder(this).setTitle("Not an ISO").setMessage("Please select a .iso file.").setPositiveButton("OK", (d,w)-> d.dismiss()).show(); } catch (Throwable ignored) {}
                         return;
                     }
-                    performIsoToChd(uri, name);
+                    promptForChdSave(uri, name);
                 }
             });
 
@@ -4254,7 +4470,7 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void performIsoToChd(Uri isoUri, String isoDisplayName) {
+    private void performIsoToChd(Uri isoUri, Uri destinationUri) {
         if (!NativeApp.hasNativeTools) {
             String errorMsg = "ARMSX2 Native Tools library could not be called, it was probably not bundled with the app please rebuild the app with the library in place.";
             android.util.Log.e("ARMSX2_CHD", "Library not available: " + errorMsg);
@@ -4265,146 +4481,93 @@ public class MainActivity extends AppCompatActivity {
                         .setPositiveButton("OK", (d, w) -> d.dismiss())
                         .show();
             } catch (Throwable ignored) {}
+            try { android.provider.DocumentsContract.deleteDocument(getContentResolver(), destinationUri); } catch (Throwable ignored) {}
             return;
         }
+        if (activeChdConverter != null) {
+            try { Toast.makeText(this, "A conversion is already running", Toast.LENGTH_SHORT).show(); } catch (Throwable ignored) {}
+            return;
+        }
+        final ChdConverter converter = new ChdConverter(this);
+        activeChdConverter = converter;
+
+        int padding = dpToPx(24);
+        android.widget.LinearLayout content = new android.widget.LinearLayout(this);
+        content.setOrientation(android.widget.LinearLayout.VERTICAL);
+        content.setPadding(padding, padding / 2, padding, 0);
+        LinearProgressIndicator progress = new LinearProgressIndicator(this);
+        progress.setIndeterminate(true);
+        content.addView(progress);
+        TextView status = new TextView(this);
+        status.setPadding(0, padding / 2, 0, 0);
+        status.setText("Converting…");
+        content.addView(status);
+        AlertDialog dialog = new MaterialAlertDialogBuilder(this)
+                .setTitle("Converting to CHD")
+                .setView(content)
+                .setCancelable(false)
+                .setNegativeButton("Cancel", null)
+                .create();
+        dialog.show();
+        android.widget.Button cancel = dialog.getButton(AlertDialog.BUTTON_NEGATIVE);
+        if (cancel != null) {
+            cancel.setOnClickListener(v -> {
+                converter.cancel();
+                cancel.setEnabled(false);
+                status.setText("Cancelling after the current pass…");
+            });
+        }
 
         new Thread(() -> {
-            String inputPath = null;
-            String outputPath = null;
-            String resultMessage = null;
+            String resultMessage;
             boolean success = false;
-
+            long started = SystemClock.elapsedRealtime();
             try {
-                // Get real file path from URI
-                android.util.Log.i("ARMSX2_CHD", "Starting ISO to CHD conversion for: " + isoDisplayName);
-                android.util.Log.i("ARMSX2_CHD", "Input URI: " + isoUri.toString());
-                
-                inputPath = getFilePathFromUri(isoUri);
-                if (inputPath == null) {
-                    resultMessage = "Could not access the selected ISO file. Please ensure the file is accessible.";
-                    android.util.Log.e("ARMSX2_CHD", "Failed to get file path from URI: " + isoUri.toString());
-                    return;
-                }
-                android.util.Log.i("ARMSX2_CHD", "Input path resolved to: " + inputPath);
-
-                // Generate output CHD path to match what Rust will create 
-                outputPath = inputPath.replaceAll("\\.iso$", ".chd");
-                android.util.Log.i("ARMSX2_CHD", "Expected output path: " + outputPath);
-
-                // Call native conversion 
-                android.util.Log.i("ARMSX2_CHD", "Calling native conversion...");
-                try {
-                    android.util.Log.d("ARMSX2_CHD", "Input path bytes: " + java.util.Arrays.toString(inputPath.getBytes("UTF-8")));
-                    android.util.Log.d("ARMSX2_CHD", "Input path length: " + inputPath.length());
-                    android.util.Log.d("ARMSX2_CHD", "Input path string: '" + inputPath + "'");
-                } catch (java.io.UnsupportedEncodingException e) {
-                    android.util.Log.e("ARMSX2_CHD", "Failed to encode path as UTF-8: " + e.getMessage());
+                // Provider queries can block, so the name is looked up here rather than before the dialog.
+                final String isoDisplayName = queryOpenableDisplayName(isoUri);
+                if (isoDisplayName != null) {
+                    runOnUiThread(() -> {
+                        if (!converter.isCancelled()) status.setText(isoDisplayName);
+                    });
                 }
-                int result = NativeApp.convertIsoToChd(inputPath);
-                android.util.Log.i("ARMSX2_CHD", "Native conversion returned code: " + result);
-                
-                success = handleConversionResult(result, inputPath, outputPath);
-                
-                if (success) {
-                    final String chdCachePath = outputPath;
-                    final String chdDisplayName = isoDisplayName;
-                    android.util.Log.i("ARMSX2_CHD", "Conversion succeeded. Prompting user to choose CHD save location.");
-                    runOnUiThread(() -> promptForChdSave(chdCachePath, chdDisplayName));
-                    resultMessage = null;
+                android.util.Log.i("ARMSX2_CHD", "Starting ISO to CHD conversion for: " + isoDisplayName);
+                ChdConverter.Result result = converter.convert(isoUri, destinationUri, (written, inputSize) -> runOnUiThread(() -> {
+                    if (converter.isCancelled()) return;
+                    long seconds = Math.max(1, (SystemClock.elapsedRealtime() - started) / 1000);
+                    status.setText(String.format(Locale.US, "%d MB written of a %d MB image  ·  %d s",
+                            written >> 20, inputSize >> 20, seconds));
+                }));
+                if (result.cancelled) {
+                    resultMessage = "Conversion cancelled.";
+                } else if (result.isSuccess()) {
+                    success = true;
+                    resultMessage = String.format(Locale.US, "CHD saved to the selected location (%d MB, %d MB written to storage).",
+                            result.outputSize >> 20, result.bytesWritten >> 20);
                 } else {
-                    resultMessage = getErrorMessage(result) + "\n\nInput: " + inputPath + "\nOutput: " + outputPath;
-                    android.util.Log.e("ARMSX2_CHD", "Conversion failed with code " + result + ": " + getErrorMessage(result));
-                    android.util.Log.e("ARMSX2_CHD", "Input: " + inputPath);
-                    android.util.Log.e("ARMSX2_CHD", "Output: " + outputPath);
+                    resultMessage = getErrorMessage(result.code);
+                    android.util.Log.e("ARMSX2_CHD", "Conversion failed with code " + result.code + ": " + resultMessage);
                 }
-
             } catch (Throwable e) {
-                resultMessage = "Conversion failed with exception: " + e.getMessage() + 
-                              "\n\nInput: " + inputPath + "\nOutput: " + outputPath;
+                resultMessage = "Conversion failed with exception: " + e.getMessage();
                 android.util.Log.e("ARMSX2_CHD", "Conversion exception: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
-                android.util.Log.e("ARMSX2_CHD", "Input: " + inputPath);
-                android.util.Log.e("ARMSX2_CHD", "Output: " + outputPath);
             } finally {
-                if (inputPath != null) {
-                    File tempFile = new File(inputPath);
-                    if (tempFile.exists() && tempFile.getParent().equals(getCacheDir().getAbsolutePath())) {
-                        if (tempFile.delete()) {
-                            android.util.Log.d("ARMSX2_CHD", "Cleaned up temporary file: " + inputPath);
-                        } else {
-                            android.util.Log.w("ARMSX2_CHD", "Failed to clean up temporary file: " + inputPath);
-                        }
-                    }
-                }
-                
-                final String finalMessage = resultMessage;
-                final boolean finalSuccess = success;
-                runOnUiThread(() -> {
-                    if (finalMessage != null) {
-                        showConversionResult(finalSuccess, finalMessage);
-                    }
-                });
+                activeChdConverter = null;
             }
+            final String finalMessage = resultMessage;
+            final boolean finalSuccess = success;
+            runOnUiThread(() -> {
+                try { dialog.dismiss(); } catch (Throwable ignored) {}
+                showConversionResult(finalSuccess, finalMessage);
+            });
         }, "IsoToChdConverter").start();
     }
 
-    private String getFilePathFromUri(Uri uri) {
-        android.util.Log.d("ARMSX2_CHD", "getFilePathFromUri called with: " + uri.toString());
-        try {
-            // Get display name from content resolver
-            android.database.Cursor cursor = getContentResolver().query(uri, null, null, null, null);
-            if (cursor != null) {
-                try {
-                    if (cursor.moveToFirst()) {
-                        int displayNameIndex = cursor.getColumnIndex(android.provider.OpenableColumns.DISPLAY_NAME);
-                        if (displayNameIndex >= 0) {
-                            String displayName = cursor.getString(displayNameIndex);
-                            
-                            File cacheDir = getCacheDir();
-                            File tempFile = new File(cacheDir, displayName);
-                            android.util.Log.d("ARMSX2_CHD", "Creating temporary file: " + tempFile.getAbsolutePath());
-                            
-                            try (java.io.InputStream input = getContentResolver().openInputStream(uri);
-                                 java.io.FileOutputStream output = new java.io.FileOutputStream(tempFile)) {
-                                
-                                if (input != null) {
-                                    byte[] buffer = new byte[8192];
-                                    int bytesRead;
-                                    long totalBytes = 0;
-                                    while ((bytesRead = input.read(buffer)) != -1) {
-                                        output.write(buffer, 0, bytesRead);
-                                        totalBytes += bytesRead;
-                                    }
-                                    android.util.Log.d("ARMSX2_CHD", "Copied " + totalBytes + " bytes to cache");
-                                    return tempFile.getAbsolutePath();
-                                }
-                            }
-                        }
-                    }
-                } finally {
-                    cursor.close();
-                }
-            }
-        } catch (Throwable e) {
-            android.util.Log.e("ARMSX2_CHD", "Exception in getFilePathFromUri: " + e.getMessage(), e);
-        }
-        android.util.Log.w("ARMSX2_CHD", "getFilePathFromUri returning null - failed to resolve path");
-        return null;
-    }
-
-    private void promptForChdSave(String chdCachePath, String displayName) {
-        File chdFile = new File(chdCachePath);
-        if (!chdFile.exists()) {
-            android.util.Log.e("ARMSX2_CHD", "CHD file missing in cache, cannot prompt for save: " + chdCachePath);
-            showConversionResult(false, "Converted file could not be found. Please try converting again.");
-            return;
-        }
-
-        pendingChdCachePath = chdCachePath;
-        pendingChdDisplayName = displayName;
+    private void promptForChdSave(Uri isoUri, String displayName) {
+        pendingChdSourceUri = isoUri;
 
         String baseName = displayName;
         if (baseName == null || baseName.trim().isEmpty()) {
-            baseName = chdFile.getName();
+            baseName = "game.iso";
         }
         String lower = baseName.toLowerCase(Locale.US);
         if (lower.endsWith(".iso")) {
@@ -4425,34 +4588,150 @@ public class MainActivity extends AppCompatActivity {
         startActivityResultSaveChd.launch(intent);
     }
 
-    private boolean saveChdToUri(File chdFile, Uri destinationUri) {
-        android.util.Log.d("ARMSX2_CHD", "Saving CHD from cache to destination: " + destinationUri);
-        try (java.io.FileInputStream input = new java.io.FileInputStream(chdFile);
-             java.io.OutputStream output = getContentResolver().openOutputStream(destinationUri, "w")) {
+    private final ActivityResultLauncher<Intent> startActivityResultPickIsoForCso = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(), result -> {
+                if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null && result.getData().getData() != null) {
+                    Uri uri = result.getData().getData();
+                    String name = queryOpenableDisplayName(uri);
+                    String low = name != null ? name.toLowerCase() : uri.toString().toLowerCase();
+                    if (!low.endsWith(".iso")) {
+                        try { new MaterialAlertDialogBuilder(this).setTitle("Not an ISO").setMessage("Please select a .iso file.").setPositiveButton("OK", (d,w)-> d.dismiss()).show(); } catch (Throwable ignored) {}
+                        return;
+                    }
+                    promptForCsoFormat(uri, name);
+                }
+            });
 
-            if (output == null) {
-                android.util.Log.e("ARMSX2_CHD", "Content resolver returned null output stream for destination");
-                return false;
-            }
+    private final ActivityResultLauncher<Intent> startActivityResultSaveCso = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(), result -> {
+                Uri source = pendingCsoSourceUri;
+                CsoWriter.Format format = pendingCsoFormat;
+                pendingCsoSourceUri = null;
+                pendingCsoFormat = null;
+                if (source == null || format == null) {
+                    android.util.Log.w("ARMSX2_CSO", "Save handler invoked with no pending source");
+                    return;
+                }
+                if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null && result.getData().getData() != null) {
+                    performIsoToCso(source, result.getData().getData(), format);
+                } else {
+                    android.util.Log.i("ARMSX2_CSO", "User cancelled CSO save dialog");
+                }
+            });
 
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalBytes = 0;
-            while ((bytesRead = input.read(buffer)) != -1) {
-                output.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
-            }
-            output.flush();
-            android.util.Log.d("ARMSX2_CHD", "Wrote " + totalBytes + " bytes to destination URI");
-            return true;
-        } catch (Throwable e) {
-            android.util.Log.e("ARMSX2_CHD", "Failed to copy CHD to destination: " + e.getMessage(), e);
-            return false;
+    private void startPickIsoForCso() {
+        try {
+            Intent i = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            i.addCategory(Intent.CATEGORY_OPENABLE);
+            i.setType("*/*");
+            String[] mimeTypes = {
+                "application/octet-stream",
+                "application/x-iso9660-image",
+                "application/x-cd-image",
+                "application/x-raw-disk-image"
+            };
+            i.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
+            startActivityResultPickIsoForCso.launch(i);
+        } catch (Throwable t) {
+            try { Toast.makeText(this, "Unable to open file picker", Toast.LENGTH_SHORT).show(); } catch (Throwable ignored) {}
         }
     }
 
-    private boolean handleConversionResult(int result, String inputPath, String outputPath) {
-        return result == 0; // All good!
+    private void promptForCsoFormat(Uri isoUri, String isoDisplayName) {
+        String[] labels = {
+                "CSO (deflate, smaller)",
+                "ZSO (LZ4, faster to load)"
+        };
+        try {
+            new MaterialAlertDialogBuilder(this)
+                    .setTitle("Compression format")
+                    .setItems(labels, (d, which) -> {
+                        CsoWriter.Format format = which == 1 ? CsoWriter.Format.ZSO : CsoWriter.Format.CSO;
+                        String baseName = isoDisplayName != null ? isoDisplayName : "game.iso";
+                        if (baseName.toLowerCase(Locale.US).endsWith(".iso")) {
+                            baseName = baseName.substring(0, baseName.length() - 4);
+                        }
+                        baseName += format == CsoWriter.Format.ZSO ? ".zso" : ".cso";
+                        pendingCsoSourceUri = isoUri;
+                        pendingCsoFormat = format;
+                        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                        intent.addCategory(Intent.CATEGORY_OPENABLE);
+                        intent.setType("application/octet-stream");
+                        intent.putExtra(Intent.EXTRA_TITLE, baseName);
+                        startActivityResultSaveCso.launch(intent);
+                    })
+                    .setNegativeButton("Cancel", (d, w) -> d.dismiss())
+                    .show();
+        } catch (Throwable ignored) {}
+    }
+
+    private void performIsoToCso(Uri isoUri, Uri destinationUri, CsoWriter.Format format) {
+        if (activeCsoWriter != null) {
+            try { Toast.makeText(this, "A compression is already running", Toast.LENGTH_SHORT).show(); } catch (Throwable ignored) {}
+            return;
+        }
+        final CsoWriter writer = new CsoWriter(format);
+        activeCsoWriter = writer;
+
+        int padding = dpToPx(24);
+        android.widget.LinearLayout content = new android.widget.LinearLayout(this);
+        content.setOrientation(android.widget.LinearLayout.VERTICAL);
+        content.setPadding(padding, padding / 2, padding, 0);
+        LinearProgressIndicator progress = new LinearProgressIndicator(this);
+        progress.setMax(1000);
+        content.addView(progress);
+        TextView status = new TextView(this);
+        status.setPadding(0, padding / 2, 0, 0);
+        status.setText("Starting…");
+        content.addView(status);
+        AlertDialog dialog = new MaterialAlertDialogBuilder(this)
+                .setTitle(format == CsoWriter.Format.ZSO ? "Compressing to ZSO" : "Compressing to CSO")
+                .setView(content)
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (d, w) -> writer.cancel())
+                .create();
+        dialog.show();
+
+        writer.setProgressListener((done, total, bytesPerSecond) -> runOnUiThread(() -> {
+            progress.setProgressCompat((int) (done * 1000 / Math.max(1, total)), true);
+            status.setText(String.format(Locale.US, "%d / %d MB  ·  %.1f MB/s",
+                    done >> 20, total >> 20, bytesPerSecond / (1024.0 * 1024.0)));
+        }));
+
+        new Thread(() -> {
+            android.content.ContentResolver cr = getContentResolver();
+            String resultMessage;
+            boolean success = false;
+            long started = SystemClock.elapsedRealtime();
+            try (DiscImageSource source = DiscImageSource.open(cr, isoUri);
+                 android.os.ParcelFileDescriptor outPfd = cr.openFileDescriptor(destinationUri, "rw");
+                 java.io.FileOutputStream outStream = new java.io.FileOutputStream(outPfd.getFileDescriptor());
+                 java.nio.channels.FileChannel outChannel = outStream.getChannel()) {
+                long inSize = source.size();
+                long outSize = writer.write(source, outChannel);
+                long seconds = Math.max(1, (SystemClock.elapsedRealtime() - started) / 1000);
+                success = true;
+                resultMessage = String.format(Locale.US, "Compressed %d MB to %d MB (%.0f%%) in %d s.",
+                        inSize >> 20, outSize >> 20, outSize * 100.0 / Math.max(1, inSize), seconds);
+                android.util.Log.i("ARMSX2_CSO", resultMessage);
+            } catch (java.util.concurrent.CancellationException e) {
+                resultMessage = "Compression cancelled.";
+            } catch (Throwable e) {
+                android.util.Log.e("ARMSX2_CSO", "Compression failed: " + e.getMessage(), e);
+                resultMessage = "Compression failed: " + e.getMessage();
+            } finally {
+                activeCsoWriter = null;
+            }
+            if (!success) {
+                try { android.provider.DocumentsContract.deleteDocument(cr, destinationUri); } catch (Throwable ignored) {}
+            }
+            final String finalMessage = resultMessage;
+            final boolean finalSuccess = success;
+            runOnUiThread(() -> {
+                try { dialog.dismiss(); } catch (Throwable ignored) {}
+                showConversionResult(finalSuccess, finalMessage);
+            });
+        }, "IsoToCsoConverter").start();
     }
 
     private String getErrorMessage(int errorCode) {
@@ -4774,51 +5053,287 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void scanGamesFolder(Uri folder) {
-    List<GameEntry> entries = GameScanner.scanFolder(this, folder);
-        try {
-            java.util.Collections.sort(entries, (a, b) -> {
-                String ta = a != null ? (a.title != null ? a.title : "") : "";
-                String tb = b != null ? (b.title != null ? b.title : "") : "";
-                int ga = sortGroup(ta);
-                int gb = sortGroup(tb);
-                if (ga != gb) return Integer.compare(ga, gb);
-                return ta.compareToIgnoreCase(tb);
-            });
-        } catch (Throwable ignored) {}
-    gamesAdapter.update(entries);
+        if (activeScanCancel != null) activeScanCancel.set(true);
+        final java.util.concurrent.atomic.AtomicBoolean cancel = new java.util.concurrent.atomic.AtomicBoolean();
+        activeScanCancel = cancel;
+        libraryEntries = null;
+        libraryFolder = folder;
+        libraryRefreshPending = false;
+        if (libraryWatcher != null && !folder.equals(libraryWatcher.getTreeUri())) {
+            libraryWatcher.stop();
+            libraryWatcher = null;
+        }
+        List<GameEntry> indexed = GameScanner.loadIndexed(this, folder);
+        hiddenLocationKeys = Collections.emptySet();
+        indexed.removeAll(hideOtherLocations(indexed));
+        if (!indexed.isEmpty()) {
+            // Draw the last known library right away; the rescan below replaces it when done.
+            sortEntries(indexed);
+            gamesAdapter.update(indexed);
+            if (etSearch != null && etSearch.getText() != null && etSearch.length() > 0) {
+                gamesAdapter.setFilter(etSearch.getText().toString());
+            }
+            if (emptyContainer != null) emptyContainer.setVisibility(View.GONE);
+            if (rvGames != null) rvGames.setVisibility(View.VISIBLE);
+            showHome(true);
+            reportGridDrawn();
+        }
+        gamesAdapter.beginMerge();
+        final android.content.Context appContext = getApplicationContext();
+        new Thread(() -> GameScanner.scanFolder(appContext, folder, cancel, new GameScanner.ScanListener() {
+            @Override
+            public void onEntries(List<GameEntry> batch) {
+                runOnUiThread(() -> {
+                    if (cancel.get() || isFinishing() || isDestroyed()) return;
+                    List<GameEntry> shown = new ArrayList<>(batch.size());
+                    for (GameEntry e : batch) {
+                        if (!hiddenLocationKeys.contains(String.valueOf(e.uri))) shown.add(e);
+                    }
+                    gamesAdapter.mergeEntries(shown);
+                    showGamesGrid();
+                    if (!shown.isEmpty()) reportGridDrawn();
+                });
+            }
+
+            @Override
+            public void onEntriesUpdated(List<GameEntry> updated) {
+                runOnUiThread(() -> {
+                    if (cancel.get() || isFinishing() || isDestroyed()) return;
+                    gamesAdapter.notifyEntriesChanged(updated);
+                });
+            }
+
+            @Override
+            public void onScanFinished(List<GameEntry> all, boolean cancelled) {
+                runOnUiThread(() -> {
+                    if (cancelled || cancel.get() || isFinishing() || isDestroyed()) return;
+                    onGamesScanned(folder, all, cancel);
+                    reportGridDrawn();
+                });
+            }
+        }), "GameScan").start();
+    }
+
+    /**
+     * Hashes entries that still have no serial against the Redump list, updating their rows as
+     * matches come in, and records the result in the library index.
+     */
+    private void resolveRedumpInBackground(Uri folder, List<GameEntry> entries, java.util.concurrent.atomic.AtomicBoolean cancel) {
         final List<GameEntry> toResolve = new ArrayList<>();
         for (GameEntry ge : entries) {
             try {
-                if (ge != null && (ge.serial == null || ge.serial.isEmpty())) {
-                    String name = ge.title != null ? ge.title.toLowerCase() : "";
-                    if (name.endsWith(".iso") || name.endsWith(".img") || name.endsWith(".bin"))
+                // A digest kept from an earlier scan is matched again without reading the file,
+                // which picks up discs added to the list since.
+                if (ge != null && !hiddenLocationKeys.contains(String.valueOf(ge.uri)) && (!ge.redumpChecked || ge.md5 != null) && (ge.serial == null || ge.serial.isEmpty())) {
+                    String name = ge.imageName() != null ? ge.imageName().toLowerCase() : "";
+                    if (name.endsWith(".iso") || name.endsWith(".img") || name.endsWith(".bin") || name.endsWith(".chd"))
                         toResolve.add(ge);
                 }
             } catch (Throwable ignored) {}
         }
-        if (!toResolve.isEmpty()) {
-            new Thread(() -> {
-                android.content.ContentResolver cr = getContentResolver();
-                int n = 0;
-                for (GameEntry ge : toResolve) {
-                    try {
-                        RedumpDB.Result rd = RedumpDB.lookupByFile(cr, ge.uri);
+        if (toResolve.isEmpty()) return;
+        new Thread(() -> {
+            android.content.ContentResolver cr = getContentResolver();
+            final AtomicInteger checked = new AtomicInteger();
+            List<HashService.Job> jobs = new ArrayList<>();
+            for (GameEntry ge : toResolve) {
+                if (cancel.get()) break;
+                final boolean wasChecked = ge.redumpChecked;
+                HashService.Job job = RedumpDB.lookupAsync(cr, ge, 0, new RedumpDB.LookupListener() {
+                    @Override
+                    public void onProgress(GameEntry e, long hashed, long total) {
+                        if (total > 0) {
+                            try { DebugLog.d("Redump", "Hashing " + e.imageName() + ": " + (hashed * 100 / total) + "%"); } catch (Throwable ignored) {}
+                        }
+                    }
+
+                    @Override
+                    public void onLookup(GameEntry e, @Nullable RedumpDB.Result rd) {
+                        pendingHashJobs.remove(e);
+                        e.redumpChecked = true;
+                        if (!wasChecked || rd != null) checked.incrementAndGet();
+                        // Other copies of the dump would hash the same; record the result for them too.
+                        for (GameEntry other : e.otherLocations) other.redumpChecked = true;
                         if (rd != null && rd.serial != null && !rd.serial.isEmpty()) {
-                            ge.serial = rd.serial;
-                            ge.gameTitle = rd.name;
-                            n++;
-                            if (n % 2 == 1) {
-                                runOnUiThread(() -> gamesAdapter.notifyDataSetChanged());
+                            e.serial = rd.serial;
+                            e.gameTitle = rd.name;
+                            GameDB.apply(e);
+                            for (GameEntry other : e.otherLocations) {
+                                if (TextUtils.isEmpty(other.serial)) {
+                                    other.serial = rd.serial;
+                                    other.gameTitle = rd.name;
+                                    other.region = e.region;
+                                }
                             }
+                            final List<GameEntry> changed = java.util.Collections.singletonList(e);
+                            runOnUiThread(() -> gamesAdapter.notifyEntriesChanged(changed));
                         }
-                    } catch (Throwable ignored) {}
+                    }
+                });
+                if (job != null) {
+                    pendingHashJobs.put(ge, job);
+                    jobs.add(job);
+                }
+            }
+            try {
+                for (HashService.Job job : jobs) {
+                    while (!job.await(500L)) {
+                        if (cancel.get()) {
+                            for (HashService.Job j : jobs) j.cancel();
+                        }
+                    }
                 }
-                if (n > 0) runOnUiThread(() -> gamesAdapter.notifyDataSetChanged());
-            }, "RedumpResolve").start();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (GameEntry ge : toResolve) pendingHashJobs.remove(ge);
+            }
+            if (checked.get() > 0 && !cancel.get()) {
+                // A refresh may have replaced the list since; save whichever is current.
+                List<GameEntry> latest = libraryEntries;
+                GameScanner.saveIndex(getApplicationContext(), folder,
+                        latest != null && folder.equals(libraryFolder) ? latest : entries);
+            }
+        }, "RedumpResolve").start();
+    }
+
+    /**
+     * Lets a row that is on screen be hashed before the rows waiting behind it.
+     */
+    void promoteHashJob(GameEntry e) {
+        HashService.Job job = pendingHashJobs.get(e);
+        if (job != null) job.promote(1);
+    }
+
+    private void watchGamesFolder(Uri folder) {
+        if (libraryWatcher != null) {
+            if (folder.equals(libraryWatcher.getTreeUri())) return;
+            libraryWatcher.stop();
+        }
+        File directRoot = DataDirectoryManager.resolveReadableTreeDirectory(this, folder);
+        libraryWatcher = new LibraryWatcher(getContentResolver(), folder, directRoot, GameScanner.SCAN_DEPTH,
+                GameScanner::isGameFile, this::onLibraryChanged);
+        libraryWatcher.start();
+    }
+
+    private void onLibraryChanged() {
+        if (isFinishing() || isDestroyed()) return;
+        if (libraryRefreshRunning || !isHomeVisible()) {
+            // Do not compete with a running game for the card; catch up on the way back.
+            libraryRefreshPending = true;
+            return;
+        }
+        final Uri folder = libraryFolder;
+        final List<GameEntry> current = libraryEntries;
+        final java.util.concurrent.atomic.AtomicBoolean cancel = activeScanCancel;
+        if (folder == null || current == null || cancel == null || cancel.get()) return;
+        libraryRefreshRunning = true;
+        libraryRefreshPending = false;
+        final android.content.Context appContext = getApplicationContext();
+        new Thread(() -> {
+            final GameScanner.Refresh refresh = GameScanner.refreshFolder(appContext, folder, current, cancel);
+            runOnUiThread(() -> {
+                libraryRefreshRunning = false;
+                if (isFinishing() || isDestroyed() || cancel.get() || current != libraryEntries) return;
+                if (refresh != null) applyLibraryRefresh(folder, refresh, cancel);
+                if (libraryRefreshPending) onLibraryChanged();
+            });
+        }, "LibraryRefresh").start();
+    }
+
+    private void applyLibraryRefresh(Uri folder, GameScanner.Refresh refresh, java.util.concurrent.atomic.AtomicBoolean cancel) {
+        libraryEntries = refresh.all;
+        if (refresh.added.isEmpty() && refresh.removed.isEmpty()) return;
+        gamesAdapter.removeEntries(refresh.removed);
+        gamesAdapter.mergeEntries(refresh.added);
+        applyLocationGroups(refresh.all);
+        boolean empty = refresh.all.isEmpty();
+        if (!empty) {
+            showGamesGrid();
+        } else {
+            if (tvEmpty != null) {
+                tvEmpty.setText("No games detected in this folder");
+                tvEmpty.setVisibility(View.VISIBLE);
+            }
+            if (emptyContainer != null) emptyContainer.setVisibility(View.VISIBLE);
+            if (rvGames != null) rvGames.setVisibility(View.GONE);
+        }
+        resolveRedumpInBackground(folder, refresh.added, cancel);
+    }
+
+    /**
+     * Leaves one row per dump in the grid: copies found in several places are grouped onto the
+     * one that loads fastest, and rows hidden by an earlier grouping come back once their copy
+     * is the best one left.
+     */
+    private void applyLocationGroups(List<GameEntry> all) {
+        Set<String> wasHidden = hiddenLocationKeys;
+        List<GameEntry> hidden = hideOtherLocations(all);
+        gamesAdapter.removeEntries(hidden);
+        List<GameEntry> shown = new ArrayList<>();
+        for (GameEntry e : all) {
+            String key = String.valueOf(e.uri);
+            if (wasHidden.contains(key) && !hiddenLocationKeys.contains(key)) shown.add(e);
+        }
+        if (!shown.isEmpty()) gamesAdapter.mergeEntries(shown);
+        if (!hidden.isEmpty()) {
+            try { DebugLog.d("Library", hidden.size() + " entries are copies of other entries"); } catch (Throwable ignored) {}
         }
-        if (etSearch != null && etSearch.getText() != null && etSearch.length() > 0) {
-            gamesAdapter.setFilter(etSearch.getText().toString());
+    }
+
+    private List<GameEntry> hideOtherLocations(List<GameEntry> all) {
+        List<GameEntry> hidden = GameScanner.groupLocations(all);
+        Set<String> keys = new HashSet<>(hidden.size() * 2);
+        for (GameEntry e : hidden) keys.add(String.valueOf(e.uri));
+        hiddenLocationKeys = keys;
+        return hidden;
+    }
+
+    /**
+     * Reports the home screen fully drawn once, on the frame after the grid first shows games
+     * or after the first scan leaves it empty. "Fully drawn" in logcat then marks when the
+     * library became usable rather than when the activity was created.
+     */
+    private void reportGridDrawn() {
+        if (fullyDrawnReported) return;
+        fullyDrawnReported = true;
+        View target = rvGames != null ? rvGames : getWindow().getDecorView();
+        target.post(() -> { try { reportFullyDrawn(); } catch (Throwable ignored) {} });
+    }
+
+    private void showGamesGrid() {
+        if (emptyContainer != null && emptyContainer.getVisibility() == View.VISIBLE) {
+            emptyContainer.setVisibility(View.GONE);
         }
+        if (rvGames != null && rvGames.getVisibility() != View.VISIBLE) {
+            rvGames.setVisibility(View.VISIBLE);
+            showHome(true);
+        }
+    }
+
+    /** Grid order: titles starting with digits, then letters, then anything else. */
+    static final java.util.Comparator<GameEntry> ENTRY_ORDER = (a, b) -> {
+        String ta = a != null ? (a.title != null ? a.title : "") : "";
+        String tb = b != null ? (b.title != null ? b.title : "") : "";
+        int ga = sortGroup(ta);
+        int gb = sortGroup(tb);
+        if (ga != gb) return Integer.compare(ga, gb);
+        return ta.compareToIgnoreCase(tb);
+    };
+
+    private static void sortEntries(List<GameEntry> entries) {
+        try {
+            java.util.Collections.sort(entries, ENTRY_ORDER);
+        } catch (Throwable ignored) {}
+    }
+
+    private void onGamesScanned(Uri folder, List<GameEntry> entries, java.util.concurrent.atomic.AtomicBoolean cancel) {
+        // Batches already placed every entry; this only drops files that disappeared.
+        gamesAdapter.finishMerge();
+        libraryEntries = entries;
+        applyLocationGroups(entries);
+        watchGamesFolder(folder);
+        resolveRedumpInBackground(folder, entries, cancel);
         if (rvGames != null && gamesAdapter.getItemCount() > 0) {
             rvGames.post(() -> {
                 rvGames.requestFocus(); 
@@ -4831,7 +5346,7 @@ public class MainActivity extends AppCompatActivity {
             });
         }
         boolean empty = entries.isEmpty();
-    try { Toast.makeText(this, "Found " + entries.size() + " game(s)", Toast.LENGTH_SHORT).show(); } catch (Throwable ignored) {}
+    try { Toast.makeText(this, "Found " + (entries.size() - hiddenLocationKeys.size()) + " game(s)", Toast.LENGTH_SHORT).show(); } catch (Throwable ignored) {}
         if (tvEmpty != null) {
             tvEmpty.setText(empty ? "No games detected in this folder" : "");
             tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
@@ -4879,6 +5394,9 @@ public class MainActivity extends AppCompatActivity {
         }
         if (show) {
             setFastForwardEnabled(false);
+            if (libraryRefreshPending && !libraryRefreshRunning) {
+                getWindow().getDecorView().post(this::onLibraryChanged);
+            }
             if (rvGames != null && rvGames.getVisibility() == View.VISIBLE && gamesAdapter != null && gamesAdapter.getItemCount() > 0) {
                 rvGames.post(() -> {
                     rvGames.requestFocus();
@@ -5102,89 +5620,680 @@ public class MainActivity extends AppCompatActivity {
         final Uri uri;
         String serial;           
         String gameTitle;        
+        /** Region from GameIndex.yaml, e.g. NTSC-U or PAL-M5, once the serial is known. */
+        String region;
+        String documentId;
+        long size = -1;
+        long lastModified = -1;
+        String coverPath;
+        File localFile;
+        /** Name of the file {@link #uri} points at when the entry stands for a cue sheet or playlist. */
+        String fileName;
+        /** See {@link DiscFingerprint}; empty when the image could not be fingerprinted. */
+        String fingerprint;
+        /** Other copies of the same dump, best first; set on the entry that is shown. */
+        List<GameEntry> otherLocations = Collections.emptyList();
+        /** MD5 of the uncompressed image and the bytes it covers, once hashed for Redump. */
+        byte[] md5;
+        long md5Size = -1;
+        /** Files of a cue sheet in sheet order, for dump verification; empty for other entries. */
+        List<GameEntry> tracks = Collections.emptyList();
+        boolean fromIndex;
+        boolean redumpChecked;
+        /** Outcome of the last Verify dump run; both false when it never ran. */
+        boolean dumpVerified;
+        boolean dumpMismatch;
         GameEntry(String t, Uri u) { title = t; uri = u; }
         String fileTitleNoExt() {
             int i = title.lastIndexOf('.');
             return (i > 0) ? title.substring(0, i) : title;
         }
+        /** Name of the image that is launched, probed and hashed for this entry. */
+        String imageName() {
+            return fileName != null ? fileName : title;
+        }
     }
 
     static class GameScanner {
-    static final String[] EXTS = new String[]{".iso", ".img", ".bin", ".cso", ".zso", ".chd", ".gz"};
+    static final String[] EXTS = new String[]{".iso", ".img", ".bin", ".cso", ".zso", ".chd", ".gz", ".cue", ".m3u"};
+    /** Cue sheets and playlists are read to group the files they name; larger ones are not. */
+    static final int MAX_SHEET_BYTES = 64 * 1024;
+    /** Serial probing stops opening disc headers after this long; remaining entries keep filename serials. */
+    static final long PROBE_BUDGET_MS = 20_000L;
+    static final int PROBE_THREADS = 2;
+    /** Deepest folder level listed below the games folder, which is level 0. */
+    static final int SCAN_DEPTH = 3;
+
+    /** Streamed batches are flushed once they reach this size or age. */
+    static final int BATCH_SIZE = 24;
+    static final long BATCH_INTERVAL_MS = 150L;
+
+    /**
+     * Receives scan progress. All callbacks run on scan threads, one at a time.
+     */
+    interface ScanListener {
+        /** Newly listed entries; the first batch is sent as soon as any directory yields one. */
+        void onEntries(List<GameEntry> batch);
+        /** Entries whose serial was filled in by the header probe after being sent. */
+        void onEntriesUpdated(List<GameEntry> updated);
+        /** Every entry in directory order; {@code cancelled} scans may be incomplete. */
+        void onScanFinished(List<GameEntry> all, boolean cancelled);
+    }
+
     static List<GameEntry> scanFolder(Context ctx, Uri treeUri) {
+            return scanFolder(ctx, treeUri, null, null);
+        }
+
+        /**
+         * Lists the tree concurrently, then probes disc headers for serials as a second stage.
+         * Entries come back in directory order regardless of thread count; setting
+         * {@code cancelled} stops both stages and returns what was found so far. With a
+         * listener, entries are also streamed in batches while the tree is being listed.
+         */
+        static List<GameEntry> scanFolder(Context ctx, Uri treeUri, @Nullable java.util.concurrent.atomic.AtomicBoolean cancelled,
+                                          @Nullable ScanListener listener) {
             List<GameEntry> out = new ArrayList<>();
             android.content.ContentResolver cr = ctx.getContentResolver();
             try {
-                String rootId = android.provider.DocumentsContract.getTreeDocumentId(treeUri);
-                scanChildren(cr, treeUri, rootId, out, 0, 3);
-            } catch (Exception ignored) {}
-            return out;
+                final LibraryIndex index = LibraryIndex.load(ctx, treeUri);
+                final java.util.Map<String, GameEntry> byDocId = new java.util.concurrent.ConcurrentHashMap<>();
+                final java.util.concurrent.atomic.AtomicInteger reused = new java.util.concurrent.atomic.AtomicInteger();
+                final Batcher batcher = new Batcher(listener);
+                File directRoot = DataDirectoryManager.resolveReadableTreeDirectory(ctx, treeUri);
+                long started = android.os.SystemClock.elapsedRealtime();
+                List<DocumentTreeWalker.Document> docs = new DocumentTreeWalker(cr, treeUri)
+                        .setMaxDepth(SCAN_DEPTH)
+                        .setDirectRoot(directRoot)
+                        .setCancelSignal(cancelled)
+                        .setListener(listed -> {
+                            List<GameEntry> batch = createEntries(cr, treeUri, listed, index, byDocId);
+                            for (GameEntry e : batch) {
+                                if (e.fromIndex) reused.incrementAndGet();
+                            }
+                            batcher.add(batch);
+                        })
+                        .walk(GameScanner::isGameFile);
+                batcher.flush();
+                try { DebugLog.d("Library", "Listed " + docs.size() + " files in " + (android.os.SystemClock.elapsedRealtime() - started) + " ms via " + (directRoot != null ? "java.nio" : "DocumentsContract")); } catch (Throwable ignored) {}
+                List<DocumentTreeWalker.Document> unlisted = new ArrayList<>();
+                for (DocumentTreeWalker.Document d : docs) {
+                    if (!byDocId.containsKey(d.documentId)) unlisted.add(d);
+                }
+                if (!unlisted.isEmpty()) createEntries(cr, treeUri, unlisted, index, byDocId);
+                // Grouped files all map to their group's entry; keep the first occurrence.
+                java.util.Set<GameEntry> placed = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+                for (DocumentTreeWalker.Document d : docs) {
+                    GameEntry e = byDocId.get(d.documentId);
+                    if (e != null && placed.add(e)) out.add(e);
+                }
+                probeSerials(cr, out, cancelled, listener);
+                if (cancelled == null || !cancelled.get()) {
+                    saveIndex(ctx, treeUri, out);
+                }
+                try { DebugLog.d("Library", "Scanned " + out.size() + " entries, " + reused.get() + " unchanged since last scan"); } catch (Throwable ignored) {}
+            } catch (Exception ignored) {}
+            try { DebugLog.d("CSO", "Scan finished: " + CsoBlockCache.shared()); } catch (Throwable ignored) {}
+            if (listener != null) {
+                listener.onScanFinished(out, cancelled != null && cancelled.get());
+            }
+            return out;
         }
 
-        static List<String> debugList(Context ctx, Uri treeUri) {
-            List<String> out = new ArrayList<>();
-            try {
-                android.content.ContentResolver cr = ctx.getContentResolver();
-                String rootId = android.provider.DocumentsContract.getTreeDocumentId(treeUri);
-                debugChildren(cr, treeUri, rootId, out, 0, 3, "/");
-            } catch (Exception e) { out.add("Error: " + e.getMessage()); }
-            return out;
+        /**
+         * Outcome of {@link #refreshFolder}. Entries whose file changed in place appear in both
+         * {@code removed} (the old object) and {@code added}.
+         */
+        static final class Refresh {
+            final List<GameEntry> all;
+            final List<GameEntry> added;
+            final List<GameEntry> removed;
+
+            Refresh(List<GameEntry> all, List<GameEntry> added, List<GameEntry> removed) {
+                this.all = all;
+                this.added = added;
+                this.removed = removed;
+            }
         }
 
-        private static void scanChildren(android.content.ContentResolver cr, Uri treeUri, String parentDocId,
-                                         List<GameEntry> out, int depth, int maxDepth) {
-            if (depth > maxDepth) return;
-            Uri children = android.provider.DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, parentDocId);
-            try (android.database.Cursor c = cr.query(children, new String[]{
-                    android.provider.DocumentsContract.Document.COLUMN_DOCUMENT_ID,
-                    android.provider.DocumentsContract.Document.COLUMN_DISPLAY_NAME,
-                    android.provider.DocumentsContract.Document.COLUMN_MIME_TYPE
-            }, null, null, null)) {
-                if (c == null) return;
-                while (c.moveToNext()) {
-                    String docId = c.getString(0);
-                    String name = c.getString(1);
-                    String mime = c.getString(2);
-                    if (mime != null && mime.equals(android.provider.DocumentsContract.Document.MIME_TYPE_DIR)) {
-                        scanChildren(cr, treeUri, docId, out, depth + 1, maxDepth);
+        /**
+         * Lists the folder again and compares it with {@code current}, the entries of the last
+         * scan. Unchanged files keep their entry objects; only files that are new or changed are
+         * probed. A file that disappeared and one that appeared with the same size, modification
+         * time and format are taken to be a rename and keep the serial found before. Returns
+         * null when cancelled.
+         */
+        @Nullable
+        static Refresh refreshFolder(Context ctx, Uri treeUri, List<GameEntry> current,
+                                     @Nullable java.util.concurrent.atomic.AtomicBoolean cancelled) {
+            try {
+                android.content.ContentResolver cr = ctx.getContentResolver();
+                java.util.Map<String, GameEntry> previous = new java.util.HashMap<>(current.size() * 2);
+                for (GameEntry e : current) {
+                    if (e != null && e.documentId != null) previous.put(e.documentId, e);
+                }
+                List<DocumentTreeWalker.Document> docs = new DocumentTreeWalker(cr, treeUri)
+                        .setMaxDepth(SCAN_DEPTH)
+                        .setDirectRoot(DataDirectoryManager.resolveReadableTreeDirectory(ctx, treeUri))
+                        .setCancelSignal(cancelled)
+                        .walk(GameScanner::isGameFile);
+                if (cancelled != null && cancelled.get()) return null;
+                LibraryIndex index = LibraryIndex.load(ctx, treeUri);
+                List<GameEntry> listed = createEntries(cr, treeUri, docs, index, new java.util.HashMap<>());
+                List<GameEntry> all = new ArrayList<>(listed.size());
+                List<GameEntry> added = new ArrayList<>();
+                List<GameEntry> removed = new ArrayList<>();
+                for (GameEntry e : listed) {
+                    GameEntry old = previous.remove(e.documentId);
+                    if (old != null && e.size >= 0 && old.size == e.size && old.lastModified == e.lastModified
+                            && TextUtils.equals(old.title, e.title)) {
+                        // Entries restored from the index do not know their tracks.
+                        old.tracks = e.tracks;
+                        all.add(old);
                         continue;
                     }
-                    if (name == null) name = "Unknown";
-                    String lower = name.toLowerCase();
-                    boolean matchExt = false;
-                    for (String ext : EXTS) { if (lower.endsWith(ext)) { matchExt = true; break; } }
-                    boolean matchMime = false;
-                    if (mime != null) {
-                        String lm = mime.toLowerCase();
-                        if (lm.contains("iso9660") || lm.equals("application/x-iso9660-image")) matchMime = true;
-                    }
-                    boolean match = matchExt || matchMime;
-                    if (!match) continue;
-                    Uri doc = android.provider.DocumentsContract.buildDocumentUriUsingTree(treeUri, docId);
-                    GameEntry e = new GameEntry(name, doc);
-                    String ft = e.fileTitleNoExt();
-                    String s = parseSerialFromString(ft);
-                    if (s != null) e.serial = s;
-                    String lowerName = name != null ? name.toLowerCase() : "";
-                    if (e.serial == null && (lowerName.endsWith(".iso") || lowerName.endsWith(".img") || lowerName.endsWith(".cso") || lowerName.endsWith(".zso"))) {
-                        try {
-                            String isoSerial = tryExtractIsoSerial(cr, doc);
-                            if (isoSerial != null) e.serial = isoSerial;
-                        } catch (Throwable t) {
-                            try { DebugLog.d("ISO", "Serial parse failed: " + t.getMessage()); } catch (Throwable ignored) {}
-                        }
+                    if (old != null) removed.add(old);
+                    all.add(e);
+                    added.add(e);
+                }
+                removed.addAll(previous.values());
+                carryOverRenames(added, previous.values());
+                probeSerials(cr, added, cancelled, null);
+                if (cancelled != null && cancelled.get()) return null;
+                if (!added.isEmpty() || !removed.isEmpty()) {
+                    saveIndex(ctx, treeUri, all);
+                }
+                try { DebugLog.d("Library", "Refreshed " + treeUri + ": " + added.size() + " added, " + removed.size() + " removed"); } catch (Throwable ignored) {}
+                return new Refresh(all, added, removed);
+            } catch (Exception ex) {
+                try { DebugLog.w("Library", "Refreshing library failed: " + ex.getMessage()); } catch (Throwable ignored) {}
+                return null;
+            }
+        }
+
+        private static void carryOverRenames(List<GameEntry> added, java.util.Collection<GameEntry> gone) {
+            if (gone.isEmpty()) return;
+            List<GameEntry> candidates = new ArrayList<>(gone);
+            for (GameEntry e : added) {
+                if (e.fromIndex || e.size < 0) continue;
+                for (java.util.Iterator<GameEntry> it = candidates.iterator(); it.hasNext(); ) {
+                    GameEntry old = it.next();
+                    if (old.size == e.size && old.lastModified == e.lastModified
+                            && TextUtils.equals(formatOf(old.title), formatOf(e.title))) {
+                        e.serial = old.serial;
+                        e.gameTitle = old.gameTitle;
+                        e.region = old.region;
+                        e.coverPath = old.coverPath;
+                        e.fingerprint = old.fingerprint;
+                        e.md5 = old.md5;
+                        e.md5Size = old.md5Size;
+                        e.redumpChecked = old.redumpChecked;
+                        e.dumpVerified = old.dumpVerified;
+                        e.dumpMismatch = old.dumpMismatch;
+                        e.fromIndex = true;
+                        it.remove();
+                        break;
                     }
-                    if (e.serial == null && lowerName.endsWith(".bin")) {
-                        try {
-                            String quick = tryExtractBinSerialQuick(cr, doc);
-                            if (quick != null) e.serial = quick;
-                        } catch (Throwable t) {
-                            try { DebugLog.d("BIN", "Quick serial scan failed: " + t.getMessage()); } catch (Throwable ignored) {}
+                }
+            }
+        }
+
+        private static String formatOf(@Nullable String name) {
+            if (name == null) return "";
+            int dot = name.lastIndexOf('.');
+            return dot >= 0 ? name.substring(dot + 1).toLowerCase() : "";
+        }
+
+        /**
+         * Turns listed documents into entries. A .cue sheet becomes one entry for its tracks and
+         * an .m3u playlist one entry for its discs; the entry launches, probes and hashes the
+         * first data track, whose hash is one of the per-track hashes Redump lists for the disc.
+         * Referenced files must sit in the same directory as the sheet. Sheets whose files are
+         * missing are dropped, and every document that went into an entry is mapped to it in
+         * {@code byDocId}.
+         */
+        private static List<GameEntry> createEntries(android.content.ContentResolver cr, Uri treeUri,
+                                                     List<DocumentTreeWalker.Document> docs, LibraryIndex index,
+                                                     java.util.Map<String, GameEntry> byDocId) {
+            java.util.Map<String, List<DocumentTreeWalker.Document>> byParent = new java.util.LinkedHashMap<>();
+            for (DocumentTreeWalker.Document d : docs) {
+                List<DocumentTreeWalker.Document> siblings = byParent.get(d.parentDocumentId);
+                if (siblings == null) {
+                    siblings = new ArrayList<>();
+                    byParent.put(d.parentDocumentId, siblings);
+                }
+                siblings.add(d);
+            }
+            List<GameEntry> out = new ArrayList<>(docs.size());
+            for (List<DocumentTreeWalker.Document> siblings : byParent.values()) {
+                java.util.Map<String, DocumentTreeWalker.Document> byName = new java.util.HashMap<>();
+                boolean hasSheets = false;
+                for (DocumentTreeWalker.Document d : siblings) {
+                    if (d.displayName == null) continue;
+                    byName.put(d.displayName.toLowerCase(Locale.ROOT), d);
+                    hasSheets |= isSheet(d.displayName);
+                }
+                java.util.Set<String> claimed = new java.util.HashSet<>();
+                if (hasSheets) {
+                    // Playlists first, since they may list cue sheets.
+                    for (int pass = 0; pass < 2; pass++) {
+                        String ext = pass == 0 ? ".m3u" : ".cue";
+                        for (DocumentTreeWalker.Document sheet : siblings) {
+                            String name = sheet.displayName != null ? sheet.displayName.toLowerCase(Locale.ROOT) : "";
+                            if (!name.endsWith(ext) || claimed.contains(sheet.documentId)) continue;
+                            List<DocumentTreeWalker.Document> members = new ArrayList<>();
+                            DocumentTreeWalker.Document data = pass == 0
+                                    ? resolvePlaylist(cr, treeUri, sheet, byName, members)
+                                    : resolveCue(cr, treeUri, sheet, byName, members);
+                            if (data == null) continue;
+                            GameEntry e = createEntry(treeUri, data, sheet.displayName, index);
+                            if (pass == 1) e.tracks = trackEntries(treeUri, members.subList(1, members.size()));
+                            claimed.add(sheet.documentId);
+                            byDocId.put(sheet.documentId, e);
+                            for (DocumentTreeWalker.Document m : members) {
+                                claimed.add(m.documentId);
+                                byDocId.put(m.documentId, e);
+                            }
+                            out.add(e);
                         }
                     }
+                }
+                for (DocumentTreeWalker.Document d : siblings) {
+                    if (claimed.contains(d.documentId) || isSheet(d.displayName)) continue;
+                    GameEntry e = createEntry(treeUri, d, index);
+                    byDocId.put(d.documentId, e);
+                    out.add(e);
+                }
+            }
+            return out;
+        }
+
+        /**
+         * Adds the files of a cue sheet to {@code members}.
+         *
+         * @return the document holding the first data track, or null when the sheet cannot be read
+         * or names a file that is not there.
+         */
+        @Nullable
+        private static DocumentTreeWalker.Document resolveCue(android.content.ContentResolver cr, Uri treeUri,
+                                                              DocumentTreeWalker.Document cue,
+                                                              java.util.Map<String, DocumentTreeWalker.Document> byName,
+                                                              List<DocumentTreeWalker.Document> members) {
+            String text = readSheet(cr, treeUri, cue);
+            if (text == null) return null;
+            CueSheet sheet = CueSheet.parse(text);
+            String dataFile = sheet.dataFile();
+            if (dataFile == null) return null;
+            List<DocumentTreeWalker.Document> files = new ArrayList<>();
+            for (String file : sheet.files) {
+                DocumentTreeWalker.Document d = byName.get(CueSheet.baseName(file).toLowerCase(Locale.ROOT));
+                if (d == null) {
+                    try { DebugLog.d("Library", cue.displayName + " references missing " + file); } catch (Throwable ignored) {}
+                    return null;
+                }
+                files.add(d);
+            }
+            members.add(cue);
+            members.addAll(files);
+            return byName.get(CueSheet.baseName(dataFile).toLowerCase(Locale.ROOT));
+        }
+
+        /**
+         * Adds the discs of an .m3u playlist, and the tracks of discs given as cue sheets, to
+         * {@code members}.
+         *
+         * @return the first disc's data document, or null when no listed disc is present.
+         */
+        @Nullable
+        private static DocumentTreeWalker.Document resolvePlaylist(android.content.ContentResolver cr, Uri treeUri,
+                                                                   DocumentTreeWalker.Document playlist,
+                                                                   java.util.Map<String, DocumentTreeWalker.Document> byName,
+                                                                   List<DocumentTreeWalker.Document> members) {
+            String text = readSheet(cr, treeUri, playlist);
+            if (text == null) return null;
+            DocumentTreeWalker.Document first = null;
+            for (String raw : text.split("\r\n|\r|\n")) {
+                String line = raw.replace("\uFEFF", "").trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                DocumentTreeWalker.Document disc = byName.get(CueSheet.baseName(line).toLowerCase(Locale.ROOT));
+                if (disc == null) continue;
+                DocumentTreeWalker.Document data = disc;
+                if (disc.displayName.toLowerCase(Locale.ROOT).endsWith(".cue")) {
+                    data = resolveCue(cr, treeUri, disc, byName, members);
+                    if (data == null) continue;
+                } else if (isSheet(disc.displayName)) {
+                    continue;
+                } else {
+                    members.add(disc);
+                }
+                if (first == null) first = data;
+            }
+            return first;
+        }
+
+        @Nullable
+        private static String readSheet(android.content.ContentResolver cr, Uri treeUri, DocumentTreeWalker.Document d) {
+            if (d.size > MAX_SHEET_BYTES) return null;
+            try (java.io.InputStream in = d.file != null ? new java.io.FileInputStream(d.file)
+                    : cr.openInputStream(android.provider.DocumentsContract.buildDocumentUriUsingTree(treeUri, d.documentId))) {
+                if (in == null) return null;
+                java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int r;
+                while ((r = in.read(buf)) > 0 && bytes.size() <= MAX_SHEET_BYTES) {
+                    bytes.write(buf, 0, r);
+                }
+                return new String(bytes.toByteArray(), java.nio.charset.StandardCharsets.UTF_8);
+            } catch (Exception ex) {
+                try { DebugLog.d("Library", "Reading " + d.displayName + " failed: " + ex.getMessage()); } catch (Throwable ignored) {}
+                return null;
+            }
+        }
+
+        private static List<GameEntry> trackEntries(Uri treeUri, List<DocumentTreeWalker.Document> files) {
+            List<GameEntry> out = new ArrayList<>(files.size());
+            for (DocumentTreeWalker.Document d : files) {
+                GameEntry t = new GameEntry(d.displayName != null ? d.displayName : "Unknown",
+                        android.provider.DocumentsContract.buildDocumentUriUsingTree(treeUri, d.documentId));
+                t.documentId = d.documentId;
+                t.size = d.size;
+                t.lastModified = d.lastModified;
+                t.localFile = d.file;
+                out.add(t);
+            }
+            return out;
+        }
+
+        static boolean isSheet(@Nullable String name) {
+            String lower = name != null ? name.toLowerCase(Locale.ROOT) : "";
+            return lower.endsWith(".cue") || lower.endsWith(".m3u");
+        }
+
+        private static GameEntry createEntry(Uri treeUri, DocumentTreeWalker.Document d, LibraryIndex index) {
+            return createEntry(treeUri, d, d.displayName, index);
+        }
+
+        /**
+         * @param title name shown for the entry; the cue sheet or playlist for grouped files
+         */
+        private static GameEntry createEntry(Uri treeUri, DocumentTreeWalker.Document d, @Nullable String title, LibraryIndex index) {
+            Uri doc = android.provider.DocumentsContract.buildDocumentUriUsingTree(treeUri, d.documentId);
+            GameEntry e = new GameEntry(title != null ? title : "Unknown", doc);
+            if (title != null && !title.equals(d.displayName)) e.fileName = d.displayName;
+            e.documentId = d.documentId;
+            e.size = d.size;
+            e.lastModified = d.lastModified;
+            e.localFile = d.file;
+            LibraryIndex.Entry known = index.get(d.documentId);
+            if (known != null && known.matches(d.size, d.lastModified)) {
+                applyIndexEntry(e, known);
+            } else {
+                String s = parseSerialFromString(e.fileTitleNoExt());
+                if (s != null) e.serial = s;
+                GameDB.apply(e);
+            }
+            return e;
+        }
+
+        /**
+         * Groups entries coming from several listing threads into batches for the listener.
+         */
+        private static final class Batcher {
+            @Nullable private final ScanListener listener;
+            private List<GameEntry> pending = new ArrayList<>();
+            private long lastFlush;
+            private boolean sentFirst;
+
+            Batcher(@Nullable ScanListener listener) {
+                this.listener = listener;
+            }
+
+            synchronized void add(List<GameEntry> entries) {
+                if (listener == null) return;
+                pending.addAll(entries);
+                long now = android.os.SystemClock.elapsedRealtime();
+                if (!sentFirst || pending.size() >= BATCH_SIZE || now - lastFlush >= BATCH_INTERVAL_MS) {
+                    flush();
+                }
+            }
+
+            synchronized void flush() {
+                if (listener == null || pending.isEmpty()) return;
+                List<GameEntry> batch = pending;
+                pending = new ArrayList<>();
+                lastFlush = android.os.SystemClock.elapsedRealtime();
+                sentFirst = true;
+                listener.onEntries(batch);
+            }
+        }
+
+        /**
+         * Entries from the last completed scan of {@code treeUri}, for drawing the grid before
+         * the folder has been listed again.
+         */
+        static List<GameEntry> loadIndexed(Context ctx, Uri treeUri) {
+            List<GameEntry> out = new ArrayList<>();
+            try {
+                for (LibraryIndex.Entry known : LibraryIndex.load(ctx, treeUri).entries()) {
+                    Uri doc = android.provider.DocumentsContract.buildDocumentUriUsingTree(treeUri, known.documentId);
+                    GameEntry e = new GameEntry(known.displayName, doc);
+                    e.documentId = known.documentId;
+                    e.size = known.size;
+                    e.lastModified = known.lastModified;
+                    applyIndexEntry(e, known);
                     out.add(e);
                 }
             } catch (Exception ignored) {}
+            return out;
+        }
+
+        static void saveIndex(Context ctx, Uri treeUri, List<GameEntry> entries) {
+            try {
+                List<LibraryIndex.Entry> records = new ArrayList<>(entries.size());
+                for (GameEntry e : entries) {
+                    if (e == null || e.documentId == null) continue;
+                    int flags = e.redumpChecked ? LibraryIndex.FLAG_REDUMP_CHECKED : 0;
+                    if (e.dumpVerified) flags |= LibraryIndex.FLAG_DUMP_VERIFIED;
+                    if (e.dumpMismatch) flags |= LibraryIndex.FLAG_DUMP_MISMATCH;
+                    records.add(new LibraryIndex.Entry(e.documentId, e.title, e.size, e.lastModified,
+                            e.serial, e.gameTitle, e.coverPath, e.fingerprint, e.md5, e.md5Size, flags));
+                }
+                LibraryIndex index = LibraryIndex.load(ctx, treeUri);
+                index.replaceAll(records);
+                index.save();
+            } catch (Exception ex) {
+                try { DebugLog.w("Library", "Saving library index failed: " + ex.getMessage()); } catch (Throwable ignored) {}
+            }
+        }
+
+        private static void applyIndexEntry(GameEntry e, LibraryIndex.Entry known) {
+            e.serial = known.serial;
+            e.gameTitle = known.title;
+            e.coverPath = known.coverPath;
+            e.fingerprint = known.fingerprint;
+            e.md5 = known.md5;
+            e.md5Size = known.md5Size;
+            e.redumpChecked = known.hasFlag(LibraryIndex.FLAG_REDUMP_CHECKED);
+            e.dumpVerified = known.hasFlag(LibraryIndex.FLAG_DUMP_VERIFIED);
+            e.dumpMismatch = known.hasFlag(LibraryIndex.FLAG_DUMP_MISMATCH);
+            e.fromIndex = true;
+            GameDB.apply(e);
+        }
+
+        static boolean isGameFile(@Nullable String name, @Nullable String mime) {
+            String lower = (name != null ? name : "Unknown").toLowerCase();
+            for (String ext : EXTS) { if (lower.endsWith(ext)) return true; }
+            if (mime != null) {
+                String lm = mime.toLowerCase();
+                if (lm.contains("iso9660") || lm.equals("application/x-iso9660-image")) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Reads disc headers for entries whose filename carried no serial and fingerprints every
+         * image that has none yet. Runs on a small pool
+         * of its own so slow images do not hold up listing, and gives up after
+         * {@link #PROBE_BUDGET_MS} so a huge library still returns promptly.
+         */
+        private static void probeSerials(android.content.ContentResolver cr, List<GameEntry> entries,
+                                         @Nullable java.util.concurrent.atomic.AtomicBoolean cancelled,
+                                         @Nullable ScanListener listener) {
+            List<GameEntry> todo = new ArrayList<>();
+            for (GameEntry e : entries) {
+                if (isProbeable(e.imageName()) && (e.fingerprint == null || (e.serial == null && !e.fromIndex))) todo.add(e);
+            }
+            if (todo.isEmpty()) return;
+            final long deadline = android.os.SystemClock.elapsedRealtime() + PROBE_BUDGET_MS;
+            java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(PROBE_THREADS, r -> {
+                Thread t = new Thread(r, "SerialProbe");
+                t.setDaemon(true);
+                return t;
+            });
+            final java.util.concurrent.ConcurrentLinkedQueue<GameEntry> updated = new java.util.concurrent.ConcurrentLinkedQueue<>();
+            try {
+                List<java.util.concurrent.Future<?>> futures = new ArrayList<>(todo.size());
+                for (GameEntry e : todo) {
+                    futures.add(pool.submit(() -> {
+                        if ((cancelled != null && cancelled.get()) || android.os.SystemClock.elapsedRealtime() > deadline) return;
+                        String before = e.serial;
+                        probeSerial(cr, e);
+                        if (e.serial != null && !e.serial.equals(before)) updated.add(e);
+                    }));
+                }
+                long lastFlush = android.os.SystemClock.elapsedRealtime();
+                for (java.util.concurrent.Future<?> f : futures) {
+                    try { f.get(); } catch (java.util.concurrent.ExecutionException ignored) {}
+                    long now = android.os.SystemClock.elapsedRealtime();
+                    if (listener != null && !updated.isEmpty() && now - lastFlush >= BATCH_INTERVAL_MS) {
+                        lastFlush = now;
+                        listener.onEntriesUpdated(drain(updated));
+                    }
+                }
+                if (listener != null && !updated.isEmpty()) {
+                    listener.onEntriesUpdated(drain(updated));
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pool.shutdownNow();
+            }
+            if (android.os.SystemClock.elapsedRealtime() > deadline) {
+                try { DebugLog.d("ISO", "Serial probe budget exhausted after " + todo.size() + " candidates"); } catch (Throwable ignored) {}
+            }
+        }
+
+        private static List<GameEntry> drain(java.util.Queue<GameEntry> queue) {
+            List<GameEntry> out = new ArrayList<>();
+            GameEntry e;
+            while ((e = queue.poll()) != null) out.add(e);
+            return out;
+        }
+
+        private static boolean isProbeable(String name) {
+            String lowerName = name != null ? name.toLowerCase() : "";
+            return lowerName.endsWith(".iso") || lowerName.endsWith(".img") || lowerName.endsWith(".cso")
+                    || lowerName.endsWith(".zso") || lowerName.endsWith(".chd") || lowerName.endsWith(".bin");
+        }
+
+        static DiscImageSource openImage(android.content.ContentResolver cr, GameEntry e) throws IOException {
+            if (e.localFile != null) {
+                try {
+                    return DiscImageSource.open(e.localFile);
+                } catch (IOException | RuntimeException direct) {
+                    try { DebugLog.d("ISO", "Direct open failed, using the provider: " + direct.getMessage()); } catch (Throwable ignored) {}
+                }
+            }
+            return DiscImageSource.open(cr, e.uri);
+        }
+
+        private static void probeSerial(android.content.ContentResolver cr, GameEntry e) {
+            // Raw BIN/IMG dumps are read through a 2048-byte-sector view of the same image.
+            try (DiscImageSource src = DiscImageSource.cooked(openImage(cr, e))) {
+                String isoSerial = tryExtractIsoSerial(src);
+                if (isoSerial != null && e.serial == null) e.serial = isoSerial;
+                GameDB.apply(e);
+                String fingerprint = DiscFingerprint.compute(src, isoSerial);
+                e.fingerprint = fingerprint != null ? fingerprint : "";
+            } catch (Throwable t) {
+                e.fingerprint = "";
+                try { DebugLog.d("ISO", "Serial parse failed: " + t.getMessage()); } catch (Throwable ignored) {}
+            }
+        }
+
+        /**
+         * Collapses copies of the same dump, found by fingerprint, into the entry that is cheapest
+         * to load: internal storage before removable storage and other providers, then plain
+         * images before CSO/ZSO, CHD and gzip. That entry gets the others as
+         * {@link GameEntry#otherLocations}; entries are otherwise left in place.
+         *
+         * @return the entries that are not the chosen copy of their dump.
+         */
+        static List<GameEntry> groupLocations(List<GameEntry> entries) {
+            java.util.Map<String, List<GameEntry>> byFingerprint = new java.util.LinkedHashMap<>();
+            for (GameEntry e : entries) {
+                if (e == null) continue;
+                e.otherLocations = Collections.emptyList();
+                if (TextUtils.isEmpty(e.fingerprint)) continue;
+                List<GameEntry> group = byFingerprint.get(e.fingerprint);
+                if (group == null) byFingerprint.put(e.fingerprint, group = new ArrayList<>(1));
+                group.add(e);
+            }
+            List<GameEntry> others = new ArrayList<>();
+            for (List<GameEntry> group : byFingerprint.values()) {
+                if (group.size() < 2) continue;
+                // Stable, so equally good copies keep the first one listed.
+                java.util.Collections.sort(group, (a, b) -> Integer.compare(locationCost(a), locationCost(b)));
+                GameEntry best = group.get(0);
+                best.otherLocations = new ArrayList<>(group.subList(1, group.size()));
+                others.addAll(best.otherLocations);
+            }
+            return others;
+        }
+
+        /** True for files not on internal storage: SD cards, USB drives and other providers. */
+        static boolean isRemovable(GameEntry e) {
+            return storageRank(e) > 0;
+        }
+
+        private static int storageRank(GameEntry e) {
+            String docId = e.documentId != null ? e.documentId : "";
+            if (docId.startsWith("primary:")
+                    || (e.localFile != null && e.localFile.getPath().startsWith("/storage/emulated/"))) {
+                return 0;
+            }
+            // ExternalStorageProvider names SD cards and USB drives by volume UUID.
+            return docId.matches("[0-9A-Fa-f]{4}-[0-9A-Fa-f]{4}:.*") ? 1 : 2;
+        }
+
+        private static int locationCost(GameEntry e) {
+            int storage = storageRank(e);
+            int format;
+            switch (formatOf(e.imageName())) {
+                case "cso":
+                case "zso":
+                    format = 1;
+                    break;
+                case "chd":
+                    format = 2;
+                    break;
+                case "gz":
+                    format = 3;
+                    break;
+                default:
+                    format = 0;
+                    break;
+            }
+            return storage * 4 + format;
+        }
+
+        static List<String> debugList(Context ctx, Uri treeUri) {
+            List<String> out = new ArrayList<>();
+            try {
+                android.content.ContentResolver cr = ctx.getContentResolver();
+                String rootId = android.provider.DocumentsContract.getTreeDocumentId(treeUri);
+                debugChildren(cr, treeUri, rootId, out, 0, 3, "/");
+            } catch (Exception e) { out.add("Error: " + e.getMessage()); }
+            return out;
         }
 
         private static void debugChildren(android.content.ContentResolver cr, Uri treeUri, String parentDocId,
@@ -5243,589 +6352,356 @@ public class MainActivity extends AppCompatActivity {
             return null;
         }
 
-        static String tryExtractIsoSerial(android.content.ContentResolver cr, Uri uri) throws java.io.IOException {
-            final int SECTOR = 2048;
-            byte[] pvd = readRange(cr, uri, 16L * SECTOR, SECTOR);
-            if (pvd == null || pvd.length < SECTOR) return null;
-            if (pvd[0] != 0x01 || pvd[1] != 'C' || pvd[2] != 'D' || pvd[3] != '0' || pvd[4] != '0' || pvd[5] != '1')
-                return null;
-            int rootLBA = u32le(pvd, 156 + 2);
-            int rootSize = u32le(pvd, 156 + 10);
-            if (rootLBA <= 0 || rootSize <= 0 || rootSize > 512 * 1024) rootSize = 64 * 1024;
-            byte[] dir = readRange(cr, uri, (long) rootLBA * SECTOR, rootSize);
-            if (dir == null) return null;
-            int off = 0;
-            while (off < dir.length) {
-                int len = u8(dir, off);
-                if (len == 0) {
-                    int next = ((off / SECTOR) + 1) * SECTOR;
-                    if (next <= off) break;
-                    off = next;
-                    continue;
-                }
-                if (off + len > dir.length) break;
-                int lba = u32le(dir, off + 2);
-                int size = u32le(dir, off + 10);
-                int nameLen = u8(dir, off + 32);
-                int namePos = off + 33;
-                if (namePos + nameLen <= dir.length && nameLen > 0) {
-                    String name = new String(dir, namePos, nameLen, java.nio.charset.StandardCharsets.US_ASCII);
-                    if (!(nameLen == 1 && (dir[namePos] == 0 || dir[namePos] == 1))) {
-                        String norm = name;
-                        int semi = norm.indexOf(';');
-                        if (semi >= 0) norm = norm.substring(0, semi);
-                        if ("SYSTEM.CNF".equalsIgnoreCase(norm)) {
-                            int readSize = Math.min(size, 4096);
-                            byte[] cnf = readRange(cr, uri, (long) lba * SECTOR, readSize);
-                            if (cnf != null) {
-                                String txt = new String(cnf, java.nio.charset.StandardCharsets.US_ASCII);
-                java.util.regex.Matcher m = java.util.regex.Pattern.compile(
-                    "BOOT\\d*\\s*=\\s*[^\\\\\\r\\n]*\\\\([A-Z0-9_\\.]+)",
-                    java.util.regex.Pattern.CASE_INSENSITIVE).matcher(txt);
-                                if (m.find()) {
-                                    String bootElf = m.group(1);
-                                    String serial = parseSerialFromString(bootElf);
-                                    if (serial != null) return serial;
-                                }
-                            }
-                            break;
-                        }
+        /**
+         * Serial from the boot executable named in SYSTEM.CNF, or null for discs without one.
+         */
+        static String tryExtractIsoSerial(DiscImageSource src) throws java.io.IOException {
+            DiscInfo info = DiscInfo.read(IsoFileSystem.open(src));
+            return info != null ? parseSerialFromString(info.bootElf) : null;
+        }
+    }
+
+    /**
+     * Titles and regions by serial from GameIndex.yaml, the list the emulator core reads, so a
+     * serial found in a filename or SYSTEM.CNF names the game without hashing the image.
+     */
+    static class GameDB {
+        private static final Object LOCK = new Object();
+        private static volatile GameIndex sIndex = null;
+        private static volatile boolean sLoadFailed = false;
+
+        /**
+         * Maps the compiled list, compiling it from GameIndex.yaml in the data directory, or from
+         * the bundled copy, when it is missing or older than its source.
+         */
+        private static void ensureLoaded(Context ctx) {
+            if (sIndex != null || sLoadFailed) return;
+            synchronized (LOCK) {
+                if (sIndex != null || sLoadFailed) return;
+                File f = new File(RedumpDB.externalResourcesPath(ctx), "GameIndex.yaml");
+                File compiled = new File(new File(ctx.getFilesDir(), "gameindex"), "GameIndex.idx");
+                long started = android.os.SystemClock.elapsedRealtime();
+                GameIndex index;
+                if (f.isFile()) {
+                    index = GameIndex.load(compiled, f.length(), f.lastModified(), () -> new java.io.FileInputStream(f));
+                } else {
+                    long installed;
+                    try {
+                        installed = ctx.getPackageManager().getPackageInfo(ctx.getPackageName(), 0).lastUpdateTime;
+                    } catch (Exception e) {
+                        installed = 0L;
                     }
+                    index = GameIndex.load(compiled, -1L, installed, () -> ctx.getAssets().open("resources/GameIndex.yaml"));
+                }
+                if (index == null) {
+                    sLoadFailed = true;
+                    try { DebugLog.w("GameDB", "Game list not available"); } catch (Throwable ignored) {}
+                    return;
                 }
-                off += len;
+                sIndex = index;
+                try { DebugLog.i("GameDB", "Loaded " + index.size() + " serials in " + (android.os.SystemClock.elapsedRealtime() - started) + " ms"); } catch (Throwable ignored) {}
             }
-            return null;
         }
 
-        static String tryExtractBinSerialQuick(android.content.ContentResolver cr, Uri uri) throws java.io.IOException {
-            final int MAX = 8 * 1024 * 1024; 
-            byte[] buf;
-            try (java.io.InputStream in = CsoUtils.openInputStream(cr, uri)) {
-                if (in == null) return null;
-                java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream(Math.min(MAX, 1 << 20));
-                byte[] tmp = new byte[64 * 1024];
-                int total = 0;
-                while (total < MAX) {
-                    int want = Math.min(tmp.length, MAX - total);
-                    int r = in.read(tmp, 0, want);
-                    if (r <= 0) break;
-                    bos.write(tmp, 0, r);
-                    total += r;
-                }
-                buf = bos.toByteArray();
+        /**
+         * Fills in the region of an entry with a serial, and its title when it has none. On the
+         * main thread only a list that is already mapped is used.
+         */
+        static void apply(GameEntry e) {
+            if (e == null || TextUtils.isEmpty(e.serial)) return;
+            if (android.os.Looper.myLooper() != android.os.Looper.getMainLooper()) {
+                Context ctx = NativeApp.getContext();
+                if (ctx != null) ensureLoaded(ctx);
             }
-            if (buf == null || buf.length == 0) return null;
-            String txt = new String(buf, java.nio.charset.StandardCharsets.US_ASCII);
-            java.util.regex.Matcher m = java.util.regex.Pattern.compile(
-                "BOOT\\d*\\s*=\\s*[^\\\\\\r\\n]*\\\\([A-Z0-9_\\.]+)",
-                java.util.regex.Pattern.CASE_INSENSITIVE).matcher(txt);
-            if (m.find()) {
-                String bootElf = m.group(1);
-                String serial = parseSerialFromString(bootElf);
-                if (serial != null) return serial;
-            }
-            String s2 = parseSerialFromString(txt);
-            return s2;
+            GameIndex index = sIndex;
+            if (index == null) return;
+            GameIndex.Match m = index.find(e.serial);
+            if (m == null) return;
+            if (TextUtils.isEmpty(e.gameTitle)) e.gameTitle = m.displayName();
+            if (!m.region.isEmpty()) e.region = m.region;
         }
+    }
 
-        private static int u8(byte[] a, int i) { return (i >= 0 && i < a.length) ? (a[i] & 0xFF) : 0; }
-        private static int u32le(byte[] a, int i) {
-            if (i + 3 >= a.length) return 0;
-            return (a[i] & 0xFF) | ((a[i+1] & 0xFF) << 8) | ((a[i+2] & 0xFF) << 16) | ((a[i+3] & 0xFF) << 24);
+    static class RedumpDB {
+        static class Result { String serial; String name; }
+        private static final Object LOCK = new Object();
+        private static volatile RedumpIndex sIndex = null;
+        private static volatile boolean sLoadFailed = false;
+        private static volatile HashService sHashService = null;
+        /** Files hashed at once from internal flash and from SD cards or other providers. */
+        private static final int HASH_FILES_INTERNAL = 2;
+        private static final int HASH_FILES_REMOVABLE = 1;
+        /** Ahead of background lookups, including rows promoted for being on screen. */
+        private static final int VERIFY_PRIORITY = 2;
+        /** Digests Verify dump takes of every file, all in a single read. */
+        static final String[] VERIFY_ALGORITHMS = {"MD5", "SHA-1", HashService.CRC32};
+
+        static String externalResourcesPath(Context ctx) {
+            File base = DataDirectoryManager.getDataRoot(ctx);
+            return new File(base, "resources").getAbsolutePath();
         }
-        private static byte[] readRange(android.content.ContentResolver cr, Uri uri, long offset, int size) throws java.io.IOException {
-            if (size <= 0) return null;
-            if (size > 2 * 1024 * 1024) size = 2 * 1024 * 1024;
-            byte[] csoBytes = CsoUtils.readRange(cr, uri, offset, size);
-            if (csoBytes != null) {
-                return csoBytes;
-            }
-            try (java.io.InputStream in = cr.openInputStream(uri)) {
-                if (in == null) return null;
-                long toSkip = offset;
-                byte[] skipBuf = new byte[8192];
-                while (toSkip > 0) {
-                    long skipped = in.skip(toSkip);
-                    if (skipped <= 0) {
-                        int r = in.read(skipBuf, 0, (int) Math.min(skipBuf.length, toSkip));
-                        if (r <= 0) break;
-                        toSkip -= r;
-                    } else {
-                        toSkip -= skipped;
+
+        /**
+         * Maps the compiled hash list, compiling it from RedumpDatabase.yaml in the data
+         * directory, or from the bundled copy, when it is missing or older than its source.
+         */
+        private static void ensureLoaded(Context ctx) {
+            if (sIndex != null || sLoadFailed) return;
+            synchronized (LOCK) {
+                if (sIndex != null || sLoadFailed) return;
+                File f = new File(externalResourcesPath(ctx), "RedumpDatabase.yaml");
+                File compiled = new File(new File(ctx.getFilesDir(), "redump"), "RedumpDatabase.idx");
+                long started = android.os.SystemClock.elapsedRealtime();
+                RedumpIndex index;
+                if (f.isFile()) {
+                    index = RedumpIndex.load(compiled, f.length(), f.lastModified(), () -> new java.io.FileInputStream(f));
+                } else {
+                    long installed;
+                    try {
+                        installed = ctx.getPackageManager().getPackageInfo(ctx.getPackageName(), 0).lastUpdateTime;
+                    } catch (Exception e) {
+                        installed = 0L;
                     }
+                    index = RedumpIndex.load(compiled, -1L, installed, () -> ctx.getAssets().open("resources/RedumpDatabase.yaml"));
                 }
-                byte[] buf = new byte[size];
-                int off2 = 0;
-                while (off2 < size) {
-                    int r = in.read(buf, off2, size - off2);
-                    if (r <= 0) break;
-                    off2 += r;
+                if (index == null) {
+                    sLoadFailed = true;
+                    try { DebugLog.w("Redump", "Database not available"); } catch (Throwable ignored) {}
+                    return;
                 }
-                if (off2 == 0) return null;
-                if (off2 < size) return java.util.Arrays.copyOf(buf, off2);
-                return buf;
+                sIndex = index;
+                try { DebugLog.i("Redump", "Loaded " + index.size() + " hashes in " + (android.os.SystemClock.elapsedRealtime() - started) + " ms"); } catch (Throwable ignored) {}
             }
         }
-    }
 
-    private static final class CsoUtils {
-        private static final int MAGIC_CISO = 0x4F534943;
-        private static final int MAGIC_ZISO = 0x4F53495A;
-
-        private CsoUtils() {}
+        interface LookupListener {
+            /** Called while the image is hashed, on a hashing thread. */
+            default void onProgress(GameEntry e, long hashed, long total) {}
+            /** Called once the entry has been looked up, unless the lookup was cancelled. */
+            void onLookup(GameEntry e, @Nullable Result r);
+        }
 
-        @Nullable
-        static byte[] readRange(android.content.ContentResolver cr, Uri uri, long offset, int size) {
-            CsoReader reader = null;
-            try {
-                reader = CsoReader.open(cr, uri);
-                if (reader == null) {
-                    return null;
+        private static HashService hashService() throws java.security.NoSuchAlgorithmException {
+            HashService service = sHashService;
+            if (service != null) return service;
+            synchronized (LOCK) {
+                if (sHashService == null) {
+                    sHashService = new HashService("MD5", HASH_FILES_INTERNAL, HASH_FILES_REMOVABLE);
                 }
-                return reader.readRange(offset, size);
-            } catch (Exception ignored) {
-                return null;
-            } finally {
-                closeQuietly(reader);
+                return sHashService;
             }
         }
 
-        @Nullable
-        static java.io.InputStream openInputStream(android.content.ContentResolver cr, Uri uri) throws java.io.IOException {
-            CsoReader reader = CsoReader.open(cr, uri);
-            if (reader == null) {
-                return cr.openInputStream(uri);
+        /**
+         * Identifies an entry by the MD5 and size of its uncompressed image, waiting for the
+         * result.
+         */
+        static Result lookup(android.content.ContentResolver cr, GameEntry e) {
+            final Result[] out = new Result[1];
+            HashService.Job job = lookupAsync(cr, e, 0, (entry, r) -> out[0] = r);
+            if (job != null) {
+                try {
+                    job.await();
+                } catch (InterruptedException ie) {
+                    job.cancel();
+                    Thread.currentThread().interrupt();
+                }
             }
-            return new CsoInputStream(reader);
+            return out[0];
         }
 
-        private static void closeQuietly(@Nullable Closeable closeable) {
-            if (closeable == null) {
-                return;
+        /**
+         * Starts identifying an entry. A digest kept from an earlier scan is reused; otherwise
+         * the image is hashed on the shared {@link HashService}, but only when some listed disc
+         * has its size, and the digest is kept on the entry for the library index. Must not be
+         * called on the main thread, as the first call maps the hash list.
+         *
+         * @return the hash job, or null when no hashing was needed and {@code listener} has
+         * already been called.
+         */
+        @Nullable
+        static HashService.Job lookupAsync(android.content.ContentResolver cr, GameEntry e, int priority,
+                                           LookupListener listener) {
+            Context ctx = NativeApp.getContext();
+            if (ctx != null) ensureLoaded(ctx);
+            final RedumpIndex index = sIndex;
+            if (index == null || index.size() == 0) {
+                listener.onLookup(e, null);
+                return null;
+            }
+            if (e.md5 != null) {
+                listener.onLookup(e, toResult(index.find(e.md5, e.md5Size)));
+                return null;
             }
             try {
-                closeable.close();
-            } catch (Exception ignored) {}
-        }
-
-        private static final class CsoReader implements Closeable {
-            private final ParcelFileDescriptor descriptor;
-            private final FileInputStream inputStream;
-            private final FileChannel channel;
-            private final long uncompressedSize;
-            private final int blockSize;
-            private final int alignShift;
-            private final int[] indexTable;
-            private final int blockCount;
-
-            private CsoReader(ParcelFileDescriptor descriptor, FileInputStream inputStream, FileChannel channel,
-                              long uncompressedSize, int blockSize, int alignShift, int[] indexTable) {
-                this.descriptor = descriptor;
-                this.inputStream = inputStream;
-                this.channel = channel;
-                this.uncompressedSize = uncompressedSize;
-                this.blockSize = blockSize;
-                this.alignShift = alignShift;
-                this.indexTable = indexTable;
-                this.blockCount = indexTable.length - 1;
-            }
-
-            static CsoReader open(android.content.ContentResolver cr, Uri uri) throws java.io.IOException {
-                ParcelFileDescriptor pfd = cr.openFileDescriptor(uri, "r");
-                if (pfd == null) {
-                    return null;
-                }
-                FileInputStream fis = null;
-                try {
-                    fis = new FileInputStream(pfd.getFileDescriptor());
-                    FileChannel channel = fis.getChannel();
-                    ByteBuffer header = ByteBuffer.allocate(0x18).order(ByteOrder.LITTLE_ENDIAN);
-                    if (channel.read(header) < 0x18) {
-                        closeQuietly(fis);
-                        closeQuietly(pfd);
-                        return null;
-                    }
-                    header.flip();
-                    int magic = header.getInt();
-                    if (magic != MAGIC_CISO && magic != MAGIC_ZISO) {
-                        closeQuietly(fis);
-                        closeQuietly(pfd);
+                return hashService().submit(() -> {
+                    DiscImageSource src = GameScanner.openImage(cr, e);
+                    long size = src.size();
+                    if (!src.matchesDumpHashes() || (size >= 0 && !index.hasSize(size))) {
+                        src.close();
                         return null;
                     }
-                    int headerSize = header.getInt();
-                    long uncompressedSize = header.getLong();
-                    int blockSize = header.getInt();
-                    header.get();
-                    int align = header.get() & 0xFF;
-                    header.get();
-                    header.get();
-                    if (blockSize <= 0 || uncompressedSize <= 0 || headerSize < 0x18) {
-                        closeQuietly(fis);
-                        closeQuietly(pfd);
-                        return null;
-                    }
-                    int entryCount = (headerSize - 0x18) / 4;
-                    if (entryCount <= 1) {
-                        closeQuietly(fis);
-                        closeQuietly(pfd);
-                        return null;
+                    return src;
+                }, GameScanner.isRemovable(e), priority, new HashService.Listener() {
+                    @Override
+                    public void onProgress(HashService.Job job, long hashed, long total) {
+                        listener.onProgress(e, hashed, total);
                     }
-                    int[] table = new int[entryCount];
-                    ByteBuffer indexBuffer = ByteBuffer.allocate(entryCount * 4).order(ByteOrder.LITTLE_ENDIAN);
-                    if (channel.read(indexBuffer) < entryCount * 4) {
-                        closeQuietly(fis);
-                        closeQuietly(pfd);
-                        return null;
-                    }
-                    indexBuffer.flip();
-                    for (int i = 0; i < entryCount; i++) {
-                        table[i] = indexBuffer.getInt();
-                    }
-                    return new CsoReader(pfd, fis, channel, uncompressedSize, blockSize, align, table);
-                } catch (Exception e) {
-                    closeQuietly(fis);
-                    closeQuietly(pfd);
-                    throw e;
-                }
-            }
-
-            byte[] readRange(long offset, int size) throws java.io.IOException {
-                if (size <= 0 || offset < 0 || offset >= uncompressedSize) {
-                    return null;
-                }
-                int cappedSize = (int)Math.min(size, uncompressedSize - offset);
-                byte[] output = new byte[cappedSize];
-                byte[] blockBuffer = new byte[blockSize];
-                int startBlock = (int)(offset / blockSize);
-                int endBlock = Math.min(blockCount, (int)Math.ceil((offset + cappedSize) / (double)blockSize));
-                int outOffset = 0;
-                int offsetInBlock = (int)(offset % blockSize);
-                long remaining = cappedSize;
-                for (int block = startBlock; block < endBlock && remaining > 0; block++) {
-                    int produced = readBlockInto(block, blockBuffer);
-                    if (produced <= 0) {
-                        break;
-                    }
-                    int start = (block == startBlock) ? offsetInBlock : 0;
-                    if (start >= produced) {
-                        continue;
-                    }
-                    int copyLength = (int)Math.min(produced - start, remaining);
-                    System.arraycopy(blockBuffer, start, output, outOffset, copyLength);
-                    outOffset += copyLength;
-                    remaining -= copyLength;
-                }
-                if (outOffset == 0) {
-                    return null;
-                }
-                if (outOffset < output.length) {
-                    return Arrays.copyOf(output, outOffset);
-                }
-                return output;
-            }
 
-            int readBlockInto(int blockIndex, byte[] dest) throws java.io.IOException {
-                if (blockIndex < 0 || blockIndex >= blockCount) {
-                    return -1;
-                }
-                long startOffset = (long)(indexTable[blockIndex] & 0x7FFFFFFFL) << alignShift;
-                long endOffset = (long)(indexTable[blockIndex + 1] & 0x7FFFFFFFL) << alignShift;
-                boolean isPlain = (indexTable[blockIndex] & 0x80000000) != 0;
-                int compressedSize = (int)Math.max(0, endOffset - startOffset);
-                int expectedSize = (int)Math.min(blockSize, uncompressedSize - ((long)blockIndex * blockSize));
-                if (expectedSize <= 0) {
-                    return 0;
-                }
-                if (compressedSize == 0) {
-                    Arrays.fill(dest, 0, expectedSize, (byte)0);
-                    return expectedSize;
-                }
-                byte[] compressed = new byte[compressedSize];
-                ByteBuffer buffer = ByteBuffer.wrap(compressed);
-                channel.position(startOffset);
-                int readTotal = 0;
-                while (buffer.hasRemaining()) {
-                    int r = channel.read(buffer);
-                    if (r <= 0) {
-                        break;
-                    }
-                    readTotal += r;
-                }
-                if (readTotal != compressedSize) {
-                    return -1;
-                }
-                if (isPlain) {
-                    int toCopy = Math.min(expectedSize, compressedSize);
-                    System.arraycopy(compressed, 0, dest, 0, toCopy);
-                    if (toCopy < expectedSize) {
-                        Arrays.fill(dest, toCopy, expectedSize, (byte)0);
-                    }
-                    return expectedSize;
-                }
-                Inflater inflater = new Inflater(true);
-                try {
-                    inflater.setInput(compressed);
-                    int total = 0;
-                    while (!inflater.finished() && total < expectedSize) {
-                        int r = inflater.inflate(dest, total, expectedSize - total);
-                        if (r <= 0) {
-                            if (inflater.needsInput() || inflater.finished()) {
-                                break;
-                            }
-                        } else {
-                            total += r;
+                    @Override
+                    public void onFinished(HashService.Job job) {
+                        if (job.isCancelled()) return;
+                        byte[] digest = job.digest();
+                        if (digest == null) {
+                            listener.onLookup(e, null);
+                            return;
                         }
+                        e.md5 = digest;
+                        e.md5Size = job.size();
+                        listener.onLookup(e, toResult(index.find(digest, job.size())));
                     }
-                    if (total <= 0) {
-                        Arrays.fill(dest, 0, expectedSize, (byte)0);
-                        return expectedSize;
-                    }
-                    return total;
-                } catch (Exception ignored) {
-                    return -1;
-                } finally {
-                    inflater.end();
-                }
-            }
-
-            int getBlockCount() {
-                return blockCount;
-            }
-
-            int getBlockSize() {
-                return blockSize;
+                });
+            } catch (java.security.NoSuchAlgorithmException ex) {
+                listener.onLookup(e, null);
+                return null;
             }
+        }
 
-            long getUncompressedSize() {
-                return uncompressedSize;
-            }
+        /** One file of a dump as Verify dump found it. */
+        static final class TrackCheck {
+            final GameEntry file;
+            @Nullable byte[] md5;
+            @Nullable byte[] sha1;
+            @Nullable byte[] crc32;
+            long size = -1;
+            /** The listed disc with this file's MD5 and size, if any. */
+            @Nullable RedumpIndex.Match match;
+            /** Set when the image format does not keep the bytes Redump hashed. */
+            boolean unsupported;
 
-            @Override
-            public void close() throws java.io.IOException {
-                try {
-                    channel.close();
-                } finally {
-                    try {
-                        inputStream.close();
-                    } finally {
-                        descriptor.close();
-                    }
-                }
-            }
+            TrackCheck(GameEntry file) { this.file = file; }
         }
 
-        private static final class CsoInputStream extends java.io.InputStream {
-            private final CsoReader reader;
-            private final byte[] blockBuffer;
-            private int currentBlock = 0;
-            private int blockPos = 0;
-            private int blockLimit = 0;
-            private long bytesRemaining;
-
-            CsoInputStream(CsoReader reader) {
-                this.reader = reader;
-                this.blockBuffer = new byte[reader.getBlockSize()];
-                this.bytesRemaining = reader.getUncompressedSize();
-            }
+        interface VerifyListener {
+            /** Called on a hashing thread with the bytes hashed so far over all files. */
+            void onProgress(long hashed, long total);
+        }
 
-            @Override
-            public int read() throws java.io.IOException {
-                byte[] single = new byte[1];
-                int r = read(single, 0, 1);
-                if (r <= 0) {
-                    return -1;
-                }
-                return single[0] & 0xFF;
-            }
+        /**
+         * Hashes each file with {@link #VERIFY_ALGORITHMS} in one read and looks its MD5 up.
+         * Blocks until every file is done; files that cannot be read come back without digests.
+         *
+         * @return the files in order, or null when {@code cancel} was set or the thread interrupted.
+         */
+        @Nullable
+        static List<TrackCheck> verify(android.content.ContentResolver cr, List<GameEntry> files,
+                                       AtomicBoolean cancel, VerifyListener listener) {
+            Context ctx = NativeApp.getContext();
+            if (ctx != null) ensureLoaded(ctx);
+            final RedumpIndex index = sIndex;
+            final long[] hashed = new long[files.size()];
+            final long[] totals = new long[files.size()];
+            final boolean[] unsupported = new boolean[files.size()];
+            for (int i = 0; i < files.size(); i++) totals[i] = Math.max(0L, files.get(i).size);
+            List<HashService.Job> jobs = new ArrayList<>(files.size());
+            try {
+                HashService service = hashService();
+                for (int i = 0; i < files.size(); i++) {
+                    final int slot = i;
+                    final GameEntry f = files.get(i);
+                    jobs.add(service.submit(() -> {
+                                DiscImageSource src = GameScanner.openImage(cr, f);
+                                if (!src.matchesDumpHashes()) {
+                                    src.close();
+                                    unsupported[slot] = true;
+                                    return null;
+                                }
+                                return src;
+                            }, GameScanner.isRemovable(f),
+                            VERIFY_PRIORITY, new HashService.Listener() {
+                                @Override
+                                public void onProgress(HashService.Job job, long done, long total) {
+                                    long sumDone = 0, sumTotal = 0;
+                                    synchronized (hashed) {
+                                        hashed[slot] = done;
+                                        if (total >= 0) totals[slot] = total;
+                                        for (int k = 0; k < hashed.length; k++) {
+                                            sumDone += hashed[k];
+                                            sumTotal += totals[k];
+                                        }
+                                    }
+                                    listener.onProgress(sumDone, sumTotal);
+                                }
 
-            @Override
-            public int read(@NonNull byte[] b, int off, int len) throws java.io.IOException {
-                if (b == null) {
-                    throw new NullPointerException();
-                }
-                if (off < 0 || len < 0 || len > b.length - off) {
-                    throw new IndexOutOfBoundsException();
-                }
-                if (len == 0) {
-                    return 0;
-                }
-                if (bytesRemaining <= 0) {
-                    return -1;
+                                @Override
+                                public void onFinished(HashService.Job job) {
+                                    synchronized (hashed) {
+                                        if (job.size() >= 0) hashed[slot] = totals[slot] = job.size();
+                                    }
+                                }
+                            }, VERIFY_ALGORITHMS));
                 }
-                int total = 0;
-                while (len > 0 && bytesRemaining > 0) {
-                    if (blockPos >= blockLimit) {
-                        if (currentBlock >= reader.getBlockCount()) {
-                            break;
-                        }
-                        blockLimit = reader.readBlockInto(currentBlock, blockBuffer);
-                        currentBlock++;
-                        blockPos = 0;
-                        if (blockLimit <= 0) {
-                            break;
-                        }
+                for (HashService.Job job : jobs) {
+                    while (!job.await(500)) {
+                        if (cancel.get()) break;
                     }
-                    int available = blockLimit - blockPos;
-                    int copy = Math.min(len, available);
-                    copy = (int)Math.min(copy, bytesRemaining);
-                    if (copy <= 0) {
-                        break;
-                    }
-                    System.arraycopy(blockBuffer, blockPos, b, off, copy);
-                    off += copy;
-                    len -= copy;
-                    total += copy;
-                    blockPos += copy;
-                    bytesRemaining -= copy;
+                    if (cancel.get()) break;
                 }
-                return total > 0 ? total : -1;
+            } catch (java.security.NoSuchAlgorithmException ex) {
+                try { DebugLog.w("Redump", "Verify unavailable: " + ex.getMessage()); } catch (Throwable ignored) {}
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                cancel.set(true);
             }
-
-            @Override
-            public void close() throws java.io.IOException {
-                reader.close();
+            if (cancel.get()) {
+                for (HashService.Job job : jobs) job.cancel();
+                return null;
             }
-        }
-    }
-
-    static class RedumpDB {
-        static class Result { String serial; String name; }
-        private static final Object LOCK = new Object();
-        private static java.util.Map<String, Result> sMd5SizeToResult = null; 
-
-        private static String md5ToLower(String s) { return s != null ? s.trim().toLowerCase() : null; }
-
-        private static String externalResourcesPath(Context ctx) {
-            File base = DataDirectoryManager.getDataRoot(ctx);
-            return new File(base, "resources").getAbsolutePath();
-        }
-
-        private static void ensureLoaded(Context ctx) {
-            if (sMd5SizeToResult != null) return;
-            synchronized (LOCK) {
-                if (sMd5SizeToResult != null) return;
-                sMd5SizeToResult = new java.util.HashMap<>(8192);
-                File f = new File(externalResourcesPath(ctx), "RedumpDatabase.yaml");
-                java.io.BufferedReader br = null;
-                try {
-                    java.io.InputStream in;
-                    if (f.exists()) {
-                        in = new java.io.FileInputStream(f);
-                    } else {
-                        try { in = ctx.getAssets().open("resources/RedumpDatabase.yaml"); }
-                        catch (Exception e) {
-                            try { DebugLog.w("Redump", "Database not found (assets and external)"); } catch (Throwable ignored) {}
-                            return;
-                        }
-                    }
-                    br = new java.io.BufferedReader(new java.io.InputStreamReader(in, java.nio.charset.StandardCharsets.UTF_8));
-                    String line;
-                    java.util.List<String[]> pendingHashes = new java.util.ArrayList<>(); // each [md5,size]
-                    String curSerial = null;
-                    String curName = null;
-                    String pendingMd5 = null;
-                    String pendingSize = null;
-                    while ((line = br.readLine()) != null) {
-                        String t = line.trim();
-                        if (t.isEmpty() || t.startsWith("#")) continue;
-                        if (t.startsWith("- hashes:")) {
-                            if (curSerial != null && !pendingHashes.isEmpty()) {
-                                for (String[] hs : pendingHashes) {
-                                    String md5 = md5ToLower(hs[0]);
-                                    String size = hs[1] != null ? hs[1].trim() : null;
-                                    if (md5 != null && size != null) {
-                                        Result r = new Result();
-                                        r.serial = curSerial;
-                                        r.name = (curName != null ? curName : curSerial);
-                                        sMd5SizeToResult.put(md5 + "|" + size, r);
-                                    }
-                                }
-                            }
-                            pendingHashes.clear();
-                            curSerial = null;
-                            curName = null;
-                            pendingMd5 = null; pendingSize = null;
-                            continue;
-                        }
-                        if (t.startsWith("- md5:")) {
-                            int idx = t.indexOf(':');
-                            if (idx >= 0) { pendingMd5 = t.substring(idx + 1).trim(); }
-                            continue;
-                        }
-                        if (t.startsWith("md5:")) {
-                            int idx = t.indexOf(':');
-                            if (idx >= 0) { pendingMd5 = t.substring(idx + 1).trim(); }
-                            continue;
-                        }
-                        if (t.startsWith("size:")) {
-                            int idx = t.indexOf(':');
-                            if (idx >= 0) { pendingSize = t.substring(idx + 1).trim(); }
-                            if (pendingMd5 != null && pendingSize != null) {
-                                pendingHashes.add(new String[]{pendingMd5, pendingSize});
-                                pendingMd5 = null; pendingSize = null;
-                            }
-                            continue;
-                        }
-                        if (t.startsWith("serial:")) {
-                            int idx = t.indexOf(':');
-                            curSerial = (idx >= 0 ? t.substring(idx + 1).trim() : null);
-                            continue;
-                        }
-                        if (t.startsWith("name:")) {
-                            int idx = t.indexOf(':');
-                            curName = (idx >= 0 ? t.substring(idx + 1).trim() : null);
-                            continue;
-                        }
-                    }
-                    if (curSerial != null && !pendingHashes.isEmpty()) {
-                        for (String[] hs : pendingHashes) {
-                            String md5 = md5ToLower(hs[0]);
-                            String size = hs[1] != null ? hs[1].trim() : null;
-                            if (md5 != null && size != null) {
-                                Result r = new Result();
-                                r.serial = curSerial;
-                                r.name = (curName != null ? curName : curSerial);
-                                sMd5SizeToResult.put(md5 + "|" + size, r);
-                            }
-                        }
-                    }
-                    pendingHashes.clear();
-                    try { DebugLog.i("Redump", "Loaded hash map entries: " + sMd5SizeToResult.size()); } catch (Throwable ignored) {}
-                } catch (Exception ex) {
-                    try { DebugLog.e("Redump", "Failed to load DB: " + ex.getMessage()); } catch (Throwable ignored) {}
-                } finally {
-                    if (br != null) try { br.close(); } catch (Exception ignored) {}
+            List<TrackCheck> out = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                TrackCheck c = new TrackCheck(files.get(i));
+                c.unsupported = unsupported[i];
+                HashService.Job job = i < jobs.size() ? jobs.get(i) : null;
+                if (job != null && job.digest() != null) {
+                    c.md5 = job.digest("MD5");
+                    c.sha1 = job.digest("SHA-1");
+                    c.crc32 = job.digest(HashService.CRC32);
+                    c.size = job.size();
+                    if (index != null) c.match = index.find(c.md5, c.size);
                 }
+                out.add(c);
             }
+            return out;
         }
 
-        static Result lookupByFile(android.content.ContentResolver cr, Uri file) {
-            Context ctx = NativeApp.getContext();
-            if (ctx == null) return null;
-            ensureLoaded(ctx);
-            if (sMd5SizeToResult == null || sMd5SizeToResult.isEmpty()) return null;
-            try {
-                MessageDigest md = MessageDigest.getInstance("MD5");
-                long total = 0;
-                final int BUF = 1024 * 1024;
-                byte[] buf = new byte[BUF];
-                try (java.io.InputStream in = CsoUtils.openInputStream(cr, file)) {
-                    if (in == null) return null;
-                    while (true) {
-                        int r = in.read(buf);
-                        if (r <= 0) break;
-                        md.update(buf, 0, r);
-                        total += r;
-                    }
-                }
-                String md5 = new java.math.BigInteger(1, md.digest()).toString(16);
-                while (md5.length() < 32) md5 = "0" + md5;
-                String key = md5ToLower(md5) + "|" + Long.toString(total);
-                Result r = sMd5SizeToResult.get(key);
-                return r;
-            } catch (Exception ignored) {
-                return null;
+        /**
+         * Verify dump verdict for {@code e}: every file must be listed, and the disc that lists
+         * the file {@code e} launches must list as many tracks as the dump has files. Tracks
+         * are not required to name the same disc, since the list keeps one disc per hash and
+         * identical audio tracks are shared between releases.
+         *
+         * @return null when a file could not be read.
+         */
+        @Nullable
+        static Boolean isVerified(GameEntry e, List<TrackCheck> checks) {
+            if (checks.isEmpty()) return null;
+            TrackCheck data = checks.get(0);
+            for (TrackCheck c : checks) {
+                if (c.md5 == null) return null;
+                if (TextUtils.equals(c.file.documentId, e.documentId)) data = c;
+            }
+            for (TrackCheck c : checks) {
+                if (c.match == null) return false;
             }
+            return data.match != null && data.match.tracks == checks.size();
+        }
+
+        private static Result toResult(RedumpIndex.Match m) {
+            if (m == null) return null;
+            Result r = new Result();
+            r.serial = m.serial;
+            r.name = m.name;
+            return r;
         }
     }
 
@@ -5878,6 +6754,9 @@ public class MainActivity extends AppCompatActivity {
         private static final java.util.concurrent.ExecutorService sExec = java.util.concurrent.Executors.newFixedThreadPool(3);
         private static final java.util.Map<String, File> sLocalCoverFiles = java.util.Collections.synchronizedMap(new java.util.HashMap<>());
         private static final java.util.Set<String> sLocalCoverMissing = java.util.Collections.synchronizedSet(new java.util.HashSet<>());
+        /** Manual covers and cached cover files; downloads stay on {@link #sExec}. */
+        private static final CoverDecoder sDecoder = new CoverDecoder(2);
+        private static final String KEY_PREFIX_MANUAL = "manual:";
         static {
             int maxMem = (int) (Runtime.getRuntime().maxMemory() / 1024);
             int cacheSize = Math.max(1024 * 8, Math.min(1024 * 64, maxMem / 16)); 
@@ -5902,26 +6781,172 @@ public class MainActivity extends AppCompatActivity {
             }
             sLocalCoverFiles.put(key, file);
             sLocalCoverMissing.remove(key);
+            entry.coverPath = file.getAbsolutePath();
         }
     GamesAdapter(List<GameEntry> d, OnClick oc) { data = d; filtered.addAll(d); onClick = oc; setHasStableIds(true); }
-        void update(List<GameEntry> d) { clearLocalCoverCache(); data.clear(); data.addAll(d); applyFilter(currentFilter); }
+        void update(List<GameEntry> d) {
+            clearLocalCoverCache();
+            data.clear();
+            data.addAll(d);
+            byKey.clear();
+            for (GameEntry e : d) byKey.put(entryKey(e), e);
+            mergeSeen = null;
+            mergeCoverMissing = null;
+            applyFilter(currentFilter);
+        }
         int getItemCountTotal() { return data.size(); }
         private String currentFilter = "";
+        private final java.util.Map<String, GameEntry> byKey = new java.util.HashMap<>();
+        private java.util.Set<String> mergeSeen;
+        /** Cover keys that had no cover when the merge began; their rows may have gained one. */
+        private java.util.Set<String> mergeCoverMissing;
         void setFilter(String q) { currentFilter = q == null ? "" : q.trim(); applyFilter(currentFilter); }
         private void applyFilter(String q) {
             filtered.clear();
-            if (TextUtils.isEmpty(q)) {
-                filtered.addAll(data);
-            } else {
-                String needle = q.toLowerCase();
-                for (GameEntry e : data) {
-                    String t = e != null && e.title != null ? e.title.toLowerCase() : "";
-                    String s = e != null && e.serial != null ? e.serial.toLowerCase() : "";
-                    if (t.contains(needle) || s.contains(needle)) filtered.add(e);
-                }
+            String needle = q.toLowerCase();
+            for (GameEntry e : data) {
+                if (matchesFilter(e, needle)) filtered.add(e);
             }
             notifyDataSetChanged();
         }
+        private static boolean matchesFilter(GameEntry e, String needle) {
+            if (TextUtils.isEmpty(needle)) return true;
+            String t = e != null && e.title != null ? e.title.toLowerCase() : "";
+            String s = e != null && e.serial != null ? e.serial.toLowerCase() : "";
+            return t.contains(needle) || s.contains(needle);
+        }
+
+        /**
+         * Starts merging a rescan into the current contents. Entries not passed to
+         * {@link #mergeEntries} before {@link #finishMerge} are removed.
+         */
+        void beginMerge() {
+            synchronized (sLocalCoverMissing) {
+                mergeCoverMissing = new java.util.HashSet<>(sLocalCoverMissing);
+            }
+            clearLocalCoverCache();
+            mergeSeen = new java.util.HashSet<>();
+        }
+
+        /**
+         * Inserts new entries at their sorted position and swaps in rescanned ones for the
+         * entries they replace, notifying only the affected rows.
+         */
+        void mergeEntries(List<GameEntry> batch) {
+            String needle = currentFilter.toLowerCase();
+            for (GameEntry e : batch) {
+                String key = entryKey(e);
+                if (mergeSeen != null) mergeSeen.add(key);
+                GameEntry old = byKey.put(key, e);
+                if (old != null && ENTRY_ORDER.compare(old, e) == 0) {
+                    int d = indexOfEntry(data, old);
+                    if (d >= 0) data.set(d, e); else insertSorted(data, e);
+                    int f = indexOfEntry(filtered, old);
+                    boolean match = matchesFilter(e, needle);
+                    if (f >= 0 && match) {
+                        filtered.set(f, e);
+                        if (!sameContent(old, e) || !TextUtils.equals(old.coverPath, e.coverPath)) notifyItemChanged(f);
+                    } else if (f >= 0) {
+                        filtered.remove(f);
+                        notifyItemRemoved(f);
+                    } else if (match) {
+                        notifyItemInserted(insertSorted(filtered, e));
+                    }
+                    continue;
+                }
+                if (old != null) removeEntry(old);
+                insertSorted(data, e);
+                if (matchesFilter(e, needle)) notifyItemInserted(insertSorted(filtered, e));
+            }
+        }
+
+        /**
+         * Drops entries the rescan did not see and rebinds the rows that showed no cover before
+         * it, since the cover lookup they failed is retried on bind. Rows whose entry changed
+         * were already notified by {@link #mergeEntries}.
+         */
+        void finishMerge() {
+            if (mergeSeen == null) return;
+            for (GameEntry e : new ArrayList<>(data)) {
+                String key = entryKey(e);
+                if (!mergeSeen.contains(key)) {
+                    byKey.remove(key);
+                    removeEntry(e);
+                }
+            }
+            mergeSeen = null;
+            java.util.Set<String> coverMissing = mergeCoverMissing;
+            mergeCoverMissing = null;
+            if (coverMissing == null || coverMissing.isEmpty()) return;
+            for (int i = 0; i < filtered.size(); i++) {
+                if (coverMissing.contains(coverKey(filtered.get(i)))) notifyItemChanged(i);
+            }
+        }
+
+        /**
+         * Removes these exact entries, e.g. files a library refresh found gone.
+         */
+        void removeEntries(List<GameEntry> entries) {
+            for (GameEntry e : entries) {
+                String key = entryKey(e);
+                if (byKey.get(key) == e) byKey.remove(key);
+                removeEntry(e);
+            }
+        }
+
+        void notifyEntriesChanged(List<GameEntry> entries) {
+            for (GameEntry e : entries) {
+                int f = indexOfEntry(filtered, e);
+                if (f >= 0) notifyItemChanged(f);
+            }
+        }
+
+        private void removeEntry(GameEntry e) {
+            int d = indexOfEntry(data, e);
+            if (d >= 0) data.remove(d);
+            int f = indexOfEntry(filtered, e);
+            if (f >= 0) {
+                filtered.remove(f);
+                notifyItemRemoved(f);
+            }
+        }
+
+        private static String entryKey(GameEntry e) {
+            return e.uri != null ? e.uri.toString() : String.valueOf(e.title);
+        }
+
+        private static boolean sameContent(GameEntry a, GameEntry b) {
+            return TextUtils.equals(a.title, b.title) && TextUtils.equals(a.serial, b.serial)
+                    && TextUtils.equals(a.gameTitle, b.gameTitle);
+        }
+
+        /**
+         * Position of this exact entry, found by binary search over the sorted list and a scan
+         * of neighbours that sort equal. Titles never change, so lists stay sorted.
+         */
+        private static int indexOfEntry(List<GameEntry> list, GameEntry e) {
+            int pos = java.util.Collections.binarySearch(list, e, ENTRY_ORDER);
+            if (pos >= 0) {
+                for (int i = pos; i >= 0 && ENTRY_ORDER.compare(list.get(i), e) == 0; i--) {
+                    if (list.get(i) == e) return i;
+                }
+                for (int i = pos + 1; i < list.size() && ENTRY_ORDER.compare(list.get(i), e) == 0; i++) {
+                    if (list.get(i) == e) return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int insertSorted(List<GameEntry> list, GameEntry e) {
+            int lo = 0;
+            int hi = list.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ENTRY_ORDER.compare(list.get(mid), e) <= 0) lo = mid + 1; else hi = mid;
+            }
+            list.add(lo, e);
+            return lo;
+        }
         void setListMode(boolean list) { this.listMode = list; notifyDataSetChanged(); }
         @Override public int getItemViewType(int position) { return listMode ? 1 : 0; }
         @NonNull @Override public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -5931,7 +6956,7 @@ public class MainActivity extends AppCompatActivity {
         }
         @Override public long getItemId(int position) {
             try {
-                GameEntry e = data.get(position);
+                GameEntry e = filtered.get(position);
                 String key = (e.uri != null ? e.uri.toString() : e.title) + "|" + (e.title != null ? e.title : "");
                 return (long) key.hashCode();
             } catch (Throwable ignored) { return position; }
@@ -5939,67 +6964,34 @@ public class MainActivity extends AppCompatActivity {
         @Override public void onViewRecycled(@NonNull VH holder) {
             super.onViewRecycled(holder);
             try {
+                sDecoder.cancel(holder.img);
                 holder.img.setTag(R.id.tag_request_key, null);
                 holder.img.setImageDrawable(null);
             } catch (Throwable ignored) {}
         }
         @Override public void onBindViewHolder(@NonNull VH holder, int position) {
             GameEntry e = filtered.get(position);
-            String tpl = ((MainActivity)holder.itemView.getContext()).getCoversUrlTemplate();
+            ((MainActivity)holder.itemView.getContext()).promoteHashJob(e);
             boolean loaded = false;
             try { holder.img.setImageDrawable(null); } catch (Throwable ignored) {}
             try { holder.img.setBackgroundColor(android.graphics.Color.TRANSPARENT); } catch (Throwable ignored) {}
             if (holder.tvOverlay != null) holder.tvOverlay.setVisibility(View.GONE);
-            try {
-                String gameKey = gameKeyFromEntry(e);
-                String manual = ((MainActivity)holder.itemView.getContext()).getManualCoverUri(gameKey);
-                if (manual != null && !manual.isEmpty()) {
-                    android.net.Uri mu = android.net.Uri.parse(manual);
-                    try (java.io.InputStream is = holder.itemView.getContext().getContentResolver().openInputStream(mu)) {
-                        if (is != null) {
-                            android.graphics.Bitmap bmp = android.graphics.BitmapFactory.decodeStream(is);
-                            if (bmp != null) {
-                                holder.img.setImageBitmap(bmp);
-                                loaded = true;
-                            }
-                        }
-                    } catch (Throwable ignored) {}
-                }
-            } catch (Throwable ignored) {}
-            if (!loaded) {
-                File cachedLocal = findCachedCoverFile(holder.itemView.getContext(), e);
-                if (cachedLocal != null && cachedLocal.exists()) {
-                    String localKey = cachedLocal.getAbsolutePath();
-                    android.graphics.Bitmap cachedBmp = sCoverCache.get(localKey);
-                    if (cachedBmp != null) {
-                        holder.img.setImageBitmap(cachedBmp);
-                        loaded = true;
-                    } else {
-                        android.graphics.Bitmap bmp = android.graphics.BitmapFactory.decodeFile(localKey);
-                        if (bmp != null) {
-                            holder.img.setImageBitmap(bmp);
-                            sCoverCache.put(localKey, bmp);
-                            loaded = true;
-                        }
-                    }
-                }
-            }
-            boolean online = MainActivity.hasInternetConnection(holder.itemView.getContext());
-            if (!loaded && online && tpl != null && !tpl.isEmpty()) {
-                java.util.List<String> urls = MainActivity.buildCoverCandidateUrls(e, tpl);
-                String requestKey = (e.uri != null ? e.uri.toString() : e.title) + "|" + (e.serial != null ? e.serial : "") + "|" + (e.title != null ? e.title : "");
-                holder.img.setTag(R.id.tag_request_key, requestKey);
-                for (String u : urls) {
-                    if (u == null || u.isEmpty() || u.contains("${")) continue;
-                    android.graphics.Bitmap cached = sCoverCache.get(u);
-                    if (cached != null) {
-                        loaded = true;
-                        holder.img.setImageBitmap(cached);
-                        break;
-                    }
-                }
-                if (!loaded && !urls.isEmpty())
-                    loadImageWithFallback(holder.img, holder.tvOverlay, holder.itemView.getContext(), e, urls, requestKey);
+            String requestKey = (e.uri != null ? e.uri.toString() : e.title) + "|" + (e.serial != null ? e.serial : "") + "|" + (e.title != null ? e.title : "");
+            holder.img.setTag(R.id.tag_request_key, requestKey);
+            // Only covers already in memory are shown here; anything that needs disk or network
+            // is decoded in the background and swapped in over the title placeholder.
+            String manual = null;
+            try { manual = ((MainActivity)holder.itemView.getContext()).getManualCoverUri(gameKeyFromEntry(e)); } catch (Throwable ignored) {}
+            if (TextUtils.isEmpty(manual)) manual = null;
+            String localPath = manual == null ? knownCoverPath(e) : null;
+            String memoryKey = manual != null ? KEY_PREFIX_MANUAL + manual : localPath;
+            android.graphics.Bitmap cachedBmp = memoryKey != null ? sCoverCache.get(memoryKey) : null;
+            if (cachedBmp != null) {
+                sDecoder.cancel(holder.img);
+                holder.img.setImageBitmap(cachedBmp);
+                loaded = true;
+            } else {
+                loadCover(holder, e, manual, requestKey);
             }
             holder.img.setVisibility(View.VISIBLE);
             if (listMode) {
@@ -6019,7 +7011,10 @@ public class MainActivity extends AppCompatActivity {
                     }
                 }
             }
-            holder.itemView.setOnClickListener(v -> onClick.onClick(e));
+            holder.itemView.setOnClickListener(v -> {
+                GameEntry cur = entryAt(holder);
+                if (cur != null) onClick.onClick(cur);
+            });
             holder.itemView.setOnKeyListener((v, keyCode, event) -> {
                 if (event.getAction() != KeyEvent.ACTION_DOWN) return false;
                 RecyclerView rv = (RecyclerView) holder.itemView.getParent();
@@ -6078,10 +7073,19 @@ public class MainActivity extends AppCompatActivity {
                 return false;
             });
             holder.itemView.setOnLongClickListener(v -> {
-                try { ((MainActivity)holder.itemView.getContext()).showGameOptionsDialog(e); } catch (Throwable ignored) {}
+                GameEntry cur = entryAt(holder);
+                if (cur == null) return false;
+                try { ((MainActivity)holder.itemView.getContext()).showGameOptionsDialog(cur); } catch (Throwable ignored) {}
                 return true;
             });
         }
+        // mergeEntries swaps entries in place without rebinding unchanged rows, so listeners
+        // resolve the current entry at event time rather than keeping the one they were bound with.
+        private GameEntry entryAt(VH holder) {
+            int pos = holder.getAdapterPosition();
+            if (pos == RecyclerView.NO_POSITION || pos >= filtered.size()) return null;
+            return filtered.get(pos);
+        }
     @Override public int getItemCount() { return filtered.size(); }
         private static android.view.LayoutInflater getLayoutInflater(ViewGroup parent) {
             return android.view.LayoutInflater.from(parent.getContext());
@@ -6156,6 +7160,69 @@ public class MainActivity extends AppCompatActivity {
             } catch (Throwable ignored) {}
         }
 
+        /**
+         * Decodes the manual cover, or else the cached cover file, on {@link #sDecoder}; when
+         * neither exists, falls back to downloading from the covers URL template.
+         */
+        private void loadCover(VH holder, GameEntry e, @Nullable String manual, String requestKey) {
+            Context ctx = holder.itemView.getContext();
+            android.widget.ImageView iv = holder.img;
+            // Tiles are 2:3; before the first layout, assume a two-column grid.
+            int width = iv.getWidth() > 0 ? iv.getWidth() : ctx.getResources().getDisplayMetrics().widthPixels / 2;
+            int height = iv.getHeight() > 0 ? iv.getHeight() : width * 3 / 2;
+            sDecoder.load(iv, width, height, (w, h) -> {
+                if (manual != null) {
+                    android.graphics.Bitmap bmp = CoverDecoder.decodeStream(
+                            () -> ctx.getContentResolver().openInputStream(android.net.Uri.parse(manual)), w, h);
+                    if (bmp != null) {
+                        sCoverCache.put(KEY_PREFIX_MANUAL + manual, bmp);
+                        return bmp;
+                    }
+                }
+                File local = findCachedCoverFile(ctx, e);
+                if (local != null) {
+                    android.graphics.Bitmap bmp = CoverDecoder.decodeFile(local, w, h);
+                    if (bmp != null) {
+                        sCoverCache.put(local.getAbsolutePath(), bmp);
+                        return bmp;
+                    }
+                }
+                return null;
+            }, bmp -> {
+                if (!requestKey.equals(iv.getTag(R.id.tag_request_key))) return;
+                if (bmp != null) {
+                    iv.setImageBitmap(bmp);
+                    if (holder.tvOverlay != null) holder.tvOverlay.setVisibility(View.GONE);
+                    return;
+                }
+                String tpl = ((MainActivity) ctx).getCoversUrlTemplate();
+                if (tpl == null || tpl.isEmpty() || !MainActivity.hasInternetConnection(ctx)) return;
+                java.util.List<String> urls = MainActivity.buildCoverCandidateUrls(e, tpl);
+                for (String u : urls) {
+                    if (u == null || u.isEmpty() || u.contains("${")) continue;
+                    android.graphics.Bitmap cached = sCoverCache.get(u);
+                    if (cached != null) {
+                        iv.setImageBitmap(cached);
+                        if (holder.tvOverlay != null) holder.tvOverlay.setVisibility(View.GONE);
+                        return;
+                    }
+                }
+                if (!urls.isEmpty()) loadImageWithFallback(iv, holder.tvOverlay, ctx, e, urls, requestKey);
+            });
+        }
+
+        /**
+         * Cover file already found for the entry, from memory only; null when it has not been
+         * looked up yet.
+         */
+        @Nullable
+        private static String knownCoverPath(GameEntry entry) {
+            String key = coverKey(entry);
+            File known = TextUtils.isEmpty(key) ? null : sLocalCoverFiles.get(key);
+            if (known != null) return known.getAbsolutePath();
+            return entry.coverPath;
+        }
+
         private File findCachedCoverFile(Context ctx, GameEntry entry) {
             if (ctx == null || entry == null || entry.uri == null) {
                 return null;
@@ -6171,6 +7238,15 @@ public class MainActivity extends AppCompatActivity {
             if (sLocalCoverMissing.contains(key)) {
                 return null;
             }
+            if (entry.coverPath != null) {
+                // Remembered by the library index; skips probing each candidate extension.
+                File indexed = new File(entry.coverPath);
+                if (indexed.isFile() && indexed.length() > 0) {
+                    sLocalCoverFiles.put(key, indexed);
+                    return indexed;
+                }
+                entry.coverPath = null;
+            }
             File cacheDir = MainActivity.getCoversCacheDir(ctx);
             if (cacheDir == null) {
                 sLocalCoverMissing.add(key);
@@ -6181,6 +7257,7 @@ public class MainActivity extends AppCompatActivity {
             if (coverFile != null && coverFile.isFile() && coverFile.length() > 0) {
                 sLocalCoverFiles.put(key, coverFile);
                 sLocalCoverMissing.remove(key);
+                entry.coverPath = coverFile.getAbsolutePath();
                 return coverFile;
             }
             sLocalCoverMissing.add(key);
@@ -36,6 +36,7 @@ import java.io.OutputStream;
 import kr.co.iefriends.pcsx2.BuildConfig;
 import kr.co.iefriends.pcsx2.utils.DataDirectoryManager;
 import kr.co.iefriends.pcsx2.utils.LogcatRecorder;
+import kr.co.iefriends.pcsx2.utils.ResourceExtractor;
 import kr.co.iefriends.pcsx2.NativeApp;
 import kr.co.iefriends.pcsx2.R;
 
@@ -328,7 +329,7 @@ public class OnboardingActivity extends AppCompatActivity {
                 NativeApp.setDataRootOverride(targetDir.getAbsolutePath());
                 NativeApp.reinitializeDataRoot(targetDir.getAbsolutePath());
                 LogcatRecorder.handleDataRootChanged();
-                DataDirectoryManager.copyAssetAll(getApplicationContext(), "resources");
+                ResourceExtractor.extractBlocking(getApplicationContext());
             }
             runOnUiThread(() -> {
                 dismissDataDirProgressDialog();
@@ -70,6 +70,7 @@ import kr.co.iefriends.pcsx2.utils.AppIconManager;
 import kr.co.iefriends.pcsx2.utils.DataDirectoryManager;
 import kr.co.iefriends.pcsx2.utils.DiscordBridge;
 import kr.co.iefriends.pcsx2.utils.LogcatRecorder;
+import kr.co.iefriends.pcsx2.utils.ResourceExtractor;
 import kr.co.iefriends.pcsx2.NativeApp;
 import kr.co.iefriends.pcsx2.R;
 import kr.co.iefriends.pcsx2.utils.RetroAchievementsBridge;
@@ -2185,7 +2186,7 @@ public class SettingsActivity extends AppCompatActivity {
 				DataDirectoryManager.storeCustomDataRoot(getApplicationContext(), targetDir.getAbsolutePath(), uriString);
 				NativeApp.setDataRootOverride(targetDir.getAbsolutePath());
 				NativeApp.reinitializeDataRoot(targetDir.getAbsolutePath());
-				DataDirectoryManager.copyAssetAll(getApplicationContext(), "resources");
+				ResourceExtractor.extractBlocking(getApplicationContext());
 			}
 			runOnUiThread(() -> {
 				dismissDataDirProgressDialog();
@@ -0,0 +1,57 @@
+package kr.co.iefriends.pcsx2.disc;
+
+/**
+ * MSB-first bit reader over a byte range. Reading past the end yields zero bits and sets
+ * {@link #overflow()}, matching the CHD reference bitstream.
+ */
+final class BitReader {
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private long buffer;
+    private int bits;
+
+    BitReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    int peek(int count) {
+        if (count == 0) {
+            return 0;
+        }
+        while (bits < count) {
+            int b = position < end ? data[position] & 0xFF : 0;
+            position++;
+            buffer = (buffer << 8) | b;
+            bits += 8;
+        }
+        return (int) ((buffer >>> (bits - count)) & ((1L << count) - 1));
+    }
+
+    void remove(int count) {
+        bits -= count;
+    }
+
+    int read(int count) {
+        int value = peek(count);
+        remove(count);
+        return value;
+    }
+
+    /**
+     * Reads up to 64 bits for fields such as parent unit offsets.
+     */
+    long readLong(int count) {
+        if (count <= 32) {
+            return read(count) & 0xFFFFFFFFL;
+        }
+        long high = read(count - 32) & 0xFFFFFFFFL;
+        return (high << 32) | (read(32) & 0xFFFFFFFFL);
+    }
+
+    boolean overflow() {
+        return position - bits / 8 > end;
+    }
+}
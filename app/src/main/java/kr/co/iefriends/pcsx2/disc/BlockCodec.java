@@ -0,0 +1,35 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Decompresses one CSO/ZSO block. Instances hold native or scratch state and are not thread safe;
+ * each reader (or worker) owns its own codec.
+ */
+public interface BlockCodec extends Closeable {
+
+    /**
+     * Decodes {@code srcLength} compressed bytes into {@code dest}.
+     *
+     * @return the number of bytes produced, at most {@code destLength}.
+     * @throws IOException if the block is corrupt.
+     */
+    int decode(byte[] src, int srcLength, byte[] dest, int destLength) throws IOException;
+
+    @Override
+    void close();
+
+    /**
+     * @return a codec for the given header magic, or null when the format is unknown.
+     */
+    static BlockCodec forMagic(int magic) {
+        if (magic == CsoReader.MAGIC_ZISO) {
+            return new Lz4BlockCodec();
+        }
+        if (magic == CsoReader.MAGIC_CISO) {
+            return new DeflateBlockCodec();
+        }
+        return null;
+    }
+}
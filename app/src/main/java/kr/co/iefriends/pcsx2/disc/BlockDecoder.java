@@ -0,0 +1,57 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A codec plus its compressed-data scratch buffer and, once asked for, a buffer for one decoded
+ * block. One decoder serves one thread at a time; the reader keeps one for its synchronized
+ * path and read-ahead workers get their own.
+ */
+final class BlockDecoder {
+    final BlockCodec codec;
+    private byte[] scratch = new byte[0];
+    private ByteBuffer scratchView = ByteBuffer.wrap(scratch);
+    @Nullable private byte[] block;
+    private final int blockSize;
+    private final int minCapacity;
+
+    BlockDecoder(BlockCodec codec, int blockSize) {
+        this.codec = codec;
+        this.blockSize = blockSize;
+        this.minCapacity = blockSize + (blockSize >> 3);
+    }
+
+    /**
+     * Returns the scratch buffer positioned for a read of {@code size} bytes, growing it when a
+     * block is larger than any seen so far.
+     */
+    ByteBuffer scratchFor(int size) {
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, minCapacity)];
+            scratchView = ByteBuffer.wrap(scratch);
+        }
+        scratchView.clear();
+        scratchView.limit(size);
+        return scratchView;
+    }
+
+    byte[] scratch() {
+        return scratch;
+    }
+
+    /**
+     * Buffer for one decoded block, allocated on first use and reused after that.
+     */
+    byte[] block() {
+        if (block == null) {
+            block = new byte[blockSize];
+        }
+        return block;
+    }
+
+    void close() {
+        codec.close();
+    }
+}
@@ -0,0 +1,182 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * CHD image exposed as a plain 2048-byte-sector ISO view. DVD images map one to one onto the
+ * logical byte stream; CD images serve the user data of each frame of the first track, so
+ * serial and fingerprint reads see the same bytes they would in a cooked ISO. Redump lists CD
+ * tracks as raw 2352-byte frames, which this view does not rebuild, so CD images cannot be
+ * matched against it.
+ */
+final class ChdDiscImageSource implements DiscImageSource {
+    private static final int SECTOR_SIZE = 2048;
+
+    private final ChdReader reader;
+    private final long size;
+    /** Offset of the user data inside each CD frame, or -1 for DVD images. */
+    private final int frameDataOffset;
+    /** Copy buffer for {@link #read(long, ByteBuffer)} into direct buffers. */
+    private byte[] transfer;
+
+    ChdDiscImageSource(ChdReader reader) throws IOException {
+        this.reader = reader;
+        if (reader.isCd()) {
+            String track = reader.findMetadata(ChdReader.META_CD_TRACK);
+            if (track == null) {
+                track = reader.findMetadata(ChdReader.META_CD_TRACK_OLD);
+            }
+            long frames = reader.getLogicalBytes() / ChdReader.CD_FRAME_SIZE;
+            long trackFrames = parseField(track, "FRAMES");
+            if (trackFrames > 0 && trackFrames < frames) {
+                frames = trackFrames;
+            }
+            this.frameDataOffset = dataOffsetFor(track);
+            this.size = frames * SECTOR_SIZE;
+        } else {
+            this.frameDataOffset = -1;
+            this.size = reader.getLogicalBytes();
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public boolean matchesDumpHashes() {
+        return frameDataOffset < 0;
+    }
+
+    @Override
+    public int read(long position, byte[] dest, int offset, int length) throws IOException {
+        if (position < 0 || position >= size) {
+            return -1;
+        }
+        if (length <= 0) {
+            return 0;
+        }
+        int total = (int) Math.min(length, size - position);
+        if (frameDataOffset < 0) {
+            return reader.read(position, dest, offset, total);
+        }
+        int done = 0;
+        while (done < total) {
+            long pos = position + done;
+            long sector = pos / SECTOR_SIZE;
+            int inSector = (int) (pos % SECTOR_SIZE);
+            int n = Math.min(total - done, SECTOR_SIZE - inSector);
+            long framePos = sector * ChdReader.CD_FRAME_SIZE + frameDataOffset + inSector;
+            int r = reader.read(framePos, dest, offset + done, n);
+            if (r <= 0) {
+                break;
+            }
+            done += r;
+        }
+        return done > 0 ? done : -1;
+    }
+
+    @Override
+    public int read(long position, ByteBuffer dest) throws IOException {
+        if (transfer == null && !dest.hasArray()) {
+            transfer = new byte[TRANSFER_SIZE];
+        }
+        return DiscImageSource.readThrough(this, position, dest, transfer);
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int r = ChdDiscImageSource.this.read(position, b, off, len);
+                if (r > 0) {
+                    position += r;
+                }
+                return r;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, size - position));
+                position += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Where 2048 bytes of user data start inside a frame for the track types chdman writes.
+     */
+    private static int dataOffsetFor(@Nullable String track) {
+        String type = parseText(track, "TYPE");
+        if (type == null) {
+            return 16;
+        }
+        switch (type.toUpperCase(Locale.ROOT)) {
+            case "MODE1":
+            case "MODE2_FORM1":
+                return 0;
+            case "MODE2":
+            case "MODE2_FORM_MIX":
+                return 8;
+            case "MODE2_RAW":
+                return 24;
+            case "MODE1_RAW":
+            default:
+                return 16;
+        }
+    }
+
+    private static long parseField(@Nullable String metadata, String key) {
+        String value = parseText(metadata, key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Metadata is a space separated list of {@code KEY:VALUE} pairs.
+     */
+    @Nullable
+    private static String parseText(@Nullable String metadata, String key) {
+        if (metadata == null) {
+            return null;
+        }
+        for (String part : metadata.trim().split("\\s+")) {
+            int colon = part.indexOf(':');
+            if (colon > 0 && part.substring(0, colon).equalsIgnoreCase(key)) {
+                return part.substring(colon + 1);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import java.io.IOException;
+
+/**
+ * Canonical Huffman decoder as used by CHD for the hunk map and the "huff" codec. Code lengths
+ * are imported from the bitstream, turned into canonical codes and expanded into a lookup table
+ * indexed by the next {@code maxBits} bits.
+ */
+final class ChdHuffman {
+    private final int numCodes;
+    private final int maxBits;
+    private final int[] lengths;
+    private final int[] codes;
+    private final int[] lookup;
+
+    ChdHuffman(int numCodes, int maxBits) {
+        this.numCodes = numCodes;
+        this.maxBits = maxBits;
+        this.lengths = new int[numCodes];
+        this.codes = new int[numCodes];
+        this.lookup = new int[1 << maxBits];
+    }
+
+    /**
+     * Reads code lengths stored as a run-length encoded list (hunk map format).
+     */
+    void importTreeRle(BitReader in) throws IOException {
+        int numBits = maxBits >= 16 ? 5 : maxBits >= 8 ? 4 : 3;
+        int cur = 0;
+        while (cur < numCodes) {
+            int nodeBits = in.read(numBits);
+            if (nodeBits != 1) {
+                lengths[cur++] = nodeBits;
+            } else {
+                nodeBits = in.read(numBits);
+                if (nodeBits == 1) {
+                    lengths[cur++] = nodeBits;
+                } else {
+                    int repeat = in.read(numBits) + 3;
+                    while (repeat-- > 0) {
+                        if (cur >= numCodes) {
+                            throw new IOException("Huffman RLE overruns code table");
+                        }
+                        lengths[cur++] = nodeBits;
+                    }
+                }
+            }
+        }
+        build();
+    }
+
+    /**
+     * Reads code lengths that are themselves Huffman coded with a small 24-symbol tree
+     * ("huff" codec format).
+     */
+    void importTreeHuffman(BitReader in) throws IOException {
+        ChdHuffman small = new ChdHuffman(24, 6);
+        small.lengths[0] = in.read(3);
+        int start = in.read(3) + 1;
+        int count = 0;
+        for (int index = 1; index < 24; index++) {
+            if (index < start || count == 7) {
+                small.lengths[index] = 0;
+            } else {
+                count = in.read(3);
+                small.lengths[index] = count == 7 ? 0 : count;
+            }
+        }
+        small.build();
+
+        int temp = numCodes - 9;
+        int rleFullBits = 0;
+        while (temp != 0) {
+            temp >>= 1;
+            rleFullBits++;
+        }
+        int last = 0;
+        int cur = 0;
+        while (cur < numCodes) {
+            int value = small.decodeOne(in);
+            if (value != 0) {
+                lengths[cur++] = last = value - 1;
+            } else {
+                int repeat = in.read(3) + 2;
+                if (repeat == 7 + 2) {
+                    repeat += in.read(rleFullBits);
+                }
+                for (; repeat != 0 && cur < numCodes; repeat--) {
+                    lengths[cur++] = last;
+                }
+            }
+        }
+        build();
+        if (in.overflow()) {
+            throw new IOException("Huffman tree truncated");
+        }
+    }
+
+    int decodeOne(BitReader in) {
+        int entry = lookup[in.peek(maxBits)];
+        in.remove(entry & 0x1F);
+        return entry >>> 5;
+    }
+
+    private void build() throws IOException {
+        int[] histogram = new int[33];
+        for (int i = 0; i < numCodes; i++) {
+            if (lengths[i] > maxBits) {
+                throw new IOException("Huffman code too long");
+            }
+            histogram[lengths[i]]++;
+        }
+        int curStart = 0;
+        for (int len = 32; len > 0; len--) {
+            int nextStart = (curStart + histogram[len]) >> 1;
+            if (len != 1 && nextStart * 2 != curStart + histogram[len]) {
+                throw new IOException("Invalid Huffman code lengths");
+            }
+            histogram[len] = curStart;
+            curStart = nextStart;
+        }
+        for (int i = 0; i < numCodes; i++) {
+            if (lengths[i] > 0) {
+                codes[i] = histogram[lengths[i]]++;
+            }
+        }
+        java.util.Arrays.fill(lookup, 0);
+        for (int i = 0; i < numCodes; i++) {
+            int len = lengths[i];
+            if (len == 0) {
+                continue;
+            }
+            int value = (i << 5) | (len & 0x1F);
+            int shift = maxBits - len;
+            int from = codes[i] << shift;
+            int to = ((codes[i] + 1) << shift) - 1;
+            java.util.Arrays.fill(lookup, from, to + 1, value);
+        }
+    }
+}
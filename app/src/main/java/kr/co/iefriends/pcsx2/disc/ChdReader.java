@@ -0,0 +1,496 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only CHD v5 reader: header, hunk map, metadata and the codecs needed to pull sectors out
+ * of PS2 DVD and CD images (zlib, LZMA, Huffman and the CD variants cdzl/cdlz). FLAC based
+ * codecs and parent images are not supported; hunks using them fail with an IOException.
+ * Decompressed hunks are kept in a small per-reader LRU.
+ */
+final class ChdReader implements Closeable {
+    static final byte[] MAGIC = "MComprHD".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_V5_SIZE = 124;
+
+    static final int CODEC_NONE = 0;
+    static final int CODEC_ZLIB = tag("zlib");
+    static final int CODEC_LZMA = tag("lzma");
+    static final int CODEC_HUFF = tag("huff");
+    static final int CODEC_CD_ZLIB = tag("cdzl");
+    static final int CODEC_CD_LZMA = tag("cdlz");
+    static final int META_CD_TRACK = tag("CHT2");
+    static final int META_CD_TRACK_OLD = tag("CHTR");
+    static final int META_DVD = tag("DVD ");
+
+    private static final int TYPE_COMPRESSED_3 = 3;
+    private static final int TYPE_NONE = 4;
+    private static final int TYPE_SELF = 5;
+    private static final int TYPE_PARENT = 6;
+    private static final int TYPE_RLE_SMALL = 7;
+    private static final int TYPE_RLE_LARGE = 8;
+    private static final int TYPE_SELF_0 = 9;
+    private static final int TYPE_SELF_1 = 10;
+    private static final int TYPE_PARENT_SELF = 11;
+    private static final int TYPE_PARENT_0 = 12;
+    private static final int TYPE_PARENT_1 = 13;
+
+    static final int CD_FRAME_SIZE = 2352 + 96;
+    private static final int CD_SECTOR_SIZE = 2352;
+    private static final int HUNK_CACHE_SIZE = 8;
+
+    private final ParcelFileDescriptor descriptor;
+    private final FileInputStream inputStream;
+    private final FileChannel channel;
+    private final int[] compressors = new int[4];
+    private final long logicalBytes;
+    private final int hunkBytes;
+    private final int unitBytes;
+    private final int hunkCount;
+    private final long metaOffset;
+    private final byte[] mapTypes;
+    private final int[] mapLengths;
+    private final long[] mapOffsets;
+
+    private final LinkedHashMap<Integer, byte[]> hunkCache =
+            new LinkedHashMap<Integer, byte[]>(HUNK_CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                    return size() > HUNK_CACHE_SIZE;
+                }
+            };
+    private byte[] compressedScratch = new byte[0];
+    @Nullable private Inflater inflater;
+    @Nullable private LzmaDecoder lzma;
+    @Nullable private byte[] cdScratch;
+
+    private ChdReader(ParcelFileDescriptor descriptor, FileInputStream inputStream, ByteBuffer header) throws IOException {
+        this.descriptor = descriptor;
+        this.inputStream = inputStream;
+        this.channel = inputStream.getChannel();
+        for (int i = 0; i < 4; i++) {
+            compressors[i] = header.getInt(16 + i * 4);
+        }
+        this.logicalBytes = header.getLong(32);
+        long mapOffset = header.getLong(40);
+        this.metaOffset = header.getLong(48);
+        this.hunkBytes = header.getInt(56);
+        this.unitBytes = header.getInt(60);
+        if (hunkBytes <= 0 || unitBytes <= 0 || logicalBytes <= 0) {
+            throw new IOException("Invalid CHD geometry");
+        }
+        long hunks = (logicalBytes + hunkBytes - 1) / hunkBytes;
+        if (hunks > Integer.MAX_VALUE / 16) {
+            throw new IOException("CHD has too many hunks");
+        }
+        this.hunkCount = (int) hunks;
+        this.mapTypes = new byte[hunkCount];
+        this.mapLengths = new int[hunkCount];
+        this.mapOffsets = new long[hunkCount];
+        if (compressors[0] == CODEC_NONE) {
+            readUncompressedMap(mapOffset);
+        } else {
+            readCompressedMap(mapOffset);
+        }
+    }
+
+    /**
+     * Parses the header and hunk map of an already open descriptor. On success the reader takes
+     * ownership of {@code pfd} and {@code fis}; on a null result (not a CHD v5 image) both stay
+     * open for the caller to reuse.
+     */
+    @Nullable
+    static ChdReader probe(ParcelFileDescriptor pfd, FileInputStream fis) throws IOException {
+        FileChannel channel = fis.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_V5_SIZE).order(ByteOrder.BIG_ENDIAN);
+        if (CsoReader.readFully(channel, header, 0) < HEADER_V5_SIZE) {
+            return null;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                return null;
+            }
+        }
+        if (header.getInt(12) != 5) {
+            return null;
+        }
+        return new ChdReader(pfd, fis, header);
+    }
+
+    public long getLogicalBytes() {
+        return logicalBytes;
+    }
+
+    public int getHunkBytes() {
+        return hunkBytes;
+    }
+
+    public int getUnitBytes() {
+        return unitBytes;
+    }
+
+    public int getHunkCount() {
+        return hunkCount;
+    }
+
+    /**
+     * @return true when the image stores CD frames (2352 bytes of sector plus 96 of subcode).
+     */
+    public boolean isCd() {
+        return unitBytes == CD_FRAME_SIZE;
+    }
+
+    /**
+     * Returns the first metadata entry with the given tag as text, or null. Holds the same lock
+     * as {@link #readHunk} so metadata and hunk reads never interleave on the channel.
+     */
+    @Nullable
+    public synchronized String findMetadata(int tag) throws IOException {
+        long offset = metaOffset;
+        ByteBuffer entry = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        int guard = 0;
+        while (offset != 0 && guard++ < 1024) {
+            entry.clear();
+            if (CsoReader.readFully(channel, entry, offset) < 16) {
+                return null;
+            }
+            int entryTag = entry.getInt(0);
+            int length = entry.getInt(4) & 0x00FFFFFF;
+            long next = entry.getLong(8);
+            if (entryTag == tag) {
+                ByteBuffer data = ByteBuffer.allocate(length);
+                CsoReader.readFully(channel, data, offset + 16);
+                String text = new String(data.array(), 0, data.position(), StandardCharsets.US_ASCII);
+                int nul = text.indexOf('\0');
+                return nul >= 0 ? text.substring(0, nul) : text;
+            }
+            offset = next;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the decompressed hunk. The array is shared with the cache and must not be modified.
+     */
+    public synchronized byte[] readHunk(int hunk) throws IOException {
+        if (hunk < 0 || hunk >= hunkCount) {
+            throw new IOException("Hunk " + hunk + " out of range");
+        }
+        byte[] cached = hunkCache.get(hunk);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] data = new byte[hunkBytes];
+        decodeHunk(hunk, data, 0);
+        hunkCache.put(hunk, data);
+        return data;
+    }
+
+    /**
+     * Reads logical bytes, i.e. the raw unit stream (CD frames including subcode for CD images).
+     */
+    public int read(long position, byte[] dest, int offset, int length) throws IOException {
+        if (position < 0 || position >= logicalBytes) {
+            return -1;
+        }
+        int total = (int) Math.min(length, logicalBytes - position);
+        int done = 0;
+        while (done < total) {
+            long pos = position + done;
+            int hunk = (int) (pos / hunkBytes);
+            int inHunk = (int) (pos % hunkBytes);
+            byte[] data = readHunk(hunk);
+            int n = Math.min(total - done, hunkBytes - inHunk);
+            System.arraycopy(data, inHunk, dest, offset + done, n);
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+            hunkCache.clear();
+        }
+        try {
+            channel.close();
+        } finally {
+            try {
+                inputStream.close();
+            } finally {
+                descriptor.close();
+            }
+        }
+    }
+
+    private void decodeHunk(int hunk, byte[] dest, int depth) throws IOException {
+        int type = mapTypes[hunk];
+        long offset = mapOffsets[hunk];
+        int length = mapLengths[hunk];
+        if (type <= TYPE_COMPRESSED_3) {
+            byte[] src = readCompressed(offset, length);
+            decompress(compressors[type], src, length, dest);
+        } else if (type == TYPE_NONE && offset < 0) {
+            Arrays.fill(dest, 0, hunkBytes, (byte) 0);
+        } else if (type == TYPE_NONE) {
+            ByteBuffer buffer = ByteBuffer.wrap(dest, 0, hunkBytes);
+            if (CsoReader.readFully(channel, buffer, offset) != hunkBytes) {
+                throw new IOException("Short read in uncompressed hunk " + hunk);
+            }
+        } else if (type == TYPE_SELF) {
+            if (offset == hunk || depth > 8 || offset < 0 || offset >= hunkCount) {
+                throw new IOException("Bad self reference in hunk " + hunk);
+            }
+            byte[] cached = hunkCache.get((int) offset);
+            if (cached != null) {
+                System.arraycopy(cached, 0, dest, 0, hunkBytes);
+            } else {
+                decodeHunk((int) offset, dest, depth + 1);
+            }
+        } else if (type == TYPE_PARENT) {
+            throw new IOException("Parent CHD images are not supported");
+        } else {
+            throw new IOException("Unknown hunk type " + type);
+        }
+    }
+
+    private byte[] readCompressed(long offset, int length) throws IOException {
+        if (compressedScratch.length < length) {
+            compressedScratch = new byte[Math.max(length, hunkBytes)];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(compressedScratch, 0, length);
+        if (CsoReader.readFully(channel, buffer, offset) != length) {
+            throw new IOException("Short read of compressed hunk");
+        }
+        return compressedScratch;
+    }
+
+    private void decompress(int codec, byte[] src, int length, byte[] dest) throws IOException {
+        if (codec == CODEC_ZLIB) {
+            inflate(src, 0, length, dest, 0, hunkBytes);
+        } else if (codec == CODEC_LZMA) {
+            lzma().decode(src, 0, length, dest, 0, hunkBytes);
+        } else if (codec == CODEC_HUFF) {
+            ChdHuffman huffman = new ChdHuffman(256, 16);
+            BitReader bits = new BitReader(src, 0, length);
+            huffman.importTreeHuffman(bits);
+            for (int i = 0; i < hunkBytes; i++) {
+                dest[i] = (byte) huffman.decodeOne(bits);
+            }
+            if (bits.overflow()) {
+                throw new IOException("Truncated huff hunk");
+            }
+        } else if (codec == CODEC_CD_ZLIB || codec == CODEC_CD_LZMA) {
+            decompressCd(codec == CODEC_CD_LZMA, src, length, dest);
+        } else {
+            throw new IOException("Unsupported CHD codec " + tagName(codec));
+        }
+    }
+
+    /**
+     * CD codecs store an ECC bitmap, the compressed sector data and the compressed subcode.
+     * Only sector data is recovered: subcode is zero filled and sync/ECC are not regenerated,
+     * which leaves the user data of every sector intact.
+     */
+    private void decompressCd(boolean lzmaBase, byte[] src, int length, byte[] dest) throws IOException {
+        int frames = hunkBytes / CD_FRAME_SIZE;
+        int lengthBytes = hunkBytes < 65536 ? 2 : 3;
+        int eccBytes = (frames + 7) / 8;
+        int headerBytes = eccBytes + lengthBytes;
+        int baseLength = ((src[eccBytes] & 0xFF) << 8) | (src[eccBytes + 1] & 0xFF);
+        if (lengthBytes > 2) {
+            baseLength = (baseLength << 8) | (src[eccBytes + 2] & 0xFF);
+        }
+        if (headerBytes + baseLength > length) {
+            throw new IOException("Corrupt CD hunk header");
+        }
+        int sectorBytes = frames * CD_SECTOR_SIZE;
+        if (cdScratch == null || cdScratch.length < sectorBytes) {
+            cdScratch = new byte[sectorBytes];
+        }
+        if (lzmaBase) {
+            lzma().decode(src, headerBytes, baseLength, cdScratch, 0, sectorBytes);
+        } else {
+            inflate(src, headerBytes, baseLength, cdScratch, 0, sectorBytes);
+        }
+        Arrays.fill(dest, 0, hunkBytes, (byte) 0);
+        for (int frame = 0; frame < frames; frame++) {
+            System.arraycopy(cdScratch, frame * CD_SECTOR_SIZE, dest, frame * CD_FRAME_SIZE, CD_SECTOR_SIZE);
+        }
+    }
+
+    private void inflate(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        } else {
+            inflater.reset();
+        }
+        inflater.setInput(src, offset, length);
+        int total = 0;
+        try {
+            while (total < destLength && !inflater.finished()) {
+                int r = inflater.inflate(dest, destOffset + total, destLength - total);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                total += r;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt zlib hunk", e);
+        }
+        if (total != destLength) {
+            throw new IOException("Short zlib hunk: " + total + " of " + destLength);
+        }
+    }
+
+    private LzmaDecoder lzma() {
+        if (lzma == null) {
+            lzma = new LzmaDecoder(3, 0, 2);
+        }
+        return lzma;
+    }
+
+    private void readUncompressedMap(long mapOffset) throws IOException {
+        ByteBuffer map = ByteBuffer.allocate(hunkCount * 4).order(ByteOrder.BIG_ENDIAN);
+        if (CsoReader.readFully(channel, map, mapOffset) != hunkCount * 4) {
+            throw new IOException("Truncated CHD map");
+        }
+        for (int i = 0; i < hunkCount; i++) {
+            long entry = map.getInt(i * 4) & 0xFFFFFFFFL;
+            // Offset 0 marks a hunk that was never written and reads back as zeros.
+            mapTypes[i] = TYPE_NONE;
+            mapOffsets[i] = entry == 0 ? -1 : entry * hunkBytes;
+            mapLengths[i] = hunkBytes;
+        }
+    }
+
+    private void readCompressedMap(long mapOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        if (CsoReader.readFully(channel, header, mapOffset) != 16) {
+            throw new IOException("Truncated CHD map header");
+        }
+        int mapBytes = header.getInt(0);
+        long firstOffset = ((header.getShort(4) & 0xFFFFL) << 32) | (header.getInt(6) & 0xFFFFFFFFL);
+        int lengthBits = header.get(12) & 0xFF;
+        int hunkBits = header.get(13) & 0xFF;
+        int parentBits = header.get(14) & 0xFF;
+        if (mapBytes <= 0) {
+            throw new IOException("Invalid CHD map size");
+        }
+        ByteBuffer raw = ByteBuffer.allocate(mapBytes);
+        if (CsoReader.readFully(channel, raw, mapOffset + 16) != mapBytes) {
+            throw new IOException("Truncated CHD map");
+        }
+        BitReader bits = new BitReader(raw.array(), 0, mapBytes);
+        ChdHuffman decoder = new ChdHuffman(16, 8);
+        decoder.importTreeRle(bits);
+
+        int repeat = 0;
+        int lastType = 0;
+        for (int hunk = 0; hunk < hunkCount; hunk++) {
+            if (repeat > 0) {
+                mapTypes[hunk] = (byte) lastType;
+                repeat--;
+                continue;
+            }
+            int value = decoder.decodeOne(bits);
+            if (value == TYPE_RLE_SMALL) {
+                mapTypes[hunk] = (byte) lastType;
+                repeat = 2 + decoder.decodeOne(bits);
+            } else if (value == TYPE_RLE_LARGE) {
+                mapTypes[hunk] = (byte) lastType;
+                repeat = 2 + 16 + (decoder.decodeOne(bits) << 4);
+                repeat += decoder.decodeOne(bits);
+            } else {
+                mapTypes[hunk] = (byte) value;
+                lastType = value;
+            }
+        }
+
+        long current = firstOffset;
+        long lastSelf = 0;
+        long lastParent = 0;
+        for (int hunk = 0; hunk < hunkCount; hunk++) {
+            int type = mapTypes[hunk];
+            long offset = current;
+            int length = 0;
+            switch (type) {
+                case 0:
+                case 1:
+                case 2:
+                case TYPE_COMPRESSED_3:
+                    length = bits.read(lengthBits);
+                    bits.read(16); // crc
+                    current += length;
+                    break;
+                case TYPE_NONE:
+                    length = hunkBytes;
+                    bits.read(16);
+                    current += length;
+                    break;
+                case TYPE_SELF:
+                    lastSelf = offset = bits.readLong(hunkBits);
+                    break;
+                case TYPE_PARENT:
+                    offset = bits.readLong(parentBits);
+                    lastParent = offset;
+                    break;
+                case TYPE_SELF_0:
+                case TYPE_SELF_1:
+                    if (type == TYPE_SELF_1) {
+                        lastSelf++;
+                    }
+                    type = TYPE_SELF;
+                    offset = lastSelf;
+                    break;
+                case TYPE_PARENT_SELF:
+                    type = TYPE_PARENT;
+                    lastParent = offset = ((long) hunk * hunkBytes) / unitBytes;
+                    break;
+                case TYPE_PARENT_0:
+                case TYPE_PARENT_1:
+                    if (type == TYPE_PARENT_1) {
+                        lastParent += hunkBytes / unitBytes;
+                    }
+                    type = TYPE_PARENT;
+                    offset = lastParent;
+                    break;
+                default:
+                    throw new IOException("Invalid CHD map entry " + type);
+            }
+            mapTypes[hunk] = (byte) type;
+            mapLengths[hunk] = length;
+            mapOffsets[hunk] = offset;
+        }
+        if (bits.overflow()) {
+            throw new IOException("CHD map truncated");
+        }
+    }
+
+    private static int tag(String s) {
+        return (s.charAt(0) << 24) | (s.charAt(1) << 16) | (s.charAt(2) << 8) | s.charAt(3);
+    }
+
+    private static String tagName(int tag) {
+        char[] c = {(char) ((tag >>> 24) & 0xFF), (char) ((tag >>> 16) & 0xFF), (char) ((tag >>> 8) & 0xFF), (char) (tag & 0xFF)};
+        return new String(c);
+    }
+}
@@ -0,0 +1,139 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU of decompressed CSO/ZSO blocks keyed by (image, block index), shared by
+ * every reader so repeated sector lookups during scanning skip the inflate step.
+ */
+public final class CsoBlockCache {
+    private static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+    private static final CsoBlockCache SHARED = new CsoBlockCache(DEFAULT_MAX_BYTES);
+
+    private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long maxBytes;
+    private long currentBytes;
+
+    CsoBlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static CsoBlockCache shared() {
+        return SHARED;
+    }
+
+    @Nullable
+    byte[] get(String image, int block) {
+        byte[] data;
+        synchronized (blocks) {
+            data = blocks.get(new Key(image, block));
+        }
+        if (data != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return data;
+    }
+
+    void put(String image, int block, byte[] data) {
+        if (data == null || data.length > maxBytes) {
+            return;
+        }
+        synchronized (blocks) {
+            byte[] previous = blocks.put(new Key(image, block), data);
+            if (previous != null) {
+                currentBytes -= previous.length;
+            }
+            currentBytes += data.length;
+            trimLocked();
+        }
+    }
+
+    public void setMaxBytes(long bytes) {
+        synchronized (blocks) {
+            maxBytes = Math.max(0, bytes);
+            trimLocked();
+        }
+    }
+
+    public long getMaxBytes() {
+        synchronized (blocks) {
+            return maxBytes;
+        }
+    }
+
+    public long getSizeBytes() {
+        synchronized (blocks) {
+            return currentBytes;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public void clear() {
+        synchronized (blocks) {
+            blocks.clear();
+            currentBytes = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.get();
+        long m = misses.get();
+        long total = h + m;
+        return "CsoBlockCache{hits=" + h + ", misses=" + m
+                + ", hitRate=" + (total > 0 ? (h * 100 / total) : 0) + "%"
+                + ", bytes=" + getSizeBytes() + "/" + getMaxBytes() + "}";
+    }
+
+    private void trimLocked() {
+        Iterator<Map.Entry<Key, byte[]>> it = blocks.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            currentBytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    private static final class Key {
+        final String image;
+        final int block;
+
+        Key(String image, int block) {
+            this.image = image;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return block == other.block && image.equals(other.image);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * image.hashCode() + block;
+        }
+    }
+}
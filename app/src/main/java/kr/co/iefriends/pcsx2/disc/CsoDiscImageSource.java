@@ -0,0 +1,51 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compressed image served through a {@link CsoReader} and the shared block cache.
+ */
+final class CsoDiscImageSource implements DiscImageSource {
+    private final CsoReader reader;
+    /** Copy buffer for {@link #read(long, ByteBuffer)} into direct buffers. */
+    private byte[] transfer;
+
+    CsoDiscImageSource(CsoReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public long size() {
+        return reader.getUncompressedSize();
+    }
+
+    @Override
+    public int read(long position, byte[] dest, int offset, int length) throws IOException {
+        return reader.readRange(position, dest, offset, length);
+    }
+
+    @Override
+    public int read(long position, ByteBuffer dest) throws IOException {
+        if (transfer == null && !dest.hasArray()) {
+            transfer = new byte[TRANSFER_SIZE];
+        }
+        return DiscImageSource.readThrough(this, position, dest, transfer);
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ReadAheadCsoInputStream(reader, ReadAheadCsoInputStream.defaultWorkers());
+    }
+
+    @Override
+    public boolean prefersStream() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,301 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Random access reader for CSO/ZSO compressed disc images. CISO blocks are raw deflate and
+ * ZISO blocks are raw LZ4; see {@link BlockCodec}.
+ * Block reads are serialised per reader so a single instance can be shared between threads.
+ */
+public final class CsoReader implements Closeable {
+    static final int MAGIC_CISO = 0x4F534943;
+    static final int MAGIC_ZISO = 0x4F53495A;
+    private static final int HEADER_SIZE = 0x18;
+
+    private final ParcelFileDescriptor descriptor;
+    private final FileInputStream inputStream;
+    private final FileChannel channel;
+    private final String cacheKey;
+    private final long uncompressedSize;
+    private final int blockSize;
+    private final int alignShift;
+    private final IntBuffer indexTable;
+    private final int blockCount;
+
+    private final int magic;
+
+    // Decode context for readBlock, guarded by this reader's monitor and reused across blocks.
+    private final BlockDecoder decoder;
+
+    private CsoReader(ParcelFileDescriptor descriptor, FileInputStream inputStream, FileChannel channel,
+                      String cacheKey, int magic, long uncompressedSize, int blockSize,
+                      int alignShift, IntBuffer indexTable, int blockCount) {
+        this.descriptor = descriptor;
+        this.inputStream = inputStream;
+        this.channel = channel;
+        this.cacheKey = cacheKey;
+        this.magic = magic;
+        this.uncompressedSize = uncompressedSize;
+        this.blockSize = blockSize;
+        this.alignShift = alignShift;
+        this.indexTable = indexTable;
+        this.blockCount = blockCount;
+        this.decoder = newDecoder();
+    }
+
+    /**
+     * Parses the header of an already open descriptor. On success the reader takes ownership of
+     * {@code pfd} and {@code fis}; on a null result both stay open for the caller to reuse.
+     */
+    @Nullable
+    static CsoReader probe(ParcelFileDescriptor pfd, FileInputStream fis, Uri uri) throws IOException {
+        FileChannel channel = fis.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(channel, header, 0) < HEADER_SIZE) {
+            return null;
+        }
+        header.flip();
+        int magic = header.getInt();
+        if (magic != MAGIC_CISO && magic != MAGIC_ZISO) {
+            return null;
+        }
+        header.getInt(); // header_size, not reliable across writers
+        long uncompressedSize = header.getLong();
+        int blockSize = header.getInt();
+        header.get();
+        int align = header.get() & 0xFF;
+        if (blockSize <= 0 || (blockSize & (blockSize - 1)) != 0 || uncompressedSize <= 0 || align > 31) {
+            return null;
+        }
+        long blocks = (uncompressedSize + blockSize - 1) / blockSize;
+        if (blocks <= 0 || blocks >= Integer.MAX_VALUE / 4) {
+            return null;
+        }
+        // The index always follows the fixed header and has one entry more than there are blocks.
+        int entryCount = (int) blocks + 1;
+        IntBuffer table = mapIndex(channel, entryCount);
+        if (table == null) {
+            int[] entries = new int[entryCount];
+            ByteBuffer indexBuffer = ByteBuffer.allocate(entryCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(channel, indexBuffer, HEADER_SIZE) < entryCount * 4) {
+                return null;
+            }
+            indexBuffer.flip();
+            indexBuffer.asIntBuffer().get(entries);
+            table = IntBuffer.wrap(entries);
+        }
+        String cacheKey = uri + "#" + pfd.getStatSize();
+        return new CsoReader(pfd, fis, channel, cacheKey, magic,
+                uncompressedSize, blockSize, align, table, (int) blocks);
+    }
+
+    @Nullable
+    private static IntBuffer mapIndex(FileChannel channel, int entryCount) {
+        long length = entryCount * 4L;
+        try {
+            if (channel.size() < HEADER_SIZE + length) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, length)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads uncompressed bytes, serving whole blocks from the shared {@link CsoBlockCache}.
+     */
+    @Nullable
+    public byte[] readRange(long offset, int size) throws IOException {
+        if (size <= 0 || offset < 0 || offset >= uncompressedSize) {
+            return null;
+        }
+        byte[] output = new byte[(int) Math.min(size, uncompressedSize - offset)];
+        int read = readRange(offset, output, 0, output.length);
+        if (read <= 0) {
+            return null;
+        }
+        return read < output.length ? Arrays.copyOf(output, read) : output;
+    }
+
+    /**
+     * Reads uncompressed bytes into a caller-owned buffer. Reads of up to one block are cached;
+     * longer ones, such as a hashing pass, decode through the reader's block buffer and leave
+     * the cache to the small lookups that reuse it.
+     *
+     * @return the number of bytes copied, or -1 when nothing could be read.
+     */
+    public int readRange(long offset, byte[] dest, int destOffset, int length) throws IOException {
+        if (length <= 0 || offset < 0 || offset >= uncompressedSize) {
+            return -1;
+        }
+        int cappedSize = (int) Math.min(length, uncompressedSize - offset);
+        CsoBlockCache cache = CsoBlockCache.shared();
+        int startBlock = (int) (offset / blockSize);
+        int offsetInBlock = (int) (offset % blockSize);
+        boolean cacheable = cappedSize <= blockSize;
+        int outOffset = 0;
+        for (int block = startBlock; block < blockCount && outOffset < cappedSize; block++) {
+            int start = (block == startBlock) ? offsetInBlock : 0;
+            byte[] data = cacheable ? cache.get(cacheKey, block) : null;
+            int copyLength = data != null
+                    ? copyOut(data, data.length, start, dest, destOffset + outOffset, cappedSize - outOffset)
+                    : readBlock(block, start, dest, destOffset + outOffset, cappedSize - outOffset, cacheable);
+            if (copyLength <= 0) {
+                break;
+            }
+            outOffset += copyLength;
+        }
+        return outOffset > 0 ? outOffset : -1;
+    }
+
+    /**
+     * Decodes a block into the reader's block buffer and copies up to {@code length} bytes
+     * from {@code start} into {@code dest}, caching a copy of the block when asked to.
+     *
+     * @return the number of bytes copied, or -1 when the block holds nothing past {@code start}.
+     */
+    private synchronized int readBlock(int blockIndex, int start, byte[] dest, int destOffset, int length,
+                                       boolean cache) throws IOException {
+        byte[] block = decoder.block();
+        int produced = decodeBlock(blockIndex, block, decoder);
+        if (produced <= 0) {
+            return -1;
+        }
+        if (cache) {
+            CsoBlockCache.shared().put(cacheKey, blockIndex, Arrays.copyOf(block, produced));
+        }
+        return copyOut(block, produced, start, dest, destOffset, length);
+    }
+
+    private static int copyOut(byte[] block, int blockLength, int start, byte[] dest, int destOffset, int length) {
+        if (start >= blockLength) {
+            return -1;
+        }
+        int n = Math.min(blockLength - start, length);
+        System.arraycopy(block, start, dest, destOffset, n);
+        return n;
+    }
+
+    /**
+     * Creates a private decode context for callers that decode blocks concurrently.
+     */
+    BlockDecoder newDecoder() {
+        return new BlockDecoder(BlockCodec.forMagic(magic), blockSize);
+    }
+
+    /**
+     * Decodes one block with the given context. Only positional channel reads are used, so
+     * this is safe to call from several threads as long as each brings its own decoder.
+     *
+     * @return the number of bytes produced, or -1 past the last block.
+     * @throws IOException when the block is truncated or does not decode, so a damaged image
+     *                     is never mistaken for a shorter or zero-filled one.
+     */
+    int decodeBlock(int blockIndex, byte[] dest, BlockDecoder ctx) throws IOException {
+        if (blockIndex < 0 || blockIndex >= blockCount) {
+            return -1;
+        }
+        int entry = indexTable.get(blockIndex);
+        long startOffset = (entry & 0x7FFFFFFFL) << alignShift;
+        long endOffset = (indexTable.get(blockIndex + 1) & 0x7FFFFFFFL) << alignShift;
+        boolean isPlain = (entry & 0x80000000) != 0;
+        int compressedSize = (int) Math.max(0, endOffset - startOffset);
+        int expectedSize = (int) Math.min(blockSize, uncompressedSize - ((long) blockIndex * blockSize));
+        if (expectedSize <= 0) {
+            return 0;
+        }
+        if (compressedSize == 0) {
+            Arrays.fill(dest, 0, expectedSize, (byte) 0);
+            return expectedSize;
+        }
+        ByteBuffer buffer = ctx.scratchFor(compressedSize);
+        byte[] scratch = ctx.scratch();
+        if (readFully(channel, buffer, startOffset) != compressedSize) {
+            throw new EOFException("CSO block " + blockIndex + " at offset " + startOffset + " is truncated");
+        }
+        if (isPlain) {
+            int toCopy = Math.min(expectedSize, compressedSize);
+            System.arraycopy(scratch, 0, dest, 0, toCopy);
+            if (toCopy < expectedSize) {
+                Arrays.fill(dest, toCopy, expectedSize, (byte) 0);
+            }
+            return expectedSize;
+        }
+        int total;
+        try {
+            total = ctx.codec.decode(scratch, compressedSize, dest, expectedSize);
+        } catch (IOException e) {
+            throw new IOException("CSO block " + blockIndex + " at offset " + startOffset + " is corrupt: "
+                    + e.getMessage(), e);
+        }
+        if (total <= 0) {
+            throw new IOException("CSO block " + blockIndex + " at offset " + startOffset + " decoded to nothing");
+        }
+        return total;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            decoder.close();
+        }
+        try {
+            channel.close();
+        } finally {
+            try {
+                inputStream.close();
+            } finally {
+                descriptor.close();
+            }
+        }
+    }
+
+    static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int r = channel.read(buffer, position + total);
+            if (r <= 0) {
+                break;
+            }
+            total += r;
+        }
+        return total;
+    }
+
+    static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ignored) {}
+    }
+}
@@ -0,0 +1,329 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a disc image into CSO (raw deflate) or ZSO (raw LZ4) format.
+ *
+ * Blocks are read sequentially from the source, compressed on a worker pool and written back in
+ * order through a bounded window of pending results. A placeholder index is written first and
+ * rewritten once every block offset is known, so the output channel must support positional
+ * writes.
+ */
+public final class CsoWriter {
+    public enum Format { CSO, ZSO }
+
+    public interface ProgressListener {
+        /**
+         * Called on the writing thread at most a few times per second, and once at the end.
+         */
+        void onProgress(long bytesDone, long bytesTotal, long bytesPerSecond);
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 2048;
+    private static final int HEADER_SIZE = 0x18;
+    private static final int WINDOW_PER_THREAD = 8;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final Format format;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private int deflateLevel = Deflater.BEST_COMPRESSION;
+    @Nullable private ProgressListener listener;
+    private volatile boolean cancelled;
+
+    public CsoWriter(Format format) {
+        this.format = format;
+    }
+
+    public CsoWriter setBlockSize(int blockSize) {
+        if (blockSize < 2048 || (blockSize & (blockSize - 1)) != 0) {
+            throw new IllegalArgumentException("Block size must be a power of two >= 2048");
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public CsoWriter setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public CsoWriter setDeflateLevel(int level) {
+        this.deflateLevel = level;
+        return this;
+    }
+
+    public CsoWriter setProgressListener(@Nullable ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Requests cancellation; {@link #write} then throws {@link CancellationException}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Writes the compressed image to {@code out}, starting at offset 0 and truncating the rest.
+     *
+     * @return the size of the written file in bytes.
+     */
+    public long write(DiscImageSource source, FileChannel out) throws IOException {
+        final long total = source.size();
+        if (total <= 0) {
+            throw new IOException("Source size is unknown");
+        }
+        final long blocks = (total + blockSize - 1) / blockSize;
+        if (blocks >= Integer.MAX_VALUE / 4) {
+            throw new IOException("Image too large for CSO");
+        }
+        final int blockCount = (int) blocks;
+        final int align = alignFor(total, blockCount);
+        final int alignMask = (1 << align) - 1;
+        final int[] index = new int[blockCount + 1];
+        final long dataStart = HEADER_SIZE + (blockCount + 1) * 4L;
+
+        out.truncate(0);
+        writeFully(out, buildHeader(total, align), 0);
+        writeFully(out, ByteBuffer.allocate((int) (dataStart - HEADER_SIZE)), HEADER_SIZE);
+
+        final int window = threads * WINDOW_PER_THREAD;
+        final Job[] jobs = new Job[window];
+        final ArrayBlockingQueue<Job> freeJobs = new ArrayBlockingQueue<>(window);
+        for (int i = 0; i < window; i++) {
+            jobs[i] = new Job(blockSize, format);
+            freeJobs.add(jobs[i]);
+        }
+        final ArrayDeque<Future<Job>> pending = new ArrayDeque<>(window);
+        final AtomicInteger workerId = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "CsoWriter-" + workerId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        long outPos = pad(dataStart, alignMask);
+        long started = SystemClock.elapsedRealtime();
+        long lastReport = 0;
+        int nextRead = 0;
+        int nextWrite = 0;
+        try {
+            while (nextWrite < blockCount) {
+                while (nextRead < blockCount && pending.size() < window) {
+                    checkCancelled();
+                    Job job = freeJobs.poll();
+                    if (job == null) {
+                        break;
+                    }
+                    long pos = (long) nextRead * blockSize;
+                    int want = (int) Math.min(blockSize, total - pos);
+                    readBlock(source, pos, job.input, want);
+                    job.inputLength = want;
+                    pending.add(pool.submit(job));
+                    nextRead++;
+                }
+                Job done = await(pending.poll());
+                checkCancelled();
+                int entry = (int) (outPos >> align);
+                ByteBuffer payload;
+                if (done.stored) {
+                    entry |= 0x80000000;
+                    payload = ByteBuffer.wrap(done.input, 0, done.inputLength);
+                } else {
+                    payload = ByteBuffer.wrap(done.output, 0, done.outputLength);
+                }
+                index[nextWrite] = entry;
+                outPos += writeFully(out, payload, outPos);
+                outPos = pad(outPos, alignMask);
+                freeJobs.add(done);
+                nextWrite++;
+
+                long now = SystemClock.elapsedRealtime();
+                if (listener != null && (now - lastReport >= PROGRESS_INTERVAL_MS || nextWrite == blockCount)) {
+                    lastReport = now;
+                    long bytesDone = Math.min(total, (long) nextWrite * blockSize);
+                    long elapsed = Math.max(1, now - started);
+                    listener.onProgress(bytesDone, total, bytesDone * 1000 / elapsed);
+                }
+            }
+            index[blockCount] = (int) (outPos >> align);
+            ByteBuffer indexBuffer = ByteBuffer.allocate((blockCount + 1) * 4).order(ByteOrder.LITTLE_ENDIAN);
+            indexBuffer.asIntBuffer().put(index);
+            writeFully(out, indexBuffer, HEADER_SIZE);
+            long written = out.size();
+            if (written < outPos) {
+                // Materialise the alignment padding after the last block.
+                writeFully(out, ByteBuffer.allocate((int) (outPos - written)), written);
+            }
+            out.truncate(outPos);
+            out.force(false);
+            return outPos;
+        } finally {
+            pool.shutdownNow();
+            try {
+                // Compressors may still be inside a job; only release them once idle.
+                pool.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Job job : jobs) {
+                job.close();
+            }
+        }
+    }
+
+    /**
+     * Smallest shift that keeps every block offset within the 31 bits an index entry can hold,
+     * assuming the worst case of every block being stored uncompressed.
+     */
+    private static int alignFor(long total, int blockCount) {
+        long worstCase = HEADER_SIZE + (blockCount + 1) * 4L + total;
+        int align = 0;
+        while ((worstCase + ((long) blockCount << align)) >> align > 0x7FFFFFFFL) {
+            align++;
+        }
+        return align;
+    }
+
+    private ByteBuffer buildHeader(long total, int align) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(format == Format.ZSO ? CsoReader.MAGIC_ZISO : CsoReader.MAGIC_CISO);
+        header.putInt(HEADER_SIZE);
+        header.putLong(total);
+        header.putInt(blockSize);
+        header.put((byte) 1);
+        header.put((byte) align);
+        header.putShort((short) 0);
+        header.flip();
+        return header;
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("CSO conversion cancelled");
+        }
+    }
+
+    private static Job await(Future<Job> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Block compression failed", cause);
+        }
+    }
+
+    private static void readBlock(DiscImageSource source, long position, byte[] dest, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            int r = source.read(position + filled, dest, filled, length - filled);
+            if (r <= 0) {
+                throw new IOException("Unexpected end of source at " + (position + filled));
+            }
+            filled += r;
+        }
+    }
+
+    private static long pad(long position, int alignMask) {
+        return (position + alignMask) & ~((long) alignMask);
+    }
+
+    private static int writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            total += out.write(buffer, position + total);
+        }
+        return total;
+    }
+
+    /**
+     * One block in flight. Each job owns its buffers and compressor state and is recycled
+     * through the free queue, so the steady state allocates nothing per block.
+     */
+    private final class Job implements java.util.concurrent.Callable<Job> {
+        final byte[] input;
+        final byte[] output;
+        @Nullable final Deflater deflater;
+        @Nullable final int[] hashTable;
+        int inputLength;
+        int outputLength;
+        boolean stored;
+
+        Job(int blockSize, Format format) {
+            this.input = new byte[blockSize];
+            if (format == Format.ZSO) {
+                this.output = new byte[Lz4BlockCodec.maxCompressedLength(blockSize)];
+                this.hashTable = new int[1 << Lz4BlockCodec.HASH_LOG];
+                this.deflater = null;
+            } else {
+                this.output = new byte[blockSize + 64];
+                this.hashTable = null;
+                this.deflater = new Deflater(deflateLevel, true);
+            }
+        }
+
+        @Override
+        public Job call() {
+            if (cancelled) {
+                stored = true;
+                return this;
+            }
+            int produced;
+            if (deflater != null) {
+                deflater.reset();
+                deflater.setInput(input, 0, inputLength);
+                deflater.finish();
+                produced = 0;
+                while (!deflater.finished() && produced < output.length) {
+                    produced += deflater.deflate(output, produced, output.length - produced);
+                }
+                if (!deflater.finished()) {
+                    produced = Integer.MAX_VALUE;
+                }
+            } else {
+                produced = Lz4BlockCodec.compress(input, 0, inputLength, output, 0, hashTable);
+            }
+            // Blocks that do not shrink are stored raw and flagged in the index.
+            stored = produced >= inputLength;
+            outputLength = stored ? 0 : produced;
+            return this;
+        }
+
+        void close() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+}
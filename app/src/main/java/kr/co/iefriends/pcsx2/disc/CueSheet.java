@@ -0,0 +1,106 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The parts of a CUE sheet needed to group a multi-track dump: which files it references and
+ * which track each file starts with. Timing, pregaps and metadata commands are ignored.
+ */
+public final class CueSheet {
+    public static final class Track {
+        public final int number;
+        /** Track type as written, e.g. MODE2/2352 or AUDIO. */
+        public final String mode;
+        /** The FILE the track belongs to, as written in the sheet. */
+        public final String file;
+
+        Track(int number, String mode, String file) {
+            this.number = number;
+            this.mode = mode;
+            this.file = file;
+        }
+
+        public boolean isData() {
+            return !"AUDIO".equals(mode) && !"CDG".equals(mode);
+        }
+    }
+
+    /** Referenced files in sheet order, without duplicates. */
+    public final List<String> files;
+    public final List<Track> tracks;
+
+    private CueSheet(List<String> files, List<Track> tracks) {
+        this.files = Collections.unmodifiableList(files);
+        this.tracks = Collections.unmodifiableList(tracks);
+    }
+
+    public static CueSheet parse(String text) {
+        List<String> files = new ArrayList<>();
+        List<Track> tracks = new ArrayList<>();
+        String currentFile = null;
+        for (String raw : text.split("\r\n|\r|\n")) {
+            String line = raw.trim();
+            if (line.startsWith("\uFEFF")) {
+                line = line.substring(1).trim();
+            }
+            String upper = line.toUpperCase(Locale.ROOT);
+            if (upper.startsWith("FILE ")) {
+                currentFile = parseFileName(line.substring(5).trim());
+                if (currentFile != null && !files.contains(currentFile)) {
+                    files.add(currentFile);
+                }
+            } else if (upper.startsWith("TRACK ") && currentFile != null) {
+                String[] parts = line.substring(6).trim().split("\\s+");
+                if (parts.length >= 2) {
+                    try {
+                        tracks.add(new Track(Integer.parseInt(parts[0]), parts[1].toUpperCase(Locale.ROOT), currentFile));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return new CueSheet(files, tracks);
+    }
+
+    /**
+     * The file holding the first data track, which is what the emulator boots and what Redump
+     * lists the disc's data hash for. Falls back to the first file for sheets without track
+     * types.
+     */
+    @Nullable
+    public String dataFile() {
+        for (Track t : tracks) {
+            if (t.isData()) {
+                return t.file;
+            }
+        }
+        return files.isEmpty() ? null : files.get(0);
+    }
+
+    /**
+     * File name without any directory part, as sheets may use either separator.
+     */
+    public static String baseName(String path) {
+        int sep = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return sep >= 0 ? path.substring(sep + 1) : path;
+    }
+
+    /**
+     * {@code "name with spaces.bin" BINARY} or {@code name.bin BINARY}.
+     */
+    @Nullable
+    private static String parseFileName(String rest) {
+        if (rest.startsWith("\"")) {
+            int end = rest.indexOf('"', 1);
+            return end > 1 ? rest.substring(1, end) : null;
+        }
+        int space = rest.lastIndexOf(' ');
+        String name = space > 0 ? rest.substring(0, space).trim() : rest;
+        return name.isEmpty() ? null : name;
+    }
+}
@@ -0,0 +1,48 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate blocks as written by CISO encoders. The native inflater is created once and reset.
+ */
+final class DeflateBlockCodec implements BlockCodec {
+    private Inflater inflater;
+
+    @Override
+    public int decode(byte[] src, int srcLength, byte[] dest, int destLength) throws IOException {
+        Inflater inf = inflater;
+        if (inf == null) {
+            inf = new Inflater(true);
+            inflater = inf;
+        } else {
+            inf.reset();
+        }
+        inf.setInput(src, 0, srcLength);
+        int total = 0;
+        try {
+            while (!inf.finished() && total < destLength) {
+                int r = inf.inflate(dest, total, destLength - total);
+                if (r <= 0) {
+                    if (inf.needsInput() || inf.finished() || inf.needsDictionary()) {
+                        break;
+                    }
+                } else {
+                    total += r;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt deflate block", e);
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
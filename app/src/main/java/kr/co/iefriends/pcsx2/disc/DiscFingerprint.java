@@ -0,0 +1,66 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Cheap identity of a dump that survives copying, renaming and recompression, so copies of the
+ * same disc in several folders or formats can be told apart from different discs without
+ * hashing them. Built from the 2048-byte-sector view of the image: the volume size recorded in
+ * the primary volume descriptor, CRC32s of that descriptor's sector and of the volume's last
+ * sector, and the boot serial. The volume size is used rather than the image size because CHD
+ * and raw CD images pad or frame the same data differently. Reads two sectors.
+ */
+public final class DiscFingerprint {
+    private static final int SECTOR_SIZE = 2048;
+    private static final int PVD_SECTOR = 16;
+    /** Volume space size, both-endian; the little-endian half comes first. */
+    private static final int VOLUME_SIZE_OFFSET = 80;
+    private static final byte[] PVD_SIGNATURE = {0x01, 'C', 'D', '0', '0', '1'};
+
+    private DiscFingerprint() {
+    }
+
+    /**
+     * @param src a 2048-byte-sector view of the image, see {@link DiscImageSource#cooked}
+     * @param serial the serial read from the disc, if any
+     * @return the fingerprint, or null when the image has no ISO 9660 volume descriptor or is
+     * shorter than the volume it describes.
+     */
+    @Nullable
+    public static String compute(DiscImageSource src, @Nullable String serial) throws IOException {
+        byte[] pvd = src.readRange((long) PVD_SECTOR * SECTOR_SIZE, SECTOR_SIZE);
+        if (pvd == null || pvd.length < SECTOR_SIZE) {
+            return null;
+        }
+        for (int i = 0; i < PVD_SIGNATURE.length; i++) {
+            if (pvd[i] != PVD_SIGNATURE[i]) {
+                return null;
+            }
+        }
+        long sectors = (pvd[VOLUME_SIZE_OFFSET] & 0xFFL) | ((pvd[VOLUME_SIZE_OFFSET + 1] & 0xFFL) << 8)
+                | ((pvd[VOLUME_SIZE_OFFSET + 2] & 0xFFL) << 16) | ((pvd[VOLUME_SIZE_OFFSET + 3] & 0xFFL) << 24);
+        if (sectors <= PVD_SECTOR) {
+            // Some homebrew mastering tools leave the field empty; fall back to the image size.
+            sectors = src.size() / SECTOR_SIZE;
+            if (sectors <= PVD_SECTOR) {
+                return null;
+            }
+        }
+        byte[] last = src.readRange((sectors - 1) * SECTOR_SIZE, SECTOR_SIZE);
+        if (last == null || last.length < SECTOR_SIZE) {
+            return null;
+        }
+        return String.format(Locale.ROOT, "%d:%08x:%08x:%s", sectors * SECTOR_SIZE, crc(pvd), crc(last),
+                serial != null ? serial : "");
+    }
+
+    private static long crc(byte[] sector) {
+        CRC32 crc = new CRC32();
+        crc.update(sector, 0, sector.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,220 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Random access view of the uncompressed contents of a disc image. Plain ISO/BIN/IMG files are
+ * read with positional reads on one open descriptor, CSO/ZSO images are decoded through
+ * {@link CsoReader} and CHD images through {@link ChdReader}, so the cost of a read depends on
+ * the bytes requested, not on the offset.
+ * Instances are safe to use from one thread at a time.
+ */
+public interface DiscImageSource extends Closeable {
+
+    /**
+     * @return the uncompressed image size in bytes, or -1 when the provider cannot tell.
+     */
+    long size();
+
+    /**
+     * Reads up to {@code length} bytes at {@code position}.
+     *
+     * @return the number of bytes read, or -1 at or beyond the end of the image.
+     */
+    int read(long position, byte[] dest, int offset, int length) throws IOException;
+
+    /** Size of the array sources read through when filling a direct buffer. */
+    int TRANSFER_SIZE = 64 * 1024;
+
+    /**
+     * Reads up to {@code dest.remaining()} bytes at {@code position} into {@code dest},
+     * advancing its position. Sources backed by a file channel read straight into direct
+     * buffers; the others copy through an array of at most {@link #TRANSFER_SIZE} bytes, which
+     * this default allocates on each call and the sources in this package keep.
+     *
+     * @return the number of bytes read, or -1 at or beyond the end of the image.
+     */
+    default int read(long position, ByteBuffer dest) throws IOException {
+        return readThrough(this, position, dest, dest.hasArray() ? null : new byte[Math.min(dest.remaining(), TRANSFER_SIZE)]);
+    }
+
+    /**
+     * Opens a sequential stream over the whole image. Closing it does not close this source.
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Whether a single pass over the whole image is faster through {@link #openStream()} than
+     * through positional reads, as with a stream that decodes blocks ahead on other threads.
+     */
+    default boolean prefersStream() {
+        return false;
+    }
+
+    /**
+     * Whether hashing this source gives the digest a Redump listing holds for the dump. False
+     * for views that serve converted sectors rather than the bytes that were dumped.
+     */
+    default boolean matchesDumpHashes() {
+        return true;
+    }
+
+    /**
+     * Reads as many bytes as available up to {@code size}.
+     *
+     * @return the bytes, or null when nothing could be read.
+     */
+    @Nullable
+    default byte[] readRange(long position, int size) throws IOException {
+        if (size <= 0 || position < 0) {
+            return null;
+        }
+        long total = size();
+        if (total >= 0) {
+            if (position >= total) {
+                return null;
+            }
+            size = (int) Math.min(size, total - position);
+        }
+        byte[] buf = new byte[size];
+        int filled = 0;
+        while (filled < size) {
+            int r = read(position + filled, buf, filled, size - filled);
+            if (r <= 0) {
+                break;
+            }
+            filled += r;
+        }
+        if (filled == 0) {
+            return null;
+        }
+        return filled < size ? Arrays.copyOf(buf, filled) : buf;
+    }
+
+    /**
+     * {@link #read(long, ByteBuffer)} for sources that read into arrays: array-backed buffers
+     * are filled in place, others through {@code transfer}, which is then only null when
+     * {@code dest} has an array.
+     */
+    static int readThrough(DiscImageSource source, long position, ByteBuffer dest, @Nullable byte[] transfer)
+            throws IOException {
+        if (!dest.hasRemaining()) {
+            return 0;
+        }
+        if (dest.hasArray()) {
+            int r = source.read(position, dest.array(), dest.arrayOffset() + dest.position(), dest.remaining());
+            if (r > 0) {
+                dest.position(dest.position() + r);
+            }
+            return r;
+        }
+        int r = source.read(position, transfer, 0, Math.min(dest.remaining(), transfer.length));
+        if (r > 0) {
+            dest.put(transfer, 0, r);
+        }
+        return r;
+    }
+
+    /**
+     * Returns {@code source} when its volume descriptor sits at the 2048-byte-sector offset,
+     * otherwise a cooked view of it if it is a raw CD image. Reads a few bytes of sector 16 and
+     * nothing else. Closes {@code source} when detection fails with an exception.
+     */
+    static DiscImageSource cooked(DiscImageSource source) throws IOException {
+        try {
+            byte[] pvd = source.readRange(16L * 2048, 6);
+            if (pvd != null && pvd.length == 6 && pvd[0] == 0x01 && pvd[1] == 'C' && pvd[2] == 'D'
+                    && pvd[3] == '0' && pvd[4] == '0' && pvd[5] == '1') {
+                return source;
+            }
+            RawSectorDiscImageSource raw = RawSectorDiscImageSource.detect(source);
+            return raw != null ? raw : source;
+        } catch (IOException | RuntimeException e) {
+            CsoReader.closeQuietly(source);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the document once and picks the cheapest access path it supports. Providers that
+     * hand out a pipe instead of a file get the stream fallback, since positional reads on a
+     * pipe fail.
+     */
+    static DiscImageSource open(ContentResolver cr, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = null;
+        try {
+            pfd = cr.openFileDescriptor(uri, "r");
+        } catch (IOException | RuntimeException ignored) {}
+        if (pfd == null) {
+            return new StreamDiscImageSource(cr, uri);
+        }
+        DiscImageSource source = open(pfd, uri);
+        return source != null ? source : new StreamDiscImageSource(cr, uri);
+    }
+
+    /**
+     * Seeks to the start and asks for the size, both of which fail on pipes and sockets.
+     */
+    private static boolean isSeekable(FileChannel channel) {
+        try {
+            channel.position(0);
+            channel.size();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens an image on a directly readable path without going through a content provider.
+     */
+    static DiscImageSource open(File file) throws IOException {
+        DiscImageSource source = open(ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY), Uri.fromFile(file));
+        if (source == null) {
+            throw new IOException("Not seekable: " + file);
+        }
+        return source;
+    }
+
+    /**
+     * @return the source, or null with {@code pfd} closed when it cannot seek.
+     */
+    @Nullable
+    private static DiscImageSource open(ParcelFileDescriptor pfd, Uri uri) throws IOException {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(pfd.getFileDescriptor());
+            if (!isSeekable(fis.getChannel())) {
+                CsoReader.closeQuietly(fis);
+                CsoReader.closeQuietly(pfd);
+                return null;
+            }
+            CsoReader reader = CsoReader.probe(pfd, fis, uri);
+            if (reader != null) {
+                return new CsoDiscImageSource(reader);
+            }
+            ChdReader chd = ChdReader.probe(pfd, fis);
+            if (chd != null) {
+                return new ChdDiscImageSource(chd);
+            }
+            return new FileDiscImageSource(pfd, fis);
+        } catch (IOException | RuntimeException e) {
+            CsoReader.closeQuietly(fis);
+            CsoReader.closeQuietly(pfd);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Boot information from a PlayStation disc's SYSTEM.CNF: which executable the disc boots and
+ * whether it boots as a PS2 or a PS1 disc.
+ */
+public final class DiscInfo {
+    /** SYSTEM.CNF is a few lines; anything larger is not one. */
+    private static final int MAX_CNF_BYTES = 4096;
+
+    /** Boot path as written in SYSTEM.CNF, e.g. {@code cdrom0:\SLUS_209.46;1}. */
+    public final String bootPath;
+    /** File name of the boot executable without version, e.g. {@code SLUS_209.46}. */
+    public final String bootElf;
+    /** True for BOOT2 (PS2) discs, false for BOOT (PS1) discs. */
+    public final boolean ps2;
+
+    private DiscInfo(String bootPath, boolean ps2) {
+        this.bootPath = bootPath;
+        this.ps2 = ps2;
+        String name = bootPath;
+        int sep = Math.max(name.lastIndexOf('\\'), Math.max(name.lastIndexOf('/'), name.lastIndexOf(':')));
+        if (sep >= 0) {
+            name = name.substring(sep + 1);
+        }
+        int semi = name.indexOf(';');
+        this.bootElf = (semi >= 0 ? name.substring(0, semi) : name).trim();
+    }
+
+    /**
+     * @return the boot information, or null when the disc has no SYSTEM.CNF or it names no
+     * boot executable.
+     */
+    @Nullable
+    public static DiscInfo read(IsoFileSystem fs) throws IOException {
+        IsoFileSystem.Entry cnf = fs.find("SYSTEM.CNF");
+        if (cnf == null || cnf.directory) {
+            return null;
+        }
+        String text = new String(fs.readAll(cnf, MAX_CNF_BYTES), StandardCharsets.US_ASCII);
+        String boot2 = null;
+        String boot = null;
+        for (String line : text.split("[\r\n]+")) {
+            int eq = line.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String key = line.substring(0, eq).trim().toUpperCase(Locale.ROOT);
+            String value = line.substring(eq + 1).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (key) {
+                case "BOOT2":
+                    boot2 = value;
+                    break;
+                case "BOOT":
+                    boot = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (boot2 != null) {
+            return new DiscInfo(boot2, true);
+        }
+        return boot != null ? new DiscInfo(boot, false) : null;
+    }
+}
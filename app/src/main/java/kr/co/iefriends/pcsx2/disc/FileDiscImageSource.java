@@ -0,0 +1,110 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Uncompressed image read with positional {@link FileChannel} reads.
+ */
+final class FileDiscImageSource implements DiscImageSource {
+    private final ParcelFileDescriptor descriptor;
+    private final FileInputStream inputStream;
+    private final FileChannel channel;
+    private final long size;
+
+    FileDiscImageSource(ParcelFileDescriptor descriptor, FileInputStream inputStream) throws IOException {
+        this.descriptor = descriptor;
+        this.inputStream = inputStream;
+        this.channel = inputStream.getChannel();
+        long stat = descriptor.getStatSize();
+        this.size = stat >= 0 ? stat : channel.size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] dest, int offset, int length) throws IOException {
+        if (position < 0 || position >= size) {
+            return -1;
+        }
+        if (length <= 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(dest, offset, (int) Math.min(length, size - position));
+        int total = CsoReader.readFully(channel, buffer, position);
+        return total > 0 ? total : -1;
+    }
+
+    @Override
+    public int read(long position, ByteBuffer dest) throws IOException {
+        if (position < 0 || position >= size) {
+            return -1;
+        }
+        if (!dest.hasRemaining()) {
+            return 0;
+        }
+        int limit = dest.limit();
+        dest.limit(dest.position() + (int) Math.min(dest.remaining(), size - position));
+        try {
+            int total = CsoReader.readFully(channel, dest, position);
+            return total > 0 ? total : -1;
+        } finally {
+            dest.limit(limit);
+        }
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int r = FileDiscImageSource.this.read(position, b, off, len);
+                if (r > 0) {
+                    position += r;
+                }
+                return r;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, size - position));
+                position += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            try {
+                inputStream.close();
+            } finally {
+                descriptor.close();
+            }
+        }
+    }
+}
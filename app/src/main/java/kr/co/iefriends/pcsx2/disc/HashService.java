@@ -0,0 +1,513 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import kr.co.iefriends.pcsx2.utils.DebugLog;
+
+/**
+ * Hashes whole disc images in the background. Each file is read by one thread into a pair of
+ * direct buffers while the other one is digested, so reading, and decompressing CSO/CHD
+ * blocks, overlaps with hashing. A job can ask for several algorithms; each gets its own
+ * thread over the same buffers, so the file is still read once and the slowest digest, not
+ * their sum, sets the pace. Sources that prefer it, such as CSO images, are read through their
+ * stream so upcoming blocks decompress on other threads meanwhile. Waiting files are taken by priority, then in the order
+ * they were submitted. Files on internal storage and on removable or remote storage are limited
+ * separately: internal flash keeps up with more than one sequential stream, while SD cards slow
+ * down when several files are read at once.
+ */
+public final class HashService {
+    private static final String TAG = "HashService";
+    private static final int CHUNK = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250L;
+    /** Not a {@link MessageDigest}; computed with {@link CRC32}, big-endian. */
+    public static final String CRC32 = "CRC32";
+    /** Tells the digest stages the reader is done. */
+    private static final Chunk END = new Chunk(ByteBuffer.allocate(0));
+
+    /** A filled buffer and the number of digest stages still reading it. */
+    private static final class Chunk {
+        final ByteBuffer buffer;
+        final AtomicInteger pending = new AtomicInteger();
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private interface Digester {
+        void update(ByteBuffer data);
+
+        byte[] finish();
+    }
+
+    public interface Opener {
+        /**
+         * @return the image to hash, or null to skip it without a digest.
+         */
+        @Nullable
+        DiscImageSource open() throws IOException;
+    }
+
+    public interface Listener {
+        /**
+         * Called on a hashing thread at most every 250 ms while the file is read.
+         *
+         * @param total the image size, or -1 when unknown
+         */
+        default void onProgress(Job job, long hashed, long total) {
+        }
+
+        /**
+         * Called once on a hashing thread when the job completes, fails, is skipped or is
+         * cancelled; see {@link Job#digest()} and {@link Job#isCancelled()}.
+         */
+        void onFinished(Job job);
+    }
+
+    public final class Job {
+        private final Opener opener;
+        private final String[] algorithms;
+        private final boolean removable;
+        private final long sequence;
+        @Nullable private final Listener listener;
+        private int priority;
+        private volatile boolean cancelled;
+        private boolean finished;
+        @Nullable private byte[][] digests;
+        private long size = -1;
+        @Nullable private Exception error;
+
+        Job(Opener opener, String[] algorithms, boolean removable, int priority, long sequence, @Nullable Listener listener) {
+            this.opener = opener;
+            this.algorithms = algorithms;
+            this.removable = removable;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.listener = listener;
+        }
+
+        /**
+         * Moves a waiting job ahead of those with a lower priority. Has no effect once the job
+         * has started.
+         */
+        public void promote(int newPriority) {
+            synchronized (lock) {
+                if (newPriority > priority) {
+                    priority = newPriority;
+                }
+            }
+        }
+
+        /**
+         * Stops the job; a running job stops at its next buffer. The listener still gets
+         * {@link Listener#onFinished}.
+         */
+        public void cancel() {
+            cancelled = true;
+            boolean removed;
+            synchronized (lock) {
+                removed = queue.remove(this);
+            }
+            if (removed) {
+                finish();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Waits until the job has finished and its listener has returned.
+         */
+        public synchronized void await() throws InterruptedException {
+            while (!finished) {
+                wait();
+            }
+        }
+
+        /**
+         * Waits at most {@code timeoutMs}.
+         *
+         * @return true when the job has finished.
+         */
+        public synchronized boolean await(long timeoutMs) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMs;
+            while (!finished) {
+                long left = end - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                wait(left);
+            }
+            return true;
+        }
+
+        /**
+         * @return the digest of the job's first algorithm, or null when the job was skipped,
+         * failed or was cancelled.
+         */
+        @Nullable
+        public byte[] digest() {
+            return digest(algorithms[0]);
+        }
+
+        /**
+         * @return the digest for {@code algorithm}, or null when it was not requested or the
+         * job did not complete.
+         */
+        @Nullable
+        public synchronized byte[] digest(String algorithm) {
+            if (digests == null) {
+                return null;
+            }
+            for (int i = 0; i < algorithms.length; i++) {
+                if (algorithms[i].equals(algorithm)) {
+                    return digests[i];
+                }
+            }
+            return null;
+        }
+
+        /** Number of bytes the digest covers. */
+        public synchronized long size() {
+            return size;
+        }
+
+        @Nullable
+        public synchronized Exception error() {
+            return error;
+        }
+
+        private synchronized void complete(@Nullable byte[][] digests, long size, @Nullable Exception error) {
+            this.digests = digests;
+            this.size = size;
+            this.error = error;
+        }
+
+        private void finish() {
+            if (listener != null) {
+                try {
+                    listener.onFinished(this);
+                } catch (RuntimeException e) {
+                    DebugLog.w(TAG, "Hash listener failed: " + e.getMessage());
+                }
+            }
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private final String algorithm;
+    private final int maxInternal;
+    private final int maxRemovable;
+    private final Object lock = new Object();
+    private final List<Job> queue = new ArrayList<>();
+    private final BlockingQueue<ByteBuffer> bufferPool;
+    private final ExecutorService readers;
+    private final ExecutorService digesters;
+    private int runningInternal;
+    private int runningRemovable;
+    private long nextSequence;
+
+    /**
+     * @param maxInternal files hashed at once from internal storage
+     * @param maxRemovable files hashed at once from SD cards, USB drives and other providers
+     */
+    public HashService(String algorithm, int maxInternal, int maxRemovable) throws NoSuchAlgorithmException {
+        digester(algorithm);
+        this.algorithm = algorithm;
+        this.maxInternal = Math.max(1, maxInternal);
+        this.maxRemovable = Math.max(1, maxRemovable);
+        int files = this.maxInternal + this.maxRemovable;
+        this.bufferPool = new ArrayBlockingQueue<>(files * 2);
+        this.readers = Executors.newFixedThreadPool(files, threads("HashRead"));
+        // One thread per algorithm of each running job; idle ones exit after a minute.
+        this.digesters = Executors.newCachedThreadPool(threads("HashDigest"));
+    }
+
+    /**
+     * Queues a file. {@code opener} is called on a hashing thread once the job starts.
+     *
+     * @param removable whether the file is on removable or remote storage
+     * @param priority higher values are hashed first
+     * @param algorithms {@link MessageDigest} names or {@link #CRC32}; the service's own
+     *                   algorithm when none are given
+     */
+    public Job submit(Opener opener, boolean removable, int priority, @Nullable Listener listener,
+                      String... algorithms) throws NoSuchAlgorithmException {
+        String[] names = algorithms.length > 0 ? algorithms.clone() : new String[]{algorithm};
+        for (String name : names) {
+            digester(name);
+        }
+        Job job;
+        synchronized (lock) {
+            job = new Job(opener, names, removable, priority, nextSequence++, listener);
+            queue.add(job);
+            dispatchLocked();
+        }
+        return job;
+    }
+
+    private void dispatchLocked() {
+        while (true) {
+            Job next = null;
+            for (Job job : queue) {
+                if (job.removable ? runningRemovable >= maxRemovable : runningInternal >= maxInternal) {
+                    continue;
+                }
+                if (next == null || job.priority > next.priority
+                        || (job.priority == next.priority && job.sequence < next.sequence)) {
+                    next = job;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            queue.remove(next);
+            if (next.removable) {
+                runningRemovable++;
+            } else {
+                runningInternal++;
+            }
+            final Job job = next;
+            readers.execute(() -> run(job));
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            if (!job.cancelled) {
+                hash(job);
+            }
+        } finally {
+            synchronized (lock) {
+                if (job.removable) {
+                    runningRemovable--;
+                } else {
+                    runningInternal--;
+                }
+                dispatchLocked();
+            }
+            job.finish();
+        }
+    }
+
+    private void hash(Job job) {
+        DiscImageSource src = null;
+        InputStream in = null;
+        int lanes = job.algorithms.length;
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(2);
+        List<BlockingQueue<Chunk>> filled = new ArrayList<>(lanes);
+        List<Future<Long>> stages = new ArrayList<>(lanes);
+        try {
+            src = job.opener.open();
+            if (src == null) {
+                return;
+            }
+            final long total = src.size();
+            List<Digester> digests = new ArrayList<>(lanes);
+            for (String name : job.algorithms) {
+                digests.add(digester(name));
+            }
+            free.add(new Chunk(takeBuffer()));
+            free.add(new Chunk(takeBuffer()));
+            byte[] transfer = null;
+            if (src.prefersStream()) {
+                in = src.openStream();
+                transfer = new byte[DiscImageSource.TRANSFER_SIZE];
+            }
+            long position = 0;
+            boolean eof = false;
+            try {
+                for (int i = 0; i < lanes; i++) {
+                    // Two chunks and END at most, so offering END never fails.
+                    final BlockingQueue<Chunk> lane = new ArrayBlockingQueue<>(3);
+                    final Digester digest = digests.get(i);
+                    final boolean reports = i == 0 && job.listener != null;
+                    filled.add(lane);
+                    stages.add(digesters.submit(() -> {
+                        long hashed = 0;
+                        long lastReport = System.currentTimeMillis();
+                        RuntimeException failure = null;
+                        while (true) {
+                            Chunk c = lane.take();
+                            if (c == END) {
+                                if (failure != null) {
+                                    throw failure;
+                                }
+                                return hashed;
+                            }
+                            // A failed stage keeps draining its lane so the reader gets every
+                            // buffer back and is never left waiting on it.
+                            if (failure == null) {
+                                try {
+                                    digest.update(c.buffer.duplicate());
+                                    hashed += c.buffer.remaining();
+                                } catch (RuntimeException e) {
+                                    failure = e;
+                                }
+                            }
+                            if (c.pending.decrementAndGet() == 0) {
+                                free.put(c);
+                            }
+                            long now = System.currentTimeMillis();
+                            if (reports && failure == null && now - lastReport >= PROGRESS_INTERVAL_MS) {
+                                lastReport = now;
+                                try {
+                                    job.listener.onProgress(job, hashed, total);
+                                } catch (RuntimeException ignored) {
+                                }
+                            }
+                        }
+                    }));
+                }
+                while (!eof && !job.cancelled) {
+                    Chunk c = free.take();
+                    ByteBuffer b = c.buffer;
+                    b.clear();
+                    while (b.hasRemaining()) {
+                        int r = in != null ? read(in, b, transfer) : src.read(position, b);
+                        if (r <= 0) {
+                            eof = true;
+                            break;
+                        }
+                        position += r;
+                    }
+                    b.flip();
+                    if (b.hasRemaining()) {
+                        c.pending.set(lanes);
+                        for (BlockingQueue<Chunk> lane : filled) {
+                            lane.put(c);
+                        }
+                    } else {
+                        free.put(c);
+                    }
+                }
+            } finally {
+                for (BlockingQueue<Chunk> lane : filled) {
+                    lane.offer(END);
+                }
+            }
+            long hashed = -1;
+            for (Future<Long> stage : stages) {
+                hashed = stage.get();
+            }
+            if (!job.cancelled) {
+                byte[][] results = new byte[lanes][];
+                for (int i = 0; i < lanes; i++) {
+                    results[i] = digests.get(i).finish();
+                }
+                job.complete(results, hashed, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.complete(null, -1, e);
+        } catch (ExecutionException e) {
+            job.complete(null, -1, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            job.complete(null, -1, e);
+        } finally {
+            CsoReader.closeQuietly(in);
+            CsoReader.closeQuietly(src);
+            // Every stage has been sent END and hands its buffers back before returning, so
+            // the pool only gets them once no stage can still be reading one.
+            awaitQuietly(stages);
+            Chunk c;
+            while ((c = free.poll()) != null) {
+                bufferPool.offer(c.buffer);
+            }
+        }
+    }
+
+    private static int read(InputStream in, ByteBuffer dest, byte[] transfer) throws IOException {
+        int r = in.read(transfer, 0, Math.min(dest.remaining(), transfer.length));
+        if (r > 0) {
+            dest.put(transfer, 0, r);
+        }
+        return r;
+    }
+
+    private static void awaitQuietly(List<Future<Long>> stages) {
+        boolean interrupted = false;
+        for (Future<Long> stage : stages) {
+            while (true) {
+                try {
+                    stage.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Digester digester(String algorithm) throws NoSuchAlgorithmException {
+        if (CRC32.equals(algorithm)) {
+            final CRC32 crc = new CRC32();
+            return new Digester() {
+                @Override
+                public void update(ByteBuffer data) {
+                    crc.update(data);
+                }
+
+                @Override
+                public byte[] finish() {
+                    return ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+                }
+            };
+        }
+        final MessageDigest md = MessageDigest.getInstance(algorithm);
+        return new Digester() {
+            @Override
+            public void update(ByteBuffer data) {
+                md.update(data);
+            }
+
+            @Override
+            public byte[] finish() {
+                return md.digest();
+            }
+        };
+    }
+
+    private ByteBuffer takeBuffer() {
+        ByteBuffer b = bufferPool.poll();
+        return b != null ? b : ByteBuffer.allocateDirect(CHUNK);
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        };
+    }
+}
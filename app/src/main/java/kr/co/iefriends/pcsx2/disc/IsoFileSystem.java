@@ -0,0 +1,641 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only view of the file system on a 2048-byte-sector disc image (see
+ * {@link DiscImageSource#cooked}). Understands ISO 9660 including multi-extent files, Joliet
+ * supplementary volumes and the UDF side of UDF bridge discs. Lookups try ISO 9660 first, since
+ * that is what the PS2 boots from, then Joliet, then UDF.
+ *
+ * Metadata sectors go through a small LRU cache, so repeated lookups on the same disc read each
+ * directory sector once. The image source is not owned and must stay open while this is used.
+ * Instances are safe to use from one thread at a time.
+ */
+public final class IsoFileSystem {
+    public static final int SECTOR_SIZE = 2048;
+    private static final int CACHE_SECTORS = 32;
+    private static final int FIRST_DESCRIPTOR = 16;
+    private static final int MAX_DESCRIPTORS = 64;
+    /** Directories larger than this are treated as corrupt. */
+    private static final long MAX_DIRECTORY_BYTES = 16L * 1024 * 1024;
+
+    private static final int UDF_ANCHOR_SECTOR = 256;
+    private static final int TAG_ANCHOR = 2;
+    private static final int TAG_PARTITION = 5;
+    private static final int TAG_LOGICAL_VOLUME = 6;
+    private static final int TAG_TERMINATOR = 8;
+    private static final int TAG_FILE_SET = 256;
+    private static final int TAG_FILE_IDENTIFIER = 257;
+    private static final int TAG_FILE_ENTRY = 261;
+    private static final int TAG_EXTENDED_FILE_ENTRY = 266;
+
+    /**
+     * A file or directory. Contents may be split across several extents.
+     */
+    public static final class Entry {
+        public final String name;
+        public final boolean directory;
+        public final long size;
+        final long[] extentSectors;
+        final long[] extentBytes;
+        /** Contents stored inside a UDF file entry instead of in extents. */
+        @Nullable final byte[] embedded;
+        final Volume volume;
+
+        Entry(String name, boolean directory, long size, long[] extentSectors, long[] extentBytes,
+              @Nullable byte[] embedded, Volume volume) {
+            this.name = name;
+            this.directory = directory;
+            this.size = size;
+            this.extentSectors = extentSectors;
+            this.extentBytes = extentBytes;
+            this.embedded = embedded;
+            this.volume = volume;
+        }
+
+        /**
+         * Sector of the first byte, or -1 for empty or embedded files.
+         */
+        public long firstSector() {
+            return extentSectors.length > 0 ? extentSectors[0] : -1;
+        }
+
+        @Override
+        public String toString() {
+            return name + (directory ? "/" : " (" + size + " bytes)");
+        }
+    }
+
+    private final DiscImageSource source;
+    private final List<Volume> volumes = new ArrayList<>();
+    private final LinkedHashMap<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(CACHE_SECTORS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHE_SECTORS;
+        }
+    };
+    private boolean udfProbed;
+    @Nullable private Volume udfVolume;
+
+    private IsoFileSystem(DiscImageSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads the volume descriptors of {@code source}.
+     *
+     * @throws IOException when the image has neither an ISO 9660 nor a UDF volume.
+     */
+    public static IsoFileSystem open(DiscImageSource source) throws IOException {
+        IsoFileSystem fs = new IsoFileSystem(source);
+        Volume joliet = null;
+        for (int i = 0; i < MAX_DESCRIPTORS; i++) {
+            byte[] vd = fs.sector(FIRST_DESCRIPTOR + i);
+            if (vd == null || vd[1] != 'C' || vd[2] != 'D' || vd[3] != '0' || vd[4] != '0' || vd[5] != '1') {
+                break;
+            }
+            int type = vd[0] & 0xFF;
+            if (type == 255) {
+                break;
+            }
+            if (type == 1 && fs.volumes.isEmpty()) {
+                fs.volumes.add(new IsoVolume(fs, vd, false));
+            } else if (type == 2 && joliet == null && isJoliet(vd)) {
+                joliet = new IsoVolume(fs, vd, true);
+            }
+        }
+        if (joliet != null) {
+            fs.volumes.add(joliet);
+        }
+        if (fs.volumes.isEmpty() && fs.udf() == null) {
+            throw new IOException("No ISO 9660 or UDF volume");
+        }
+        return fs;
+    }
+
+    /**
+     * The UDF volume, read on first use so that lookups answered by ISO 9660 do not pay for
+     * its descriptors. Added after the ISO 9660 volumes.
+     */
+    @Nullable
+    private Volume udf() throws IOException {
+        if (!udfProbed) {
+            udfProbed = true;
+            try {
+                udfVolume = UdfVolume.open(this);
+            } catch (IOException e) {
+                if (volumes.isEmpty()) {
+                    throw e;
+                }
+            }
+            if (udfVolume != null) {
+                volumes.add(udfVolume);
+            }
+        }
+        return udfVolume;
+    }
+
+    /**
+     * Root directory of the preferred volume.
+     */
+    public Entry root() {
+        return volumes.get(0).root();
+    }
+
+    /**
+     * Looks up a path such as {@code SYSTEM.CNF}, {@code /DATA/MOVIE.PSS} or
+     * {@code cdrom0:\SLUS_209.46;1}. Separators may be / or \, a device prefix and ISO 9660
+     * version suffixes are ignored, and names compare case-insensitively.
+     */
+    @Nullable
+    public Entry find(String path) throws IOException {
+        String[] parts = splitPath(path);
+        for (Volume volume : volumes) {
+            Entry e = resolve(volume, parts);
+            if (e != null) {
+                return e;
+            }
+        }
+        if (!udfProbed) {
+            Volume udf = udf();
+            return udf != null ? resolve(udf, parts) : null;
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Entry resolve(Volume volume, String[] parts) throws IOException {
+        Entry e = volume.root();
+        for (int i = 0; i < parts.length && e != null; i++) {
+            e = e.directory ? volume.lookup(e, parts[i]) : null;
+        }
+        return e;
+    }
+
+    /**
+     * Reads up to {@code length} bytes of {@code file} starting at {@code position}.
+     *
+     * @return the number of bytes read, or -1 at or beyond the end of the file.
+     */
+    public int read(Entry file, long position, byte[] dest, int offset, int length) throws IOException {
+        if (position < 0 || position >= file.size) {
+            return -1;
+        }
+        int total = (int) Math.min(length, file.size - position);
+        if (file.embedded != null) {
+            System.arraycopy(file.embedded, (int) position, dest, offset, total);
+            return total;
+        }
+        int done = 0;
+        long extentStart = 0;
+        for (int i = 0; i < file.extentSectors.length && done < total; i++) {
+            long extentEnd = extentStart + file.extentBytes[i];
+            long pos = position + done;
+            if (pos < extentEnd) {
+                long inExtent = pos - extentStart;
+                int n = (int) Math.min(total - done, extentEnd - pos);
+                long at = file.extentSectors[i] * SECTOR_SIZE + inExtent;
+                if (n <= SECTOR_SIZE && (at % SECTOR_SIZE) + n <= SECTOR_SIZE) {
+                    byte[] s = sector(at / SECTOR_SIZE);
+                    if (s == null) {
+                        break;
+                    }
+                    System.arraycopy(s, (int) (at % SECTOR_SIZE), dest, offset + done, n);
+                    done += n;
+                } else {
+                    // Bulk reads bypass the cache so they do not evict directory sectors.
+                    int r = readFully(at, dest, offset + done, n);
+                    done += r;
+                    if (r < n) {
+                        break;
+                    }
+                }
+            }
+            extentStart = extentEnd;
+        }
+        return done > 0 ? done : -1;
+    }
+
+    /**
+     * Reads a whole file, or its first {@code maxBytes} bytes.
+     */
+    public byte[] readAll(Entry file, int maxBytes) throws IOException {
+        int length = (int) Math.min(file.size, Math.max(0, maxBytes));
+        byte[] out = new byte[length];
+        int done = 0;
+        while (done < length) {
+            int r = read(file, done, out, done, length - done);
+            if (r <= 0) {
+                throw new IOException("Unexpected end of " + file.name);
+            }
+            done += r;
+        }
+        return out;
+    }
+
+    @Nullable
+    byte[] sector(long lba) throws IOException {
+        byte[] cached = cache.get(lba);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] s = new byte[SECTOR_SIZE];
+        if (readFully(lba * SECTOR_SIZE, s, 0, SECTOR_SIZE) < SECTOR_SIZE) {
+            return null;
+        }
+        cache.put(lba, s);
+        return s;
+    }
+
+    private int readFully(long position, byte[] dest, int offset, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            int r = source.read(position + done, dest, offset + done, length - done);
+            if (r <= 0) {
+                break;
+            }
+            done += r;
+        }
+        return done;
+    }
+
+    /**
+     * Reads the contents of a directory entry, sector by sector through the cache.
+     */
+    byte[] readDirectory(Entry dir) throws IOException {
+        if (dir.size > MAX_DIRECTORY_BYTES) {
+            throw new IOException("Directory " + dir.name + " is too large");
+        }
+        if (dir.embedded != null) {
+            return dir.embedded;
+        }
+        byte[] out = new byte[(int) dir.size];
+        int done = 0;
+        for (int i = 0; i < dir.extentSectors.length && done < out.length; i++) {
+            long extentLeft = dir.extentBytes[i];
+            for (long lba = dir.extentSectors[i]; extentLeft > 0 && done < out.length; lba++) {
+                byte[] s = sector(lba);
+                if (s == null) {
+                    throw new IOException("Unexpected end of directory " + dir.name);
+                }
+                int n = (int) Math.min(Math.min(SECTOR_SIZE, extentLeft), out.length - done);
+                System.arraycopy(s, 0, out, done, n);
+                done += n;
+                extentLeft -= n;
+            }
+        }
+        return out;
+    }
+
+    private static String[] splitPath(String path) {
+        String p = path;
+        int colon = p.indexOf(':');
+        if (colon >= 0) {
+            p = p.substring(colon + 1);
+        }
+        List<String> parts = new ArrayList<>();
+        for (String part : p.split("[/\\\\]")) {
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+        }
+        return parts.toArray(new String[0]);
+    }
+
+    /**
+     * Compares names ignoring case, the ISO 9660 version suffix and a trailing dot.
+     */
+    static boolean sameName(String a, String b) {
+        return normalize(a).equalsIgnoreCase(normalize(b));
+    }
+
+    private static String normalize(String name) {
+        int semi = name.indexOf(';');
+        String n = semi >= 0 ? name.substring(0, semi) : name;
+        return n.endsWith(".") ? n.substring(0, n.length() - 1) : n;
+    }
+
+    private static boolean isJoliet(byte[] svd) {
+        return svd[88] == 0x25 && svd[89] == 0x2F && (svd[90] == 0x40 || svd[90] == 0x43 || svd[90] == 0x45);
+    }
+
+    static int u16le(byte[] a, int i) {
+        return (a[i] & 0xFF) | ((a[i + 1] & 0xFF) << 8);
+    }
+
+    static long u32le(byte[] a, int i) {
+        return (a[i] & 0xFFL) | ((a[i + 1] & 0xFFL) << 8) | ((a[i + 2] & 0xFFL) << 16) | ((a[i + 3] & 0xFFL) << 24);
+    }
+
+    static long u64le(byte[] a, int i) {
+        return u32le(a, i) | (u32le(a, i + 4) << 32);
+    }
+
+    interface Volume {
+        Entry root();
+
+        @Nullable
+        Entry lookup(Entry directory, String name) throws IOException;
+    }
+
+    /**
+     * ISO 9660 primary volume or Joliet supplementary volume.
+     */
+    private static final class IsoVolume implements Volume {
+        final IsoFileSystem fs;
+        final boolean joliet;
+        final Entry root;
+
+        IsoVolume(IsoFileSystem fs, byte[] descriptor, boolean joliet) {
+            this.fs = fs;
+            this.joliet = joliet;
+            long lba = u32le(descriptor, 156 + 2);
+            long size = u32le(descriptor, 156 + 10);
+            this.root = new Entry("", true, size, new long[]{lba}, new long[]{size}, null, this);
+        }
+
+        @Override
+        public Entry root() {
+            return root;
+        }
+
+        /**
+         * Children of {@code directory}, without the . and .. entries.
+         */
+        List<Entry> list(Entry directory) throws IOException {
+            byte[] dir = fs.readDirectory(directory);
+            List<Entry> out = new ArrayList<>();
+            String pendingName = null;
+            List<long[]> pendingExtents = new ArrayList<>();
+            int off = 0;
+            while (off < dir.length) {
+                int len = dir[off] & 0xFF;
+                if (len == 0) {
+                    // Records never cross a sector boundary; the rest of this sector is padding.
+                    off = (off / SECTOR_SIZE + 1) * SECTOR_SIZE;
+                    continue;
+                }
+                if (len < 34 || off + len > dir.length) {
+                    break;
+                }
+                int nameLen = dir[off + 32] & 0xFF;
+                if (33 + nameLen > len) {
+                    break;
+                }
+                int flags = dir[off + 25] & 0xFF;
+                long lba = u32le(dir, off + 2);
+                long size = u32le(dir, off + 10);
+                boolean special = nameLen == 1 && (dir[off + 33] == 0 || dir[off + 33] == 1);
+                if (!special) {
+                    String name = joliet
+                            ? new String(dir, off + 33, nameLen & ~1, StandardCharsets.UTF_16BE)
+                            : new String(dir, off + 33, nameLen, StandardCharsets.ISO_8859_1);
+                    if (pendingName != null && !pendingName.equals(name)) {
+                        out.add(fileEntry(pendingName, pendingExtents));
+                        pendingExtents = new ArrayList<>();
+                    }
+                    pendingName = name;
+                    pendingExtents.add(new long[]{lba, size});
+                    if ((flags & 0x02) != 0) {
+                        out.add(new Entry(name, true, size, new long[]{lba}, new long[]{size}, null, this));
+                        pendingName = null;
+                        pendingExtents = new ArrayList<>();
+                    } else if ((flags & 0x80) == 0) {
+                        // Final (or only) extent of the file.
+                        out.add(fileEntry(name, pendingExtents));
+                        pendingName = null;
+                        pendingExtents = new ArrayList<>();
+                    }
+                }
+                off += len;
+            }
+            if (pendingName != null) {
+                out.add(fileEntry(pendingName, pendingExtents));
+            }
+            return out;
+        }
+
+        private Entry fileEntry(String name, List<long[]> extents) {
+            long[] sectors = new long[extents.size()];
+            long[] bytes = new long[extents.size()];
+            long total = 0;
+            for (int i = 0; i < sectors.length; i++) {
+                sectors[i] = extents.get(i)[0];
+                bytes[i] = extents.get(i)[1];
+                total += bytes[i];
+            }
+            return new Entry(name, false, total, sectors, bytes, null, this);
+        }
+
+        @Nullable
+        @Override
+        public Entry lookup(Entry directory, String name) throws IOException {
+            for (Entry e : list(directory)) {
+                if (sameName(e.name, name)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * UDF 1.02 as found on DVD bridge discs: one physical partition, 2048-byte blocks.
+     */
+    private static final class UdfVolume implements Volume {
+        final IsoFileSystem fs;
+        final long partitionStart;
+        Entry root;
+
+        private UdfVolume(IsoFileSystem fs, long partitionStart) {
+            this.fs = fs;
+            this.partitionStart = partitionStart;
+        }
+
+        @Nullable
+        static UdfVolume open(IsoFileSystem fs) throws IOException {
+            byte[] anchor = fs.sector(UDF_ANCHOR_SECTOR);
+            if (anchor == null || tagId(anchor) != TAG_ANCHOR) {
+                return null;
+            }
+            long vdsLength = u32le(anchor, 16);
+            long vdsStart = u32le(anchor, 20);
+            long partitionStart = -1;
+            long fsdBlock = -1;
+            for (long i = 0; i < Math.min(vdsLength / SECTOR_SIZE, MAX_DESCRIPTORS); i++) {
+                byte[] d = fs.sector(vdsStart + i);
+                if (d == null) {
+                    break;
+                }
+                int tag = tagId(d);
+                if (tag == TAG_PARTITION && partitionStart < 0) {
+                    partitionStart = u32le(d, 188);
+                } else if (tag == TAG_LOGICAL_VOLUME && fsdBlock < 0) {
+                    if (u32le(d, 212) != SECTOR_SIZE) {
+                        throw new IOException("Unsupported UDF block size");
+                    }
+                    fsdBlock = u32le(d, 248 + 4);
+                } else if (tag == TAG_TERMINATOR) {
+                    break;
+                }
+            }
+            if (partitionStart < 0 || fsdBlock < 0) {
+                throw new IOException("Incomplete UDF volume descriptors");
+            }
+            byte[] fsd = fs.sector(partitionStart + fsdBlock);
+            if (fsd == null || tagId(fsd) != TAG_FILE_SET) {
+                throw new IOException("Missing UDF file set descriptor");
+            }
+            UdfVolume volume = new UdfVolume(fs, partitionStart);
+            volume.root = volume.loadFileEntry("", u32le(fsd, 400 + 4));
+            if (volume.root == null || !volume.root.directory) {
+                throw new IOException("Unreadable UDF root directory");
+            }
+            return volume;
+        }
+
+        @Override
+        public Entry root() {
+            return root;
+        }
+
+        @Nullable
+        @Override
+        public Entry lookup(Entry directory, String name) throws IOException {
+            // Only the matching child's file entry is read, not one per directory entry.
+            Identifier match = identifier(directory, name);
+            return match != null ? loadFileEntry(match.name, match.block) : null;
+        }
+
+        /**
+         * Walks the file identifier descriptors of a directory for the first child named
+         * {@code wanted}.
+         */
+        @Nullable
+        private Identifier identifier(Entry directory, String wanted) throws IOException {
+            byte[] dir = fs.readDirectory(directory);
+            int off = 0;
+            while (off + 38 <= dir.length) {
+                if (u16le(dir, off) != TAG_FILE_IDENTIFIER) {
+                    break;
+                }
+                int characteristics = dir[off + 18] & 0xFF;
+                int idLength = dir[off + 19] & 0xFF;
+                long icbBlock = u32le(dir, off + 24);
+                int implUseLength = u16le(dir, off + 36);
+                int nameStart = off + 38 + implUseLength;
+                if (nameStart + idLength > dir.length) {
+                    break;
+                }
+                boolean skip = (characteristics & 0x0C) != 0; // deleted or parent
+                if (!skip) {
+                    String name = decodeDString(dir, nameStart, idLength);
+                    if (sameName(name, wanted)) {
+                        return new Identifier(name, icbBlock);
+                    }
+                }
+                off += (38 + implUseLength + idLength + 3) & ~3;
+            }
+            return null;
+        }
+
+        @Nullable
+        private Entry loadFileEntry(String name, long block) throws IOException {
+            byte[] fe = fs.sector(partitionStart + block);
+            if (fe == null) {
+                return null;
+            }
+            int tag = tagId(fe);
+            int eaLength;
+            int adLength;
+            int adStart;
+            if (tag == TAG_FILE_ENTRY) {
+                eaLength = (int) u32le(fe, 168);
+                adLength = (int) u32le(fe, 172);
+                adStart = 176 + eaLength;
+            } else if (tag == TAG_EXTENDED_FILE_ENTRY) {
+                eaLength = (int) u32le(fe, 208);
+                adLength = (int) u32le(fe, 212);
+                adStart = 216 + eaLength;
+            } else {
+                return null;
+            }
+            if (adStart < 0 || adLength < 0 || adStart + adLength > SECTOR_SIZE) {
+                return null;
+            }
+            boolean directory = (fe[16 + 11] & 0xFF) == 4;
+            long size = u64le(fe, 56);
+            int adType = u16le(fe, 16 + 18) & 7;
+            if (adType == 3) {
+                byte[] data = new byte[(int) Math.min(size, adLength)];
+                System.arraycopy(fe, adStart, data, 0, data.length);
+                return new Entry(name, directory, data.length, new long[0], new long[0], data, this);
+            }
+            int adSize = adType == 0 ? 8 : adType == 1 ? 16 : -1;
+            if (adSize < 0) {
+                return null;
+            }
+            List<long[]> extents = new ArrayList<>();
+            for (int off = adStart; off + adSize <= adStart + adLength; off += adSize) {
+                long raw = u32le(fe, off);
+                long length = raw & 0x3FFFFFFFL;
+                if (length == 0) {
+                    break;
+                }
+                if ((raw >>> 30) != 0) {
+                    continue; // not recorded
+                }
+                extents.add(new long[]{partitionStart + u32le(fe, off + 4), length});
+            }
+            long[] sectors = new long[extents.size()];
+            long[] bytes = new long[extents.size()];
+            for (int i = 0; i < sectors.length; i++) {
+                sectors[i] = extents.get(i)[0];
+                bytes[i] = extents.get(i)[1];
+            }
+            return new Entry(name, directory, size, sectors, bytes, null, this);
+        }
+
+        private static final class Identifier {
+            final String name;
+            final long block;
+
+            Identifier(String name, long block) {
+                this.name = name;
+                this.block = block;
+            }
+        }
+
+        private static int tagId(byte[] d) {
+            return u16le(d, 0);
+        }
+
+        /**
+         * OSTA compressed unicode: a compression ID of 8 or 16 followed by the characters.
+         */
+        private static String decodeDString(byte[] a, int offset, int length) {
+            if (length == 0) {
+                return "";
+            }
+            int compression = a[offset] & 0xFF;
+            if (compression == 16) {
+                return new String(a, offset + 1, (length - 1) & ~1, StandardCharsets.UTF_16BE);
+            }
+            return new String(a, offset + 1, length - 1, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "IsoFileSystem[volumes=%d, udf=%b]", volumes.size(), udfVolume != null);
+    }
+}
@@ -0,0 +1,193 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import java.io.IOException;
+
+/**
+ * Pure Java encoder and decoder for raw LZ4 blocks (no frame header), the payload format of
+ * ZISO images.
+ */
+final class Lz4BlockCodec implements BlockCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    static final int HASH_LOG = 12;
+
+    @Override
+    public int decode(byte[] src, int srcLength, byte[] dest, int destLength) throws IOException {
+        return decompress(src, 0, srcLength, dest, 0, destLength);
+    }
+
+    @Override
+    public void close() {}
+
+    /**
+     * Decodes a raw LZ4 block.
+     *
+     * @return the number of bytes written to {@code dest}.
+     * @throws IOException if the block is malformed or would overflow {@code dest}.
+     */
+    static int decompress(byte[] src, int srcOffset, int srcLength,
+                          byte[] dest, int destOffset, int destLength) throws IOException {
+        int sp = srcOffset;
+        int srcEnd = srcOffset + srcLength;
+        int dp = destOffset;
+        int destEnd = destOffset + destLength;
+        // Stop once the output is full: aligned images pad blocks, so trailing input is ignored.
+        while (sp < srcEnd && dp < destEnd) {
+            int token = src[sp++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Truncated LZ4 literal length");
+                    }
+                    b = src[sp++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            if (literalLength > 0) {
+                if (literalLength > srcEnd - sp || literalLength > destEnd - dp) {
+                    throw new IOException("LZ4 literal run out of bounds");
+                }
+                System.arraycopy(src, sp, dest, dp, literalLength);
+                sp += literalLength;
+                dp += literalLength;
+            }
+            if (sp >= srcEnd || dp >= destEnd) {
+                // The last sequence carries literals only.
+                break;
+            }
+
+            if (srcEnd - sp < 2) {
+                throw new IOException("Truncated LZ4 match offset");
+            }
+            int matchOffset = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+            sp += 2;
+            if (matchOffset == 0 || matchOffset > dp - destOffset) {
+                throw new IOException("Invalid LZ4 match offset");
+            }
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Truncated LZ4 match length");
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > destEnd - dp) {
+                throw new IOException("LZ4 match out of bounds");
+            }
+            int from = dp - matchOffset;
+            if (matchOffset >= matchLength) {
+                System.arraycopy(dest, from, dest, dp, matchLength);
+                dp += matchLength;
+            } else if (matchOffset == 1) {
+                java.util.Arrays.fill(dest, dp, dp + matchLength, dest[from]);
+                dp += matchLength;
+            } else {
+                // Overlapping copy: replicate the period in doubling chunks.
+                int remaining = matchLength;
+                int chunk = matchOffset;
+                while (remaining > 0) {
+                    int n = Math.min(chunk, remaining);
+                    System.arraycopy(dest, from, dest, dp, n);
+                    dp += n;
+                    remaining -= n;
+                    chunk += n;
+                }
+            }
+        }
+        return dp - destOffset;
+    }
+
+    /**
+     * Worst-case size of {@link #compress} output for {@code length} input bytes.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Greedy single-pass LZ4 block compressor.
+     *
+     * @param hashTable scratch of {@code 1 << HASH_LOG} entries, reused between calls.
+     * @return the number of bytes written to {@code dest}, which must hold
+     *         {@link #maxCompressedLength(int)} bytes.
+     */
+    static int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int[] hashTable) {
+        java.util.Arrays.fill(hashTable, -1);
+        int srcEnd = srcOffset + length;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int searchLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOffset;
+        int sp = srcOffset;
+        int dp = destOffset;
+        while (sp < searchLimit) {
+            int sequence = readIntLE(src, sp);
+            int h = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int candidate = hashTable[h];
+            hashTable[h] = sp;
+            if (candidate < 0 || sp - candidate > MAX_OFFSET || readIntLE(src, candidate) != sequence) {
+                sp++;
+                continue;
+            }
+            // Extend backwards over literals that also match.
+            while (sp > anchor && candidate > srcOffset && src[sp - 1] == src[candidate - 1]) {
+                sp--;
+                candidate--;
+            }
+            int matchEnd = sp + MIN_MATCH;
+            int ref = candidate + MIN_MATCH;
+            while (matchEnd < matchLimit && src[matchEnd] == src[ref]) {
+                matchEnd++;
+                ref++;
+            }
+            dp = writeSequence(src, anchor, sp - anchor, sp - candidate, matchEnd - sp, dest, dp);
+            sp = matchEnd;
+            anchor = sp;
+        }
+        return writeSequence(src, anchor, srcEnd - anchor, 0, 0, dest, dp) - destOffset;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength,
+                                     int matchOffset, int matchLength, byte[] dest, int dp) {
+        int tokenPos = dp++;
+        int token = Math.min(literalLength, 15) << 4;
+        if (literalLength >= 15) {
+            dp = writeLength(dest, dp, literalLength - 15);
+        }
+        System.arraycopy(src, literalStart, dest, dp, literalLength);
+        dp += literalLength;
+        if (matchLength > 0) {
+            dest[dp++] = (byte) matchOffset;
+            dest[dp++] = (byte) (matchOffset >>> 8);
+            int extra = matchLength - MIN_MATCH;
+            token |= Math.min(extra, 15);
+            if (extra >= 15) {
+                dp = writeLength(dest, dp, extra - 15);
+            }
+        }
+        dest[tokenPos] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLength(byte[] dest, int dp, int value) {
+        while (value >= 255) {
+            dest[dp++] = (byte) 255;
+            value -= 255;
+        }
+        dest[dp++] = (byte) value;
+        return dp;
+    }
+
+    private static int readIntLE(byte[] a, int i) {
+        return (a[i] & 0xFF) | ((a[i + 1] & 0xFF) << 8) | ((a[i + 2] & 0xFF) << 16) | ((a[i + 3] & 0xFF) << 24);
+    }
+}
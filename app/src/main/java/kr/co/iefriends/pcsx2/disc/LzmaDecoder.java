@@ -0,0 +1,285 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoder for raw LZMA streams (no header, known output size), as stored in CHD hunks. The
+ * output buffer doubles as the dictionary, which works because a hunk is always decoded whole.
+ * Instances keep their probability tables and can be reused for hunks with the same properties.
+ */
+final class LzmaDecoder {
+    private static final int NUM_STATES = 12;
+    private static final int PROB_INIT = 1024;
+    private static final int NUM_POS_BITS_MAX = 4;
+    private static final int END_POS_MODEL_INDEX = 14;
+    private static final int NUM_FULL_DISTANCES = 1 << (END_POS_MODEL_INDEX >> 1);
+    private static final int NUM_ALIGN_BITS = 4;
+    private static final int MATCH_MIN_LEN = 2;
+
+    private final int lc;
+    private final int lp;
+    private final int pb;
+
+    private final short[] literalProbs;
+    private final short[] isMatch = new short[NUM_STATES << NUM_POS_BITS_MAX];
+    private final short[] isRep = new short[NUM_STATES];
+    private final short[] isRepG0 = new short[NUM_STATES];
+    private final short[] isRepG1 = new short[NUM_STATES];
+    private final short[] isRepG2 = new short[NUM_STATES];
+    private final short[] isRep0Long = new short[NUM_STATES << NUM_POS_BITS_MAX];
+    private final short[] posSlot = new short[4 << 6];
+    private final short[] posDecoders = new short[1 + NUM_FULL_DISTANCES - END_POS_MODEL_INDEX];
+    private final short[] align = new short[1 << NUM_ALIGN_BITS];
+    private final LenDecoder lenDecoder = new LenDecoder();
+    private final LenDecoder repLenDecoder = new LenDecoder();
+
+    // Range decoder state.
+    private byte[] in;
+    private int inPos;
+    private int inEnd;
+    private int range;
+    private int code;
+
+    LzmaDecoder(int lc, int lp, int pb) {
+        this.lc = lc;
+        this.lp = lp;
+        this.pb = pb;
+        this.literalProbs = new short[0x300 << (lc + lp)];
+    }
+
+    /**
+     * Decodes exactly {@code outLength} bytes.
+     */
+    void decode(byte[] src, int srcOffset, int srcLength, byte[] out, int outOffset, int outLength) throws IOException {
+        reset();
+        in = src;
+        inPos = srcOffset;
+        inEnd = srcOffset + srcLength;
+        if (nextByte() != 0) {
+            throw new IOException("Bad LZMA range coder header");
+        }
+        range = 0xFFFFFFFF;
+        code = 0;
+        for (int i = 0; i < 4; i++) {
+            code = (code << 8) | nextByte();
+        }
+
+        int pbMask = (1 << pb) - 1;
+        int lpMask = (1 << lp) - 1;
+        int state = 0;
+        int rep0 = 0;
+        int rep1 = 0;
+        int rep2 = 0;
+        int rep3 = 0;
+        int pos = 0;
+        while (pos < outLength) {
+            int posState = pos & pbMask;
+            if (decodeBit(isMatch, (state << NUM_POS_BITS_MAX) + posState) == 0) {
+                int prevByte = pos > 0 ? out[outOffset + pos - 1] & 0xFF : 0;
+                int litState = ((pos & lpMask) << lc) + (prevByte >>> (8 - lc));
+                int base = 0x300 * litState;
+                int symbol = 1;
+                if (state >= 7) {
+                    int matchByte = out[outOffset + pos - rep0 - 1] & 0xFF;
+                    do {
+                        int matchBit = (matchByte >>> 7) & 1;
+                        matchByte <<= 1;
+                        int bit = decodeBit(literalProbs, base + ((1 + matchBit) << 8) + symbol);
+                        symbol = (symbol << 1) | bit;
+                        if (matchBit != bit) {
+                            break;
+                        }
+                    } while (symbol < 0x100);
+                }
+                while (symbol < 0x100) {
+                    symbol = (symbol << 1) | decodeBit(literalProbs, base + symbol);
+                }
+                out[outOffset + pos++] = (byte) symbol;
+                state = state < 4 ? 0 : state < 10 ? state - 3 : state - 6;
+                continue;
+            }
+
+            int len;
+            if (decodeBit(isRep, state) != 0) {
+                if (pos == 0) {
+                    throw new IOException("LZMA rep match at start of stream");
+                }
+                if (decodeBit(isRepG0, state) == 0) {
+                    if (decodeBit(isRep0Long, (state << NUM_POS_BITS_MAX) + posState) == 0) {
+                        state = state < 7 ? 9 : 11;
+                        out[outOffset + pos] = out[outOffset + pos - rep0 - 1];
+                        pos++;
+                        continue;
+                    }
+                } else {
+                    int dist;
+                    if (decodeBit(isRepG1, state) == 0) {
+                        dist = rep1;
+                    } else {
+                        if (decodeBit(isRepG2, state) == 0) {
+                            dist = rep2;
+                        } else {
+                            dist = rep3;
+                            rep3 = rep2;
+                        }
+                        rep2 = rep1;
+                    }
+                    rep1 = rep0;
+                    rep0 = dist;
+                }
+                len = repLenDecoder.decode(posState);
+                state = state < 7 ? 8 : 11;
+            } else {
+                rep3 = rep2;
+                rep2 = rep1;
+                rep1 = rep0;
+                len = lenDecoder.decode(posState);
+                state = state < 7 ? 7 : 10;
+                rep0 = decodeDistance(len);
+                if (rep0 == -1) {
+                    break; // end marker
+                }
+                if (Integer.compareUnsigned(rep0, pos) >= 0) {
+                    throw new IOException("LZMA distance out of range");
+                }
+            }
+            len += MATCH_MIN_LEN;
+            int copy = Math.min(len, outLength - pos);
+            int from = outOffset + pos - rep0 - 1;
+            int to = outOffset + pos;
+            for (int i = 0; i < copy; i++) {
+                out[to + i] = out[from + i];
+            }
+            pos += copy;
+        }
+        if (pos < outLength) {
+            throw new IOException("LZMA stream ended early");
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(literalProbs, (short) PROB_INIT);
+        Arrays.fill(isMatch, (short) PROB_INIT);
+        Arrays.fill(isRep, (short) PROB_INIT);
+        Arrays.fill(isRepG0, (short) PROB_INIT);
+        Arrays.fill(isRepG1, (short) PROB_INIT);
+        Arrays.fill(isRepG2, (short) PROB_INIT);
+        Arrays.fill(isRep0Long, (short) PROB_INIT);
+        Arrays.fill(posSlot, (short) PROB_INIT);
+        Arrays.fill(posDecoders, (short) PROB_INIT);
+        Arrays.fill(align, (short) PROB_INIT);
+        lenDecoder.reset();
+        repLenDecoder.reset();
+    }
+
+    private int decodeDistance(int len) throws IOException {
+        int lenState = Math.min(len, 3);
+        int slot = bitTree(posSlot, lenState << 6, 6);
+        if (slot < 4) {
+            return slot;
+        }
+        int numDirectBits = (slot >>> 1) - 1;
+        int dist = (2 | (slot & 1)) << numDirectBits;
+        if (slot < END_POS_MODEL_INDEX) {
+            dist += bitTreeReverse(posDecoders, dist - slot, numDirectBits);
+        } else {
+            dist += directBits(numDirectBits - NUM_ALIGN_BITS) << NUM_ALIGN_BITS;
+            dist += bitTreeReverse(align, 0, NUM_ALIGN_BITS);
+        }
+        return dist;
+    }
+
+    private int nextByte() throws IOException {
+        if (inPos >= inEnd) {
+            // The reference decoder may look one byte past short streams; treat it as zero.
+            inPos++;
+            if (inPos > inEnd + 4) {
+                throw new IOException("LZMA input exhausted");
+            }
+            return 0;
+        }
+        return in[inPos++] & 0xFF;
+    }
+
+    private void normalize() throws IOException {
+        if (Integer.compareUnsigned(range, 1 << 24) < 0) {
+            range <<= 8;
+            code = (code << 8) | nextByte();
+        }
+    }
+
+    private int decodeBit(short[] probs, int index) throws IOException {
+        int prob = probs[index];
+        int bound = (range >>> 11) * prob;
+        int bit;
+        if (Integer.compareUnsigned(code, bound) < 0) {
+            range = bound;
+            probs[index] = (short) (prob + ((2048 - prob) >>> 5));
+            bit = 0;
+        } else {
+            range -= bound;
+            code -= bound;
+            probs[index] = (short) (prob - (prob >>> 5));
+            bit = 1;
+        }
+        normalize();
+        return bit;
+    }
+
+    private int directBits(int count) throws IOException {
+        int result = 0;
+        for (; count > 0; count--) {
+            range >>>= 1;
+            code -= range;
+            int t = -(code >>> 31);
+            code += range & t;
+            result = (result << 1) + (t + 1);
+            normalize();
+        }
+        return result;
+    }
+
+    private int bitTree(short[] probs, int base, int numBits) throws IOException {
+        int m = 1;
+        for (int i = 0; i < numBits; i++) {
+            m = (m << 1) + decodeBit(probs, base + m);
+        }
+        return m - (1 << numBits);
+    }
+
+    private int bitTreeReverse(short[] probs, int base, int numBits) throws IOException {
+        int m = 1;
+        int symbol = 0;
+        for (int i = 0; i < numBits; i++) {
+            int bit = decodeBit(probs, base + m);
+            m = (m << 1) + bit;
+            symbol |= bit << i;
+        }
+        return symbol;
+    }
+
+    private final class LenDecoder {
+        private final short[] choice = new short[2];
+        private final short[] low = new short[1 << (NUM_POS_BITS_MAX + 3)];
+        private final short[] mid = new short[1 << (NUM_POS_BITS_MAX + 3)];
+        private final short[] high = new short[1 << 8];
+
+        void reset() {
+            Arrays.fill(choice, (short) PROB_INIT);
+            Arrays.fill(low, (short) PROB_INIT);
+            Arrays.fill(mid, (short) PROB_INIT);
+            Arrays.fill(high, (short) PROB_INIT);
+        }
+
+        int decode(int posState) throws IOException {
+            if (decodeBit(choice, 0) == 0) {
+                return bitTree(low, posState << 3, 3);
+            }
+            if (decodeBit(choice, 1) == 0) {
+                return 8 + bitTree(mid, posState << 3, 3);
+            }
+            return 16 + bitTree(high, 0, 8);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 2048-byte-sector view of a raw CD image (BIN/IMG dumps with 2352 or 2336 bytes per sector),
+ * so the ISO 9660 structures can be read at their logical offsets. The sector layout is taken
+ * from the primary volume descriptor's sector: the sync pattern and mode byte for 2352-byte
+ * frames, the CD001 signature alone for 2336-byte Mode 2 sectors without sync and header.
+ */
+final class RawSectorDiscImageSource implements DiscImageSource {
+    private static final int SECTOR_SIZE = 2048;
+    private static final int RAW_FRAME = 2352;
+    private static final int MODE2_FRAME = 2336;
+    private static final int PVD_SECTOR = 16;
+    private static final byte[] SYNC = {
+            0x00, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00
+    };
+    private static final byte[] PVD_SIGNATURE = {0x01, 'C', 'D', '0', '0', '1'};
+
+    private final DiscImageSource raw;
+    private final int frameSize;
+    private final int dataOffset;
+    private final long size;
+    /** Copy buffer for {@link #read(long, ByteBuffer)} into direct buffers. */
+    private byte[] transfer;
+
+    private RawSectorDiscImageSource(DiscImageSource raw, int frameSize, int dataOffset) {
+        this.raw = raw;
+        this.frameSize = frameSize;
+        this.dataOffset = dataOffset;
+        long rawSize = raw.size();
+        this.size = rawSize >= 0 ? rawSize / frameSize * SECTOR_SIZE : -1;
+    }
+
+    /**
+     * @return a cooked view of {@code raw}, or null when it is not a raw CD image with an
+     * ISO 9660 volume (including when it already uses 2048-byte sectors).
+     */
+    @Nullable
+    static RawSectorDiscImageSource detect(DiscImageSource raw) throws IOException {
+        byte[] head = raw.readRange((long) PVD_SECTOR * RAW_FRAME, 24);
+        if (head != null && head.length == 24 && startsWith(head, 0, SYNC)) {
+            int offset;
+            switch (head[15]) {
+                case 1:
+                    offset = 16;
+                    break;
+                case 2:
+                    // Mode 2: the PVD is always in a Form 1 sector, after the 8-byte subheader.
+                    offset = 24;
+                    break;
+                default:
+                    return null;
+            }
+            if (hasPvd(raw, (long) PVD_SECTOR * RAW_FRAME + offset)) {
+                return new RawSectorDiscImageSource(raw, RAW_FRAME, offset);
+            }
+            return null;
+        }
+        if (hasPvd(raw, (long) PVD_SECTOR * MODE2_FRAME + 8)) {
+            return new RawSectorDiscImageSource(raw, MODE2_FRAME, 8);
+        }
+        return null;
+    }
+
+    private static boolean hasPvd(DiscImageSource raw, long position) throws IOException {
+        byte[] sig = raw.readRange(position, PVD_SIGNATURE.length);
+        return sig != null && sig.length == PVD_SIGNATURE.length && startsWith(sig, 0, PVD_SIGNATURE);
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] dest, int offset, int length) throws IOException {
+        if (position < 0 || (size >= 0 && position >= size)) {
+            return -1;
+        }
+        if (length <= 0) {
+            return 0;
+        }
+        int total = size >= 0 ? (int) Math.min(length, size - position) : length;
+        int done = 0;
+        while (done < total) {
+            long pos = position + done;
+            long sector = pos / SECTOR_SIZE;
+            int inSector = (int) (pos % SECTOR_SIZE);
+            int n = Math.min(total - done, SECTOR_SIZE - inSector);
+            int r = raw.read(sector * frameSize + dataOffset + inSector, dest, offset + done, n);
+            if (r <= 0) {
+                break;
+            }
+            done += r;
+        }
+        return done > 0 ? done : -1;
+    }
+
+    @Override
+    public int read(long position, ByteBuffer dest) throws IOException {
+        if (transfer == null && !dest.hasArray()) {
+            transfer = new byte[TRANSFER_SIZE];
+        }
+        return DiscImageSource.readThrough(this, position, dest, transfer);
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int r = RawSectorDiscImageSource.this.read(position, b, off, len);
+                if (r > 0) {
+                    position += r;
+                }
+                return r;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, size >= 0 ? Math.min(n, size - position) : n);
+                position += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        raw.close();
+    }
+}
@@ -0,0 +1,203 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sequential stream that decompresses upcoming blocks on a shared worker pool while the caller
+ * consumes the current one. Blocks land in a fixed ring of reusable buffers and are handed out
+ * strictly in order, so the output is byte-identical to decoding the blocks one by one.
+ * Closing the stream leaves the reader open.
+ */
+final class ReadAheadCsoInputStream extends InputStream {
+    private static final int SLOTS_PER_WORKER = 2;
+    private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ThreadPoolExecutor POOL;
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        POOL = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "CsoReadAhead-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        POOL.allowCoreThreadTimeOut(true);
+    }
+
+    private final CsoReader reader;
+    private final Slot[] ring;
+    private final byte[] single = new byte[1];
+    private int nextToSubmit = 0;
+    private int currentBlock = 0;
+    private Slot current;
+    private int blockPos = 0;
+    private long bytesRemaining;
+    private volatile boolean closed;
+
+    /**
+     * @param workers how many pool threads this stream should keep busy; twice as many blocks
+     *                are kept in flight so a slow block does not stall the others.
+     */
+    ReadAheadCsoInputStream(CsoReader reader, int workers) {
+        this.reader = reader;
+        this.bytesRemaining = reader.getUncompressedSize();
+        int slots = Math.max(2, Math.min(workers, POOL_SIZE) * SLOTS_PER_WORKER);
+        this.ring = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            ring[i] = new Slot(reader.getBlockSize(), reader.newDecoder());
+        }
+        while (nextToSubmit < reader.getBlockCount() && nextToSubmit < slots) {
+            submit(nextToSubmit++);
+        }
+    }
+
+    static int defaultWorkers() {
+        return Math.max(1, Math.min(4, POOL_SIZE - 1));
+    }
+
+    private void submit(int block) {
+        Slot slot = ring[block % ring.length];
+        slot.future = POOL.submit(() -> closed ? -1 : reader.decodeBlock(block, slot.buffer, slot.decoder));
+    }
+
+    @Override
+    public int read() throws IOException {
+        int r = read(single, 0, 1);
+        if (r <= 0) {
+            return -1;
+        }
+        return single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (bytesRemaining <= 0) {
+            return -1;
+        }
+        int total = 0;
+        while (len > 0 && bytesRemaining > 0) {
+            if (current == null || blockPos >= current.limit) {
+                if (!advance()) {
+                    break;
+                }
+            }
+            int copy = (int) Math.min(Math.min(len, current.limit - blockPos), bytesRemaining);
+            if (copy <= 0) {
+                break;
+            }
+            System.arraycopy(current.buffer, blockPos, b, off, copy);
+            off += copy;
+            len -= copy;
+            total += copy;
+            blockPos += copy;
+            bytesRemaining -= copy;
+        }
+        return total > 0 ? total : -1;
+    }
+
+    /**
+     * Recycles the slot that was just drained and waits for the next block in order.
+     */
+    private boolean advance() throws IOException {
+        if (current != null) {
+            current.future = null;
+            if (nextToSubmit < reader.getBlockCount()) {
+                submit(nextToSubmit++);
+            }
+            current = null;
+        }
+        if (currentBlock >= reader.getBlockCount()) {
+            return false;
+        }
+        Slot slot = ring[currentBlock % ring.length];
+        int produced;
+        try {
+            produced = slot.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for block " + currentBlock);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to decode block " + currentBlock, cause);
+        }
+        currentBlock++;
+        if (produced <= 0) {
+            return false;
+        }
+        slot.limit = produced;
+        current = slot;
+        blockPos = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Workers share the reader's channel and each slot's codec, so let in-flight decodes
+        // finish before tearing either down. Queued tasks see the flag and return at once.
+        boolean interrupted = false;
+        for (Slot slot : ring) {
+            Future<Integer> f = slot.future;
+            if (f == null) {
+                continue;
+            }
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (Slot slot : ring) {
+            slot.decoder.close();
+        }
+    }
+
+    private static final class Slot {
+        final byte[] buffer;
+        final BlockDecoder decoder;
+        Future<Integer> future;
+        int limit;
+
+        Slot(int blockSize, BlockDecoder decoder) {
+            this.buffer = new byte[blockSize];
+            this.decoder = decoder;
+        }
+    }
+}
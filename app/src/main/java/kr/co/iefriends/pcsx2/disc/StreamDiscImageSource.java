@@ -0,0 +1,93 @@
+package kr.co.iefriends.pcsx2.disc;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Fallback for providers that only hand out streams. Forward reads continue from the current
+ * position; seeking backwards reopens the document.
+ */
+final class StreamDiscImageSource implements DiscImageSource {
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private InputStream stream;
+    private long streamPosition;
+    /** Copy buffer for {@link #read(long, ByteBuffer)} into direct buffers. */
+    private byte[] transfer;
+
+    StreamDiscImageSource(ContentResolver resolver, Uri uri) {
+        this.resolver = resolver;
+        this.uri = uri;
+    }
+
+    @Override
+    public long size() {
+        return -1;
+    }
+
+    @Override
+    public int read(long position, byte[] dest, int offset, int length) throws IOException {
+        if (position < 0) {
+            return -1;
+        }
+        if (length <= 0) {
+            return 0;
+        }
+        if (stream == null || position < streamPosition) {
+            CsoReader.closeQuietly(stream);
+            stream = resolver.openInputStream(uri);
+            streamPosition = 0;
+            if (stream == null) {
+                return -1;
+            }
+        }
+        byte[] skipBuf = null;
+        while (streamPosition < position) {
+            long skipped = stream.skip(position - streamPosition);
+            if (skipped <= 0) {
+                if (skipBuf == null) {
+                    skipBuf = new byte[8192];
+                }
+                int r = stream.read(skipBuf, 0, (int) Math.min(skipBuf.length, position - streamPosition));
+                if (r <= 0) {
+                    return -1;
+                }
+                streamPosition += r;
+            } else {
+                streamPosition += skipped;
+            }
+        }
+        int r = stream.read(dest, offset, length);
+        if (r > 0) {
+            streamPosition += r;
+        }
+        return r;
+    }
+
+    @Override
+    public int read(long position, ByteBuffer dest) throws IOException {
+        if (transfer == null && !dest.hasArray()) {
+            transfer = new byte[TRANSFER_SIZE];
+        }
+        return DiscImageSource.readThrough(this, position, dest, transfer);
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        return in;
+    }
+
+    @Override
+    public void close() {
+        CsoReader.closeQuietly(stream);
+        stream = null;
+    }
+}
@@ -0,0 +1,272 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import kr.co.iefriends.pcsx2.NativeApp;
+
+/**
+ * Runs {@link NativeApp#convertIsoToChd(String)} directly against document descriptors.
+ *
+ * The native converter only takes a path and derives the output as {@code <name>.chd} next to
+ * it. A scratch directory in the cache therefore gets {@code <name>.iso} linked to the source
+ * descriptor and {@code <name>.chd} linked to the destination descriptor through
+ * {@code /proc/self/fd}, so the image is read from and written to the documents in place.
+ * When links are unavailable the old copy-in/copy-out path is used instead.
+ */
+public final class ChdConverter {
+    private static final String TAG = "ARMSX2_CHD";
+    private static final long POLL_INTERVAL_MS = 500L;
+    private static final int COPY_BUFFER = 1024 * 1024;
+
+    public interface ProgressListener {
+        /**
+         * @param bytesWritten CHD bytes written to the destination so far.
+         * @param inputSize    size of the source image, for a rough ratio.
+         */
+        void onProgress(long bytesWritten, long inputSize);
+    }
+
+    public static final class Result {
+        /** Native result code; 0 on success. */
+        public final int code;
+        public final boolean cancelled;
+        public final boolean zeroCopy;
+        public final long inputSize;
+        public final long outputSize;
+        /** Every byte this conversion wrote to storage, including any scratch copies. */
+        public final long bytesWritten;
+
+        Result(int code, boolean cancelled, boolean zeroCopy, long inputSize, long outputSize, long bytesWritten) {
+            this.code = code;
+            this.cancelled = cancelled;
+            this.zeroCopy = zeroCopy;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public boolean isSuccess() {
+            return code == 0 && !cancelled;
+        }
+
+        /**
+         * What the previous cache-based flow would have written for the same image: the ISO
+         * copy, the CHD in the cache, and the CHD copied out again.
+         */
+        public long legacyBytesWritten() {
+            return inputSize + 2 * outputSize;
+        }
+    }
+
+    private final Context context;
+    private volatile boolean cancelled;
+
+    public ChdConverter(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * The native converter cannot be interrupted, so cancelling lets the current run finish
+     * and then deletes the partial destination document.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Result convert(Uri source, Uri destination, @Nullable ProgressListener listener) throws IOException {
+        ContentResolver cr = context.getContentResolver();
+        Result result = null;
+        try (ParcelFileDescriptor in = cr.openFileDescriptor(source, "r");
+             ParcelFileDescriptor out = cr.openFileDescriptor(destination, "rw")) {
+            if (in == null || out == null) {
+                throw new IOException("Unable to open source or destination");
+            }
+            result = attempt(in, out, true, listener);
+            if (result.zeroCopy && result.code != 0 && !result.cancelled) {
+                DebugLog.w(TAG, "In-place conversion failed with " + result.code + ", retrying through the cache");
+                result = attempt(in, out, false, listener);
+            }
+            return result;
+        } finally {
+            if (result == null || !result.isSuccess()) {
+                try {
+                    DocumentsContract.deleteDocument(cr, destination);
+                } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    private Result attempt(ParcelFileDescriptor in, ParcelFileDescriptor out, boolean allowLinks,
+                           @Nullable ProgressListener listener) throws IOException {
+        File workDir = new File(context.getCacheDir(), "chd_" + SystemClock.elapsedRealtime());
+        if (!workDir.mkdirs() && !workDir.isDirectory()) {
+            throw new IOException("Unable to create " + workDir);
+        }
+        File inputLink = new File(workDir, "image.iso");
+        File outputLink = new File(workDir, "image.chd");
+        try {
+            long inputSize = in.getStatSize();
+            boolean zeroCopy = allowLinks
+                    && linkDescriptor(in, inputLink, inputSize)
+                    && linkDescriptor(out, outputLink, -1);
+            long scratchBytes = 0;
+            if (zeroCopy) {
+                Os.ftruncate(out.getFileDescriptor(), 0);
+            } else {
+                deleteQuietly(inputLink);
+                deleteQuietly(outputLink);
+                scratchBytes += copy(in, inputLink);
+            }
+
+            ProgressPoller poller = listener != null
+                    ? new ProgressPoller(zeroCopy ? out : null, outputLink, inputSize, listener) : null;
+            if (poller != null) poller.start();
+            int code;
+            try {
+                DebugLog.i(TAG, "Converting " + (zeroCopy ? "in place" : "through the cache") + ", " + inputSize + " bytes");
+                code = NativeApp.convertIsoToChd(inputLink.getAbsolutePath());
+            } finally {
+                if (poller != null) poller.finish();
+            }
+
+            long outputSize;
+            if (code == 0 && !cancelled && !isSymlink(outputLink) && outputLink.isFile()) {
+                // Either the copy path, or the converter replaced our link with a new file.
+                scratchBytes += outputLink.length();
+                outputSize = copy(outputLink, out);
+            } else {
+                outputSize = Os.fstat(out.getFileDescriptor()).st_size;
+            }
+            Result result = new Result(code, cancelled, zeroCopy, inputSize, outputSize, outputSize + scratchBytes);
+            DebugLog.i(TAG, "Conversion finished code=" + code + " zeroCopy=" + zeroCopy
+                    + " bytesWritten=" + result.bytesWritten + " (cache flow: " + result.legacyBytesWritten() + ")");
+            return result;
+        } catch (ErrnoException e) {
+            throw new IOException(e);
+        } finally {
+            deleteQuietly(inputLink);
+            deleteQuietly(outputLink);
+            deleteQuietly(workDir);
+        }
+    }
+
+    private static boolean linkDescriptor(ParcelFileDescriptor pfd, File link, long expectedSize) {
+        try {
+            Os.symlink("/proc/self/fd/" + pfd.getFd(), link.getAbsolutePath());
+            // Make sure the link really reaches the document before handing it to native code.
+            return link.exists() && (expectedSize < 0 || link.length() == expectedSize);
+        } catch (ErrnoException | RuntimeException e) {
+            DebugLog.w(TAG, "symlink failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isSymlink(File file) {
+        try {
+            return OsConstants.S_ISLNK(Os.lstat(file.getAbsolutePath()).st_mode);
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    private static long copy(ParcelFileDescriptor from, File to) throws IOException {
+        try (FileInputStream fis = new FileInputStream(from.getFileDescriptor());
+             FileOutputStream fos = new FileOutputStream(to)) {
+            return transfer(fis.getChannel(), fos.getChannel());
+        }
+    }
+
+    private static long copy(File from, ParcelFileDescriptor to) throws IOException {
+        try (FileInputStream fis = new FileInputStream(from);
+             FileOutputStream fos = new FileOutputStream(to.getFileDescriptor())) {
+            FileChannel out = fos.getChannel();
+            out.truncate(0);
+            out.position(0);
+            return transfer(fis.getChannel(), out);
+        }
+    }
+
+    private static long transfer(FileChannel in, FileChannel out) throws IOException {
+        long total = 0;
+        while (true) {
+            long n = in.transferTo(total, COPY_BUFFER, out);
+            if (n <= 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static void deleteQuietly(File file) {
+        try {
+            if (!file.delete() && file.exists()) {
+                DebugLog.w(TAG, "Could not delete " + file);
+            }
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * Samples the destination size while the blocking native call runs.
+     */
+    private static final class ProgressPoller extends Thread {
+        @Nullable private final ParcelFileDescriptor out;
+        private final File fallback;
+        private final long inputSize;
+        private final ProgressListener listener;
+        private volatile boolean done;
+
+        ProgressPoller(@Nullable ParcelFileDescriptor out, File fallback, long inputSize, ProgressListener listener) {
+            super("ChdProgress");
+            setDaemon(true);
+            this.out = out;
+            this.fallback = fallback;
+            this.inputSize = inputSize;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            while (!done) {
+                long size;
+                try {
+                    size = out != null ? Os.fstat(out.getFileDescriptor()).st_size : fallback.length();
+                } catch (ErrnoException e) {
+                    size = 0;
+                }
+                listener.onProgress(size, inputSize);
+                SystemClock.sleep(POLL_INTERVAL_MS);
+            }
+        }
+
+        void finish() {
+            done = true;
+            interrupt();
+            try {
+                join(POLL_INTERVAL_MS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
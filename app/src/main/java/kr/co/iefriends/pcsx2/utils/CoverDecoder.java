@@ -0,0 +1,175 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kr.co.iefriends.pcsx2.R;
+
+/**
+ * Decodes cover images off the main thread for views that are recycled while they load. Each
+ * view has at most one request; binding it again or calling {@link #cancel} drops the earlier
+ * one, whether it is still queued or already decoding, and its result is never delivered. The
+ * newest request is decoded first, so rows that just scrolled into view are not stuck behind
+ * rows a fling has already passed. Images are subsampled to about the size they are shown at.
+ */
+public final class CoverDecoder {
+    private static final String TAG = "CoverDecoder";
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    public interface Source {
+        /**
+         * Called on a decode thread.
+         *
+         * @return the cover sized for about {@code width} x {@code height}, or null when there
+         * is none.
+         */
+        @Nullable
+        Bitmap decode(int width, int height) throws IOException;
+    }
+
+    public interface Callback {
+        /** Called on the main thread while the view still shows the request that was made. */
+        void onDecoded(@Nullable Bitmap bitmap);
+    }
+
+    public interface StreamOpener {
+        @Nullable
+        InputStream open() throws IOException;
+    }
+
+    private static final class Request {
+        volatile boolean cancelled;
+        Future<?> future;
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    public CoverDecoder(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        // Workers take from the head, where new requests are pushed.
+        LinkedBlockingDeque<Runnable> lifo = new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(Runnable r) {
+                return offerFirst(r);
+            }
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, lifo, r -> {
+            Thread t = new Thread(r, "CoverDecode-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a decode for {@code target}, replacing any earlier request for it. Must be called
+     * on the main thread.
+     *
+     * @param width  size the cover is shown at, passed to {@code source}; 0 for full size
+     */
+    public void load(ImageView target, int width, int height, Source source, Callback callback) {
+        cancel(target);
+        final Request request = new Request();
+        final WeakReference<ImageView> viewRef = new WeakReference<>(target);
+        target.setTag(R.id.tag_cover_decode, request);
+        request.future = executor.submit(() -> {
+            if (request.cancelled) return;
+            Bitmap bitmap;
+            try {
+                bitmap = source.decode(width, height);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                DebugLog.d(TAG, "Decoding failed: " + e.getMessage());
+                bitmap = null;
+            }
+            final Bitmap result = bitmap;
+            MAIN.post(() -> {
+                ImageView view = viewRef.get();
+                if (view == null || request.cancelled || view.getTag(R.id.tag_cover_decode) != request) return;
+                view.setTag(R.id.tag_cover_decode, null);
+                callback.onDecoded(result);
+            });
+        });
+    }
+
+    /**
+     * Drops the view's pending request, if any. Must be called on the main thread.
+     */
+    public void cancel(ImageView target) {
+        Object tag = target.getTag(R.id.tag_cover_decode);
+        if (tag instanceof Request) {
+            Request request = (Request) tag;
+            request.cancelled = true;
+            if (request.future != null) {
+                request.future.cancel(false);
+                executor.remove((Runnable) request.future);
+            }
+        }
+        target.setTag(R.id.tag_cover_decode, null);
+    }
+
+    @Nullable
+    public static Bitmap decodeFile(File file, int width, int height) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, width, height);
+        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+    }
+
+    /**
+     * Like {@link #decodeFile}, for images behind a content URI; the stream is opened twice,
+     * once for the bounds and once to decode.
+     */
+    @Nullable
+    public static Bitmap decodeStream(StreamOpener opener, int width, int height) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = opener.open()) {
+            if (in == null) return null;
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, width, height);
+        try (InputStream in = opener.open()) {
+            return in != null ? BitmapFactory.decodeStream(in, null, options) : null;
+        }
+    }
+
+    /**
+     * Largest power of two that keeps the decoded image at least {@code width} x {@code height};
+     * 1 when either is unknown.
+     */
+    static int sampleSize(int imageWidth, int imageHeight, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return 1;
+        }
+        int sample = 1;
+        while (imageWidth / (sample * 2) >= width && imageHeight / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        return sample;
+    }
+}
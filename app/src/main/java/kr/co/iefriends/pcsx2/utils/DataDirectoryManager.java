@@ -196,6 +196,22 @@ public final class DataDirectoryManager {
         return null;
     }
 
+    /**
+     * Directory a document tree maps to when this process can read it with java.io, else null.
+     */
+    @Nullable
+    public static File resolveReadableTreeDirectory(Context context, Uri treeUri) {
+        if (!hasAllFilesAccess()) {
+            return null;
+        }
+        String path = resolveTreeUriToPath(context, treeUri);
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        File dir = new File(path);
+        return dir.isDirectory() && dir.canRead() && dir.list() != null ? dir : null;
+    }
+
     private static SharedPreferences getPrefs(Context context) {
         return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
     }
@@ -326,7 +342,7 @@ public final class DataDirectoryManager {
             }
             if (!exists) {
                 os = new FileOutputStream(outFile);
-                byte[] buffer = new byte[1024];
+                byte[] buffer = new byte[64 * 1024];
                 int read;
                 while ((read = is.read(buffer)) != -1) {
                     os.write(buffer, 0, read);
@@ -0,0 +1,407 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lists a SAF document tree with one child query per directory, running the queries for
+ * different directories concurrently on a bounded pool.
+ *
+ * Every accepted document remembers the position of each of its ancestors within their parent
+ * listing. Results are sorted by that path before they are returned, so the order is the one a
+ * sequential depth-first walk would produce, whatever the thread count or timing.
+ *
+ * When the tree maps to a readable directory (see {@link #setDirectRoot}) it is walked with
+ * java.nio instead, which avoids a provider round trip per directory. Document IDs are then
+ * derived the way ExternalStorageProvider builds them, so they match a provider walk.
+ */
+public final class DocumentTreeWalker {
+    private static final String TAG = "DocumentTreeWalker";
+    private static final long CANCEL_POLL_MS = 100L;
+    private static final String[] PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
+    public interface Filter {
+        boolean accept(@Nullable String displayName, @Nullable String mimeType);
+    }
+
+    public interface Listener {
+        /**
+         * Accepted documents of one directory, in listing order, as soon as it has been listed.
+         * Called on a worker thread; directories arrive in no particular order.
+         */
+        void onDocuments(List<Document> documents);
+    }
+
+    public static final class Document {
+        public final String documentId;
+        /** The directory this document was listed in. */
+        public final String parentDocumentId;
+        @Nullable public final String displayName;
+        @Nullable public final String mimeType;
+        /** Size in bytes, or -1 when the provider does not report it. */
+        public final long size;
+        /** Last modified time in milliseconds, or -1 when the provider does not report it. */
+        public final long lastModified;
+        public final int depth;
+        /** The file itself when the tree was walked directly, otherwise null. */
+        @Nullable public final File file;
+        private final int[] order;
+        @Nullable private final Path relativePath;
+
+        Document(String documentId, String parentDocumentId, @Nullable String displayName, @Nullable String mimeType,
+                 long size, long lastModified, int depth, int[] order) {
+            this.documentId = documentId;
+            this.parentDocumentId = parentDocumentId;
+            this.displayName = displayName;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.depth = depth;
+            this.file = null;
+            this.order = order;
+            this.relativePath = null;
+        }
+
+        Document(String documentId, String parentDocumentId, Path relativePath, File file, BasicFileAttributes attrs) {
+            this.documentId = documentId;
+            this.parentDocumentId = parentDocumentId;
+            this.displayName = file.getName();
+            this.mimeType = null;
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.depth = relativePath.getNameCount() - 1;
+            this.file = file;
+            this.order = null;
+            this.relativePath = relativePath;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final Uri treeUri;
+    private int maxDepth = 3;
+    private int threads = defaultThreads();
+    @Nullable private AtomicBoolean cancelSignal;
+    @Nullable private Listener listener;
+    @Nullable private File directRoot;
+
+    public DocumentTreeWalker(ContentResolver resolver, Uri treeUri) {
+        this.resolver = resolver;
+        this.treeUri = treeUri;
+    }
+
+    /**
+     * Providers serve child queries over binder and spend most of their time in I/O, so a few
+     * more threads than cores still helps; more than four mostly queues up in the provider.
+     */
+    public static int defaultThreads() {
+        return Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Deepest directory level to list; the tree root is level 0.
+     */
+    public DocumentTreeWalker setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public DocumentTreeWalker setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * When the flag becomes true, pending directories are dropped and {@link #walk} returns
+     * what it found so far.
+     */
+    public DocumentTreeWalker setCancelSignal(@Nullable AtomicBoolean cancelSignal) {
+        this.cancelSignal = cancelSignal;
+        return this;
+    }
+
+    public DocumentTreeWalker setListener(@Nullable Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Directory the tree resolves to on a path this process can read, or null to always use
+     * provider queries. If walking it fails the provider is used instead.
+     */
+    public DocumentTreeWalker setDirectRoot(@Nullable File directRoot) {
+        this.directRoot = directRoot;
+        return this;
+    }
+
+    public List<Document> walk(Filter filter) {
+        final String rootId;
+        try {
+            rootId = DocumentsContract.getTreeDocumentId(treeUri);
+        } catch (RuntimeException e) {
+            DebugLog.w(TAG, "Not a document tree: " + treeUri);
+            return new ArrayList<>();
+        }
+        File root = directRoot;
+        if (root != null) {
+            try {
+                return walkDirect(root, rootId, filter);
+            } catch (IOException | RuntimeException e) {
+                DebugLog.w(TAG, "Direct walk of " + root + " failed, using the provider: " + e.getMessage());
+            }
+        }
+        final AtomicInteger workerId = new AtomicInteger();
+        Walk walk = new Walk(filter, Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "DocWalk-" + workerId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }));
+        try {
+            walk.submit(new Listing(walk, rootId, 0, new int[0]));
+            while (!walk.done.await(CANCEL_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (isCancelled()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            walk.pool.shutdownNow();
+        }
+        List<Document> result = new ArrayList<>(walk.found);
+        Collections.sort(result, (a, b) -> compareOrder(a.order, b.order));
+        return result;
+    }
+
+    /**
+     * Single-threaded java.nio walk; listing a directory is a few syscalls, so there is nothing
+     * to gain from a pool. Entries are sorted by path, name by name.
+     */
+    private List<Document> walkDirect(File rootDir, String rootId, Filter filter) throws IOException {
+        final Path root = rootDir.toPath();
+        final List<Document> found = new ArrayList<>();
+        final ArrayDeque<List<Document>> perDirectory = new ArrayDeque<>();
+        final String prefix = rootId.endsWith(":") || rootId.endsWith("/") ? rootId : rootId + "/";
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), maxDepth + 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (isCancelled()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                perDirectory.push(new ArrayList<>());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isCancelled()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = file.getFileName().toString();
+                if (filter.accept(name, null)) {
+                    Path relative = root.relativize(file);
+                    Path parent = relative.getParent();
+                    Document doc = new Document(prefix + relative.toString().replace(File.separatorChar, '/'),
+                            parent != null ? prefix + parent.toString().replace(File.separatorChar, '/') : rootId,
+                            relative, file.toFile(), attrs);
+                    found.add(doc);
+                    List<Document> current = perDirectory.peek();
+                    if (current != null) {
+                        current.add(doc);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                DebugLog.w(TAG, "Skipping " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, @Nullable IOException e) {
+                List<Document> docs = perDirectory.pop();
+                Listener sink = listener;
+                if (sink != null && !docs.isEmpty()) {
+                    Collections.sort(docs, DocumentTreeWalker::compareRelative);
+                    sink.onDocuments(docs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(found, DocumentTreeWalker::compareRelative);
+        return found;
+    }
+
+    private boolean isCancelled() {
+        AtomicBoolean signal = cancelSignal;
+        return signal != null && signal.get();
+    }
+
+    private static int compareOrder(int[] a, int[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private static int compareRelative(Document a, Document b) {
+        Path pa = a.relativePath;
+        Path pb = b.relativePath;
+        int n = Math.min(pa.getNameCount(), pb.getNameCount());
+        for (int i = 0; i < n; i++) {
+            int c = pa.getName(i).toString().compareTo(pb.getName(i).toString());
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(pa.getNameCount(), pb.getNameCount());
+    }
+
+    private static long getLong(Cursor c, int column) {
+        try {
+            return c.isNull(column) ? -1 : c.getLong(column);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * State shared by the listings of one {@link #walk} call.
+     */
+    private static final class Walk {
+        final Filter filter;
+        final ExecutorService pool;
+        final ConcurrentLinkedQueue<Document> found = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Walk(Filter filter, ExecutorService pool) {
+            this.filter = filter;
+            this.pool = pool;
+        }
+
+        void submit(Runnable listing) {
+            pending.incrementAndGet();
+            try {
+                pool.execute(listing);
+            } catch (RejectedExecutionException e) {
+                finish();
+            }
+        }
+
+        void finish() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Lists one directory, queueing its subdirectories as separate tasks.
+     */
+    private final class Listing implements Runnable {
+        final Walk walk;
+        final String documentId;
+        final int depth;
+        final int[] order;
+
+        Listing(Walk walk, String documentId, int depth, int[] order) {
+            this.walk = walk;
+            this.documentId = documentId;
+            this.depth = depth;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            try {
+                list();
+            } catch (Exception e) {
+                DebugLog.w(TAG, "Listing " + documentId + " failed: " + e.getMessage());
+            } finally {
+                walk.finish();
+            }
+        }
+
+        private void list() {
+            if (isCancelled()) {
+                return;
+            }
+            Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, documentId);
+            try (Cursor c = resolver.query(children, PROJECTION, null, null, null)) {
+                if (c == null) {
+                    return;
+                }
+                Listener sink = listener;
+                List<Document> accepted = sink != null ? new ArrayList<>() : null;
+                int index = 0;
+                while (c.moveToNext()) {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    int[] childOrder = new int[order.length + 1];
+                    System.arraycopy(order, 0, childOrder, 0, order.length);
+                    childOrder[order.length] = index++;
+                    String childId = c.getString(0);
+                    String name = c.getString(1);
+                    String mime = c.getString(2);
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mime)) {
+                        if (depth + 1 <= maxDepth) {
+                            walk.submit(new Listing(walk, childId, depth + 1, childOrder));
+                        }
+                        continue;
+                    }
+                    if (walk.filter.accept(name, mime)) {
+                        Document doc = new Document(childId, documentId, name, mime, getLong(c, 3), getLong(c, 4), depth, childOrder);
+                        walk.found.add(doc);
+                        if (accepted != null) {
+                            accepted.add(doc);
+                        }
+                    }
+                }
+                if (sink != null && !accepted.isEmpty()) {
+                    sink.onDocuments(accepted);
+                }
+            }
+        }
+    }
+}
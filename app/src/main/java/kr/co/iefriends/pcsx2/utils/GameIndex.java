@@ -0,0 +1,348 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Serial-keyed titles and regions from PCSX2's GameIndex.yaml, compiled into a file that is
+ * memory mapped and binary searched like {@link RedumpIndex}, so a serial read from SYSTEM.CNF
+ * or a filename names the game without hashing the image.
+ *
+ * Layout, big-endian: a 32-byte header (magic, version, record count, string pool offset,
+ * source length, source time), then records sorted by serial, each the serial as 16 bytes of
+ * zero-padded ASCII and the pool offsets of the name, the English name (-1 when the list has
+ * none) and the region, then the string pool of length-prefixed UTF-8 strings. Instances are
+ * safe to use from several threads.
+ */
+public final class GameIndex {
+    private static final String TAG = "GameIndex";
+    private static final int MAGIC = 0x41524749; // "ARGI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int KEY_BYTES = 16;
+    private static final int RECORD_BYTES = KEY_BYTES + 12;
+    private static final int IO_BUFFER = 64 * 1024;
+    private static final Object COMPILE_LOCK = new Object();
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    public static final class Match {
+        /** Title as listed, in the disc's own language. */
+        public final String name;
+        /** Romanised or English title, when the list has one. */
+        @Nullable public final String nameEn;
+        /** e.g. NTSC-U, NTSC-J or PAL-M5; empty when the list has none. */
+        public final String region;
+
+        Match(String name, @Nullable String nameEn, String region) {
+            this.name = name;
+            this.nameEn = nameEn;
+            this.region = region;
+        }
+
+        /** The English title when there is one, for consistency with Redump names and covers. */
+        public String displayName() {
+            return nameEn != null ? nameEn : name;
+        }
+    }
+
+    /** Only read with absolute gets, or through duplicates, so it can be shared by threads. */
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int poolOffset;
+
+    private GameIndex(ByteBuffer buffer, int count, int poolOffset) {
+        this.buffer = buffer;
+        this.count = count;
+        this.poolOffset = poolOffset;
+    }
+
+    /**
+     * Maps {@code indexFile}, compiling it from {@code source} first when it is missing, was
+     * written by another version or for a source with a different length or time.
+     *
+     * @param sourceLength length of the YAML, or -1 when the source cannot tell
+     * @param sourceTime modification time of the YAML, or of the app for the bundled copy
+     * @return the index, or null when it can neither be read nor compiled.
+     */
+    @Nullable
+    public static GameIndex load(File indexFile, long sourceLength, long sourceTime, Source source) {
+        synchronized (COMPILE_LOCK) {
+            GameIndex index = map(indexFile, sourceLength, sourceTime);
+            if (index != null) {
+                return index;
+            }
+            long started = System.nanoTime();
+            try (InputStream in = source.open()) {
+                compile(in, indexFile, sourceLength, sourceTime);
+            } catch (IOException | RuntimeException e) {
+                DebugLog.e(TAG, "Compiling the game list failed: " + e.getMessage());
+                return null;
+            }
+            index = map(indexFile, sourceLength, sourceTime);
+            if (index != null) {
+                DebugLog.i(TAG, "Compiled " + index.count + " serials in " + (System.nanoTime() - started) / 1_000_000L + " ms");
+            }
+            return index;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param serial a serial such as SLUS-20946, in any case
+     * @return the listed game, or null when the list does not have the serial.
+     */
+    @Nullable
+    public Match find(@Nullable String serial) {
+        byte[] key = key(serial);
+        if (key == null) {
+            return null;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = HEADER_BYTES + mid * RECORD_BYTES;
+            int c = 0;
+            for (int i = 0; i < KEY_BYTES && c == 0; i++) {
+                c = Integer.compare(buffer.get(record + i) & 0xFF, key[i] & 0xFF);
+            }
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                int nameEn = buffer.getInt(record + KEY_BYTES + 4);
+                return new Match(string(buffer.getInt(record + KEY_BYTES)), nameEn >= 0 ? string(nameEn) : null,
+                        string(buffer.getInt(record + KEY_BYTES + 8)));
+            }
+        }
+        return null;
+    }
+
+    /** Upper-case ASCII, zero padded; null for serials that cannot be keys. */
+    @Nullable
+    private static byte[] key(@Nullable String serial) {
+        if (serial == null) {
+            return null;
+        }
+        byte[] bytes = serial.trim().toUpperCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length == 0 || bytes.length > KEY_BYTES) {
+            return null;
+        }
+        return Arrays.copyOf(bytes, KEY_BYTES);
+    }
+
+    private String string(int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(poolOffset + offset);
+        int length = view.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static GameIndex map(File file, long sourceLength, long sourceTime) {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(16) != sourceLength || buffer.getLong(24) != sourceTime) {
+                return null;
+            }
+            int count = buffer.getInt(8);
+            int poolOffset = buffer.getInt(12);
+            if (count < 0 || poolOffset != HEADER_BYTES + (long) count * RECORD_BYTES
+                    || poolOffset > buffer.capacity()) {
+                DebugLog.w(TAG, "Discarding malformed index " + file.getName());
+                return null;
+            }
+            return new GameIndex(buffer, count, poolOffset);
+        } catch (IOException | RuntimeException e) {
+            DebugLog.w(TAG, "Unable to map " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Record implements Comparable<Record> {
+        final byte[] key;
+        int name = -1;
+        int nameEn = -1;
+        int region = -1;
+
+        Record(byte[] key) {
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Record o) {
+            for (int i = 0; i < KEY_BYTES; i++) {
+                int c = Integer.compare(key[i] & 0xFF, o.key[i] & 0xFF);
+                if (c != 0) return c;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Parses the YAML list: each game is a top-level {@code SERIAL:} key followed by fields
+     * indented by two spaces, of which {@code name}, {@code name-en} and {@code region} are
+     * kept. Deeper levels (patches, fixes, speed hacks) are skipped, as are entries without a
+     * name. When a serial appears twice the later entry wins.
+     */
+    private static void compile(InputStream yaml, File out, long sourceLength, long sourceTime) throws IOException {
+        List<Record> records = new ArrayList<>(16384);
+        Pool pool = new Pool();
+        Record current = null;
+        BufferedReader br = new BufferedReader(new InputStreamReader(yaml, StandardCharsets.UTF_8), IO_BUFFER);
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            if (line.charAt(0) != ' ') {
+                int colon = line.indexOf(':');
+                byte[] key = colon > 0 ? key(line.substring(0, colon)) : null;
+                current = key != null ? new Record(key) : null;
+                if (current != null) records.add(current);
+            } else if (current != null && line.startsWith("  ") && line.length() > 2 && line.charAt(2) != ' ') {
+                String t = line.substring(2);
+                if (t.startsWith("name:")) {
+                    current.name = pool.add(valueOf(t));
+                } else if (t.startsWith("name-en:")) {
+                    current.nameEn = pool.add(valueOf(t));
+                } else if (t.startsWith("region:")) {
+                    current.region = pool.add(valueOf(t));
+                }
+            }
+        }
+        int empty = pool.add("");
+        // Stable, so of two equal keys the later one ends up last and is kept.
+        Collections.sort(records);
+        List<Record> unique = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            Record r = records.get(i);
+            if (i + 1 < records.size() && r.compareTo(records.get(i + 1)) == 0) continue;
+            if (r.name < 0) continue;
+            if (r.region < 0) r.region = empty;
+            unique.add(r);
+        }
+        File dir = out.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File tmp = new File(out.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(unique.size());
+            dos.writeInt(HEADER_BYTES + unique.size() * RECORD_BYTES);
+            dos.writeLong(sourceLength);
+            dos.writeLong(sourceTime);
+            for (Record r : unique) {
+                dos.write(r.key);
+                dos.writeInt(r.name);
+                dos.writeInt(r.nameEn);
+                dos.writeInt(r.region);
+            }
+            pool.writeTo(dos);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + out);
+        }
+    }
+
+    /**
+     * Value of a {@code key: value} line: double-quoted with backslash escapes, single-quoted
+     * with doubled quotes, or plain up to a comment.
+     */
+    private static String valueOf(String line) {
+        String v = line.substring(line.indexOf(':') + 1).trim();
+        if (v.startsWith("\"")) {
+            StringBuilder sb = new StringBuilder(v.length());
+            for (int i = 1; i < v.length(); i++) {
+                char c = v.charAt(i);
+                if (c == '"') break;
+                if (c == '\\' && i + 1 < v.length()) c = v.charAt(++i);
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+        if (v.startsWith("'")) {
+            StringBuilder sb = new StringBuilder(v.length());
+            for (int i = 1; i < v.length(); i++) {
+                char c = v.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < v.length() && v.charAt(i + 1) == '\'') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+        int comment = v.indexOf(" #");
+        return comment >= 0 ? v.substring(0, comment).trim() : v;
+    }
+
+    /** Deduplicated strings; offsets are relative to the start of the pool. */
+    private static final class Pool {
+        private final HashMap<String, Integer> offsets = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private int length;
+
+        int add(String s) {
+            Integer known = offsets.get(s);
+            if (known != null) return known;
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                bytes = Arrays.copyOf(bytes, 0xFFFF);
+            }
+            int offset = length;
+            offsets.put(s, offset);
+            strings.add(bytes);
+            length += 2 + bytes.length;
+            return offset;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (byte[] bytes : strings) {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-folder record of the game library, so the home grid can be drawn before the folder is
+ * listed again and rescans only re-read disc headers for files whose size or modification time
+ * changed. Stored as a small versioned binary file in the app's files directory; a file that
+ * does not match the folder, the version, or fails to parse is treated as empty.
+ */
+public final class LibraryIndex {
+    private static final String TAG = "LibraryIndex";
+    private static final int MAGIC = 0x41524C49; // "ARLI"
+    private static final int VERSION = 3;
+    /** Version 1 files lack fingerprints, versions before 3 digests; both are still read. */
+    private static final int MIN_VERSION = 1;
+    private static final int IO_BUFFER = 64 * 1024;
+    private static final Object FILE_LOCK = new Object();
+    private static final int MD5_BYTES = 16;
+
+    /** Redump lookup already ran for this file; do not hash it again until it changes. */
+    public static final int FLAG_REDUMP_CHECKED = 1;
+    /** Verify dump found every file of the dump, with the expected track count, in the list. */
+    public static final int FLAG_DUMP_VERIFIED = 2;
+    /** Verify dump found a file that is not listed, or a track count the list does not have. */
+    public static final int FLAG_DUMP_MISMATCH = 4;
+
+    public static final class Entry {
+        public final String documentId;
+        public final String displayName;
+        public final long size;
+        public final long lastModified;
+        @Nullable public final String serial;
+        @Nullable public final String title;
+        @Nullable public final String coverPath;
+        /** Lower-case extension without the dot, e.g. "iso" or "chd". */
+        public final String format;
+        /**
+         * Content fingerprint of the image, empty when it could not be taken and null when it was
+         * never tried.
+         */
+        @Nullable public final String fingerprint;
+        /** MD5 of the uncompressed image, when it was hashed for the Redump lookup. */
+        @Nullable public final byte[] md5;
+        /** Number of bytes {@link #md5} covers, or -1 without a digest. */
+        public final long md5Size;
+        public final int flags;
+
+        public Entry(String documentId, String displayName, long size, long lastModified,
+                     @Nullable String serial, @Nullable String title, @Nullable String coverPath,
+                     @Nullable String fingerprint, @Nullable byte[] md5, long md5Size, int flags) {
+            this.documentId = documentId;
+            this.displayName = displayName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.serial = serial;
+            this.title = title;
+            this.coverPath = coverPath;
+            this.format = formatOf(displayName);
+            this.fingerprint = fingerprint;
+            this.md5 = md5 != null && md5.length == MD5_BYTES ? md5 : null;
+            this.md5Size = this.md5 != null ? md5Size : -1;
+            this.flags = flags;
+        }
+
+        /**
+         * True when the listing reports the same file as when this entry was written. Providers
+         * that report no size never match; a missing modification time only needs the size.
+         */
+        public boolean matches(long size, long lastModified) {
+            return size >= 0 && this.size == size && this.lastModified == lastModified;
+        }
+
+        public boolean hasFlag(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final File file;
+    private final String treeKey;
+    private final List<Entry> entries;
+    private final HashMap<String, Entry> byDocumentId;
+
+    private LibraryIndex(File file, String treeKey, List<Entry> entries) {
+        this.file = file;
+        this.treeKey = treeKey;
+        this.entries = entries;
+        this.byDocumentId = new HashMap<>(entries.size() * 2);
+        for (Entry e : entries) {
+            byDocumentId.put(e.documentId, e);
+        }
+    }
+
+    /**
+     * Loads the index for {@code treeUri}. Never returns null.
+     */
+    public static LibraryIndex load(Context context, Uri treeUri) {
+        String treeKey = treeUri.toString();
+        File file = fileFor(context, treeKey);
+        List<Entry> entries = new ArrayList<>();
+        synchronized (FILE_LOCK) {
+            if (file.isFile()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER))) {
+                    entries = read(in, treeKey);
+                } catch (IOException | RuntimeException e) {
+                    DebugLog.w(TAG, "Discarding unreadable index " + file.getName() + ": " + e.getMessage());
+                    entries = new ArrayList<>();
+                }
+            }
+        }
+        return new LibraryIndex(file, treeKey, entries);
+    }
+
+    @Nullable
+    public synchronized Entry get(String documentId) {
+        return byDocumentId.get(documentId);
+    }
+
+    /**
+     * @return the entries in the order they were saved, which is the last scan's order.
+     */
+    public synchronized List<Entry> entries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized void replaceAll(List<Entry> replacement) {
+        entries.clear();
+        entries.addAll(replacement);
+        byDocumentId.clear();
+        for (Entry e : replacement) {
+            byDocumentId.put(e.documentId, e);
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file and renames it into place.
+     */
+    public void save() throws IOException {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries);
+        }
+        synchronized (FILE_LOCK) {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(treeKey);
+                out.writeInt(snapshot.size());
+                for (Entry e : snapshot) {
+                    out.writeUTF(e.documentId);
+                    out.writeUTF(e.displayName);
+                    out.writeLong(e.size);
+                    out.writeLong(e.lastModified);
+                    writeNullable(out, e.serial);
+                    writeNullable(out, e.title);
+                    writeNullable(out, e.coverPath);
+                    writeNullable(out, e.fingerprint);
+                    out.writeBoolean(e.md5 != null);
+                    if (e.md5 != null) {
+                        out.write(e.md5);
+                        out.writeLong(e.md5Size);
+                    }
+                    out.writeInt(e.flags);
+                }
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    private static List<Entry> read(DataInputStream in, String treeKey) throws IOException {
+        if (in.readInt() != MAGIC) {
+            return new ArrayList<>();
+        }
+        int version = in.readInt();
+        if (version < MIN_VERSION || version > VERSION || !treeKey.equals(in.readUTF())) {
+            return new ArrayList<>();
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative entry count");
+        }
+        List<Entry> entries = new ArrayList<>(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            String documentId = in.readUTF();
+            String displayName = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            String serial = readNullable(in);
+            String title = readNullable(in);
+            String coverPath = readNullable(in);
+            String fingerprint = version >= 2 ? readNullable(in) : null;
+            byte[] md5 = null;
+            long md5Size = -1;
+            if (version >= 3 && in.readBoolean()) {
+                md5 = new byte[MD5_BYTES];
+                in.readFully(md5);
+                md5Size = in.readLong();
+            }
+            int flags = in.readInt();
+            entries.add(new Entry(documentId, displayName, size, lastModified, serial, title, coverPath,
+                    fingerprint, md5, md5Size, flags));
+        }
+        if (in.read() != -1) {
+            throw new EOFException("Trailing data in index");
+        }
+        return entries;
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static File fileFor(Context context, String treeKey) {
+        File dir = new File(context.getFilesDir(), "library");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            DebugLog.w(TAG, "Unable to create " + dir);
+        }
+        return new File(dir, String.format(Locale.ROOT, "index_%08x.bin", treeKey.hashCode()));
+    }
+
+    private static String formatOf(String displayName) {
+        int dot = displayName.lastIndexOf('.');
+        return dot >= 0 ? displayName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
@@ -0,0 +1,260 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Watches a games folder and reports, on the main thread, that its contents changed.
+ *
+ * When the tree maps to a readable directory every directory down to the scan depth gets an
+ * inotify watch; files only count once they are closed after writing or moved in, so a copy in
+ * progress does not trigger a refresh until it completes. Otherwise a {@link ContentObserver}
+ * listens to the tree's provider, which only some providers notify for. Events are debounced so
+ * a batch of copies ends up as one refresh. Directories are listed and watched on a background
+ * thread, since walking a large tree on removable storage can take a while.
+ */
+public final class LibraryWatcher {
+    private static final String TAG = "LibraryWatcher";
+    /** A refresh runs once no event arrived for this long... */
+    private static final long QUIET_MS = 1500L;
+    /** ...or at the latest this long after the first pending event. */
+    private static final long MAX_DELAY_MS = 10_000L;
+    /** inotify watches are a per-user kernel resource; stop adding them past this many. */
+    private static final int MAX_WATCHES = 512;
+    private static final int FILE_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.MOVED_FROM | FileObserver.DELETE;
+    private static final int DIR_EVENTS = FileObserver.CREATE | FileObserver.MOVED_TO
+            | FileObserver.MOVED_FROM | FileObserver.DELETE;
+    private static final int SELF_EVENTS = FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+    /** inotify's IN_ISDIR, passed through in the event mask. */
+    private static final int IS_DIR = 0x40000000;
+    /** Owns {@link #fileObservers}; one thread keeps watch and unwatch requests in order. */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "LibraryWatcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public interface Listener {
+        /** Called on the main thread after a burst of changes has settled. */
+        void onLibraryChanged();
+    }
+
+    private final ContentResolver resolver;
+    private final Uri treeUri;
+    @Nullable private final File directRoot;
+    private final int maxDepth;
+    private final DocumentTreeWalker.Filter filter;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<FileObserver> fileObservers = new ArrayList<>();
+    @Nullable private ContentObserver contentObserver;
+    private final Runnable fire = this::fire;
+    private long firstPendingAt;
+    private volatile boolean started;
+    private volatile boolean rewatch;
+
+    public LibraryWatcher(ContentResolver resolver, Uri treeUri, @Nullable File directRoot, int maxDepth,
+                          DocumentTreeWalker.Filter filter, Listener listener) {
+        this.resolver = resolver;
+        this.treeUri = treeUri;
+        this.directRoot = directRoot;
+        this.maxDepth = maxDepth;
+        this.filter = filter;
+        this.listener = listener;
+    }
+
+    public Uri getTreeUri() {
+        return treeUri;
+    }
+
+    /**
+     * True when changes are picked up through inotify rather than provider notifications.
+     */
+    public boolean isDirect() {
+        return directRoot != null;
+    }
+
+    /** Must be called on the main thread. */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (directRoot != null) {
+            EXECUTOR.execute(this::watchDirectories);
+            return;
+        }
+        String rootId;
+        try {
+            rootId = DocumentsContract.getTreeDocumentId(treeUri);
+        } catch (RuntimeException e) {
+            DebugLog.w(TAG, "Not a document tree: " + treeUri);
+            return;
+        }
+        final String prefix = rootId;
+        contentObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, @Nullable Uri uri) {
+                if (uri == null || concerns(uri, prefix)) {
+                    schedule();
+                }
+            }
+        };
+        // Providers notify per-document URIs that are not under the tree URI, so listen to the
+        // whole authority and filter by document ID.
+        Uri authority = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(treeUri.getAuthority()).build();
+        try {
+            resolver.registerContentObserver(authority, true, contentObserver);
+        } catch (RuntimeException e) {
+            DebugLog.w(TAG, "Unable to observe " + treeUri + ": " + e.getMessage());
+            contentObserver = null;
+        }
+    }
+
+    /** Must be called on the main thread. */
+    public void stop() {
+        started = false;
+        handler.removeCallbacks(fire);
+        firstPendingAt = 0;
+        if (directRoot != null) {
+            EXECUTOR.execute(this::stopWatchingDirectories);
+        }
+        if (contentObserver != null) {
+            try {
+                resolver.unregisterContentObserver(contentObserver);
+            } catch (RuntimeException ignored) {
+            }
+            contentObserver = null;
+        }
+    }
+
+    /**
+     * Queues a refresh as if a change had been observed, e.g. when returning to the app with
+     * a provider that does not send notifications.
+     */
+    public void requestRefresh() {
+        schedule();
+    }
+
+    private void schedule() {
+        handler.post(() -> {
+            if (!started) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            if (firstPendingAt == 0) {
+                firstPendingAt = now;
+            }
+            handler.removeCallbacks(fire);
+            handler.postDelayed(fire, Math.max(0L, Math.min(QUIET_MS, firstPendingAt + MAX_DELAY_MS - now)));
+        });
+    }
+
+    private void fire() {
+        firstPendingAt = 0;
+        if (!started) {
+            return;
+        }
+        if (rewatch) {
+            rewatch = false;
+            EXECUTOR.execute(() -> {
+                stopWatchingDirectories();
+                watchDirectories();
+            });
+        }
+        listener.onLibraryChanged();
+    }
+
+    private static boolean concerns(Uri uri, String rootId) {
+        String id = null;
+        try {
+            id = DocumentsContract.getDocumentId(uri);
+        } catch (RuntimeException ignored) {
+        }
+        if (id == null) {
+            try {
+                id = DocumentsContract.getTreeDocumentId(uri);
+            } catch (RuntimeException ignored) {
+            }
+        }
+        return id == null || id.equals(rootId) || id.startsWith(rootId.endsWith("/") || rootId.endsWith(":") ? rootId : rootId + "/");
+    }
+
+    /** Runs on {@link #EXECUTOR}. */
+    private void watchDirectories() {
+        if (!started) {
+            return;
+        }
+        List<File> dirs = new ArrayList<>();
+        collectDirectories(directRoot, 0, dirs);
+        for (File dir : dirs) {
+            FileObserver observer = new DirectoryObserver(dir);
+            observer.startWatching();
+            fileObservers.add(observer);
+        }
+        DebugLog.d(TAG, "Watching " + dirs.size() + " directories under " + directRoot);
+    }
+
+    /** Runs on {@link #EXECUTOR}. */
+    private void stopWatchingDirectories() {
+        for (FileObserver observer : fileObservers) {
+            observer.stopWatching();
+        }
+        fileObservers.clear();
+    }
+
+    private void collectDirectories(File dir, int depth, List<File> out) {
+        if (out.size() >= MAX_WATCHES) {
+            return;
+        }
+        out.add(dir);
+        if (depth >= maxDepth) {
+            return;
+        }
+        File[] children = dir.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            collectDirectories(child, depth + 1, out);
+        }
+    }
+
+    private final class DirectoryObserver extends FileObserver {
+        @SuppressWarnings("deprecation")
+        DirectoryObserver(File dir) {
+            // The File overload needs API 29.
+            super(dir.getPath(), FILE_EVENTS | DIR_EVENTS | SELF_EVENTS);
+        }
+
+        @Override
+        public void onEvent(int event, @Nullable String path) {
+            if ((event & SELF_EVENTS) != 0) {
+                rewatch = true;
+                schedule();
+            } else if ((event & IS_DIR) != 0) {
+                if ((event & DIR_EVENTS) != 0) {
+                    rewatch = true;
+                    schedule();
+                }
+            } else if ((event & FILE_EVENTS) != 0 && filter.accept(path, null)) {
+                schedule();
+            }
+        }
+    }
+}
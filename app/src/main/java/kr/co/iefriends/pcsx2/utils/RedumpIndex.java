@@ -0,0 +1,368 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Redump hash list compiled from RedumpDatabase.yaml into a file that is memory mapped and
+ * binary searched, so lookups need neither parsing nor a heap copy of the list. The YAML is
+ * compiled the first time it is needed and again whenever its source changes.
+ *
+ * Layout, big-endian: a 40-byte header (magic, version, record count, string pool offset,
+ * source length, source time, size count), then records sorted by MD5 and size, each 16 bytes
+ * of MD5, an 8-byte size, the pool offsets of the serial and the name and the number of
+ * tracks the disc lists, then every distinct
+ * size in ascending order, then the string pool of length-prefixed UTF-8 strings. Instances
+ * are safe to use from several threads.
+ */
+public final class RedumpIndex {
+    private static final String TAG = "RedumpIndex";
+    private static final int MAGIC = 0x41525249; // "ARRI"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 40;
+    private static final int RECORD_BYTES = 36;
+    private static final int IO_BUFFER = 64 * 1024;
+    private static final Object COMPILE_LOCK = new Object();
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    public static final class Match {
+        public final String serial;
+        public final String name;
+        /** Number of hashed files the disc is listed with; more than one for CD audio tracks. */
+        public final int tracks;
+
+        Match(String serial, String name, int tracks) {
+            this.serial = serial;
+            this.name = name;
+            this.tracks = tracks;
+        }
+    }
+
+    /** Only read with absolute gets, or through duplicates, so it can be shared by threads. */
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int sizesOffset;
+    private final int sizeCount;
+    private final int poolOffset;
+
+    private RedumpIndex(ByteBuffer buffer, int count, int sizeCount, int poolOffset) {
+        this.buffer = buffer;
+        this.count = count;
+        this.sizesOffset = HEADER_BYTES + count * RECORD_BYTES;
+        this.sizeCount = sizeCount;
+        this.poolOffset = poolOffset;
+    }
+
+    /**
+     * Maps {@code indexFile}, compiling it from {@code source} first when it is missing, was
+     * written by another version or for a source with a different length or time.
+     *
+     * @param sourceLength length of the YAML, or -1 when the source cannot tell
+     * @param sourceTime modification time of the YAML, or of the app for the bundled copy
+     * @return the index, or null when it can neither be read nor compiled.
+     */
+    @Nullable
+    public static RedumpIndex load(File indexFile, long sourceLength, long sourceTime, Source source) {
+        synchronized (COMPILE_LOCK) {
+            RedumpIndex index = map(indexFile, sourceLength, sourceTime);
+            if (index != null) {
+                return index;
+            }
+            long started = System.nanoTime();
+            try (InputStream in = source.open()) {
+                compile(in, indexFile, sourceLength, sourceTime);
+            } catch (IOException | RuntimeException e) {
+                DebugLog.e(TAG, "Compiling the Redump list failed: " + e.getMessage());
+                return null;
+            }
+            index = map(indexFile, sourceLength, sourceTime);
+            if (index != null) {
+                DebugLog.i(TAG, "Compiled " + index.count + " hashes in " + (System.nanoTime() - started) / 1_000_000L + " ms");
+            }
+            return index;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * True when some listed disc is exactly {@code size} bytes. Images of any other size cannot
+     * match, so there is no point hashing them.
+     */
+    public boolean hasSize(long size) {
+        int low = 0;
+        int high = sizeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.getLong(sizesOffset + mid * 8);
+            if (value < size) {
+                low = mid + 1;
+            } else if (value > size) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param md5 the 16-byte digest of the image
+     * @return the disc with this hash and size, or null when the list has none.
+     */
+    @Nullable
+    public Match find(byte[] md5, long size) {
+        if (md5 == null || md5.length != 16) {
+            return null;
+        }
+        long hi = ByteBuffer.wrap(md5, 0, 8).getLong();
+        long lo = ByteBuffer.wrap(md5, 8, 8).getLong();
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = HEADER_BYTES + mid * RECORD_BYTES;
+            int c = Long.compareUnsigned(buffer.getLong(record), hi);
+            if (c == 0) c = Long.compareUnsigned(buffer.getLong(record + 8), lo);
+            if (c == 0) c = Long.compare(buffer.getLong(record + 16), size);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return new Match(string(buffer.getInt(record + 24)), string(buffer.getInt(record + 28)),
+                        buffer.getInt(record + 32));
+            }
+        }
+        return null;
+    }
+
+    private String string(int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(poolOffset + offset);
+        int length = view.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static RedumpIndex map(File file, long sourceLength, long sourceTime) {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(16) != sourceLength || buffer.getLong(24) != sourceTime) {
+                return null;
+            }
+            int count = buffer.getInt(8);
+            int poolOffset = buffer.getInt(12);
+            int sizeCount = buffer.getInt(32);
+            if (count < 0 || sizeCount < 0 || sizeCount > count
+                    || poolOffset != HEADER_BYTES + (long) count * RECORD_BYTES + sizeCount * 8L
+                    || poolOffset > buffer.capacity()) {
+                DebugLog.w(TAG, "Discarding malformed index " + file.getName());
+                return null;
+            }
+            return new RedumpIndex(buffer, count, sizeCount, poolOffset);
+        } catch (IOException | RuntimeException e) {
+            DebugLog.w(TAG, "Unable to map " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Record implements Comparable<Record> {
+        final long hi;
+        final long lo;
+        final long size;
+        final int serial;
+        final int name;
+        final int tracks;
+
+        Record(long hi, long lo, long size, int serial, int name, int tracks) {
+            this.hi = hi;
+            this.lo = lo;
+            this.size = size;
+            this.serial = serial;
+            this.name = name;
+            this.tracks = tracks;
+        }
+
+        @Override
+        public int compareTo(Record o) {
+            int c = Long.compareUnsigned(hi, o.hi);
+            if (c == 0) c = Long.compareUnsigned(lo, o.lo);
+            return c != 0 ? c : Long.compare(size, o.size);
+        }
+    }
+
+    /**
+     * Parses the YAML list: entries start with {@code - hashes:}, followed by {@code md5} and
+     * {@code size} pairs, then the entry's {@code name} and {@code serial}. Entries without a
+     * serial are skipped; when a hash appears twice the later entry wins.
+     */
+    private static void compile(InputStream yaml, File out, long sourceLength, long sourceTime) throws IOException {
+        List<Record> records = new ArrayList<>(16384);
+        Pool pool = new Pool();
+        List<long[]> hashes = new ArrayList<>(); // each {hi, lo, size}
+        String serial = null;
+        String name = null;
+        String pendingMd5 = null;
+        BufferedReader br = new BufferedReader(new InputStreamReader(yaml, StandardCharsets.UTF_8), IO_BUFFER);
+        String line;
+        while ((line = br.readLine()) != null) {
+            String t = line.trim();
+            if (t.isEmpty() || t.startsWith("#")) continue;
+            if (t.startsWith("- hashes:")) {
+                addEntry(records, pool, hashes, serial, name);
+                hashes.clear();
+                serial = null;
+                name = null;
+                pendingMd5 = null;
+            } else if (t.startsWith("- md5:") || t.startsWith("md5:")) {
+                pendingMd5 = valueOf(t);
+            } else if (t.startsWith("size:")) {
+                long[] hash = pendingMd5 != null ? parseHash(pendingMd5, valueOf(t)) : null;
+                if (hash != null) hashes.add(hash);
+                pendingMd5 = null;
+            } else if (t.startsWith("serial:")) {
+                serial = valueOf(t);
+            } else if (t.startsWith("name:")) {
+                name = valueOf(t);
+            }
+        }
+        addEntry(records, pool, hashes, serial, name);
+        // Stable, so of two equal keys the later one ends up last and is kept.
+        Collections.sort(records);
+        List<Record> unique = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (i + 1 < records.size() && records.get(i).compareTo(records.get(i + 1)) == 0) continue;
+            unique.add(records.get(i));
+        }
+        long[] sizes = new long[unique.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = unique.get(i).size;
+        }
+        Arrays.sort(sizes);
+        int sizeCount = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (i == 0 || sizes[i] != sizes[i - 1]) sizes[sizeCount++] = sizes[i];
+        }
+        File dir = out.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File tmp = new File(out.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(unique.size());
+            dos.writeInt(HEADER_BYTES + unique.size() * RECORD_BYTES + sizeCount * 8);
+            dos.writeLong(sourceLength);
+            dos.writeLong(sourceTime);
+            dos.writeInt(sizeCount);
+            dos.writeInt(0);
+            for (Record r : unique) {
+                dos.writeLong(r.hi);
+                dos.writeLong(r.lo);
+                dos.writeLong(r.size);
+                dos.writeInt(r.serial);
+                dos.writeInt(r.name);
+                dos.writeInt(r.tracks);
+            }
+            for (int i = 0; i < sizeCount; i++) {
+                dos.writeLong(sizes[i]);
+            }
+            pool.writeTo(dos);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + out);
+        }
+    }
+
+    private static void addEntry(List<Record> records, Pool pool, List<long[]> hashes,
+                                 @Nullable String serial, @Nullable String name) {
+        if (serial == null || hashes.isEmpty()) return;
+        int serialOffset = pool.add(serial);
+        int nameOffset = pool.add(name != null ? name : serial);
+        for (long[] h : hashes) {
+            records.add(new Record(h[0], h[1], h[2], serialOffset, nameOffset, hashes.size()));
+        }
+    }
+
+    private static String valueOf(String line) {
+        return line.substring(line.indexOf(':') + 1).trim();
+    }
+
+    @Nullable
+    private static long[] parseHash(String md5, String size) {
+        String hex = md5.toLowerCase(Locale.ROOT);
+        if (hex.length() != 32) return null;
+        try {
+            return new long[]{Long.parseUnsignedLong(hex.substring(0, 16), 16),
+                    Long.parseUnsignedLong(hex.substring(16), 16), Long.parseLong(size)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Deduplicated strings; offsets are relative to the start of the pool. */
+    private static final class Pool {
+        private final HashMap<String, Integer> offsets = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private int length;
+
+        int add(String s) {
+            Integer known = offsets.get(s);
+            if (known != null) return known;
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                bytes = Arrays.copyOf(bytes, 0xFFFF);
+            }
+            int offset = length;
+            offsets.put(s, offset);
+            strings.add(bytes);
+            length += 2 + bytes.length;
+            return offset;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (byte[] bytes : strings) {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
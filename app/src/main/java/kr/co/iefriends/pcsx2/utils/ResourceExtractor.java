@@ -0,0 +1,380 @@
+package kr.co.iefriends.pcsx2.utils;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Extracts the bundled "resources" assets into the data root, skipping files that are
+ * already up to date according to a manifest keyed by the installed APK version.
+ */
+public final class ResourceExtractor {
+    private static final String TAG = "ResourceExtractor";
+    private static final String ASSET_ROOT = "resources";
+    private static final String MANIFEST_NAME = ".asset_manifest.json";
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_VERSION = "apkVersion";
+    private static final String KEY_FILES = "files";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_CRC = "crc";
+    private static final int MANIFEST_FORMAT = 1;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final Object LOCK = new Object();
+    private static final Object LATCH_LOCK = new Object();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ResourceExtract");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+
+    private static volatile CountDownLatch sReady = new CountDownLatch(0);
+
+    private ResourceExtractor() {
+    }
+
+    /**
+     * Starts extraction on a background thread. Callers that need the files on disk
+     * (VM boot, native resource lookups) should block on {@link #awaitReady(long)}.
+     */
+    public static void extractAsync(Context context) {
+        if (context == null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        CountDownLatch latch;
+        synchronized (LATCH_LOCK) {
+            if (sReady.getCount() > 0) {
+                return;
+            }
+            latch = new CountDownLatch(1);
+            sReady = latch;
+        }
+        EXECUTOR.execute(() -> {
+            try {
+                extractBlocking(appContext);
+            } finally {
+                latch.countDown();
+            }
+        });
+    }
+
+    /**
+     * Waits until a pending {@link #extractAsync(Context)} run has finished.
+     *
+     * @return true when no extraction is in flight anymore.
+     */
+    public static boolean awaitReady(long timeoutMs) {
+        CountDownLatch latch = sReady;
+        if (latch.getCount() == 0) {
+            return true;
+        }
+        try {
+            return latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return latch.getCount() == 0;
+        }
+    }
+
+    public static boolean isReady() {
+        return sReady.getCount() == 0;
+    }
+
+    /**
+     * Synchronously brings the extracted resources in the current data root up to date.
+     */
+    public static void extractBlocking(Context context) {
+        if (context == null) {
+            return;
+        }
+        synchronized (LOCK) {
+            long start = SystemClock.elapsedRealtime();
+            File destRoot = new File(DataDirectoryManager.getDataRoot(context), ASSET_ROOT);
+            File manifestFile = new File(destRoot, MANIFEST_NAME);
+            String apkVersion = resolveApkVersion(context);
+            JSONObject manifest = readManifest(manifestFile);
+            JSONObject files = manifest != null ? manifest.optJSONObject(KEY_FILES) : null;
+            boolean sameVersion = manifest != null && files != null
+                    && manifest.optInt(KEY_FORMAT, 0) == MANIFEST_FORMAT
+                    && apkVersion.equals(manifest.optString(KEY_VERSION, null));
+            Stats stats = new Stats();
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            if (sameVersion) {
+                if (verifyFastPath(context, destRoot, files, "", buffer, stats)) {
+                    try { DebugLog.i(TAG, "Resources up to date (" + stats.skipped + " files, restored " + stats.copied + ") in " + (SystemClock.elapsedRealtime() - start) + " ms"); } catch (Throwable ignored) {}
+                    return;
+                }
+            }
+            JSONObject newFiles = new JSONObject();
+            try {
+                extractTree(context.getAssets(), ASSET_ROOT, destRoot, files, newFiles, buffer, stats);
+            } catch (IOException e) {
+                try { DebugLog.e(TAG, "Asset extraction failed: " + e.getMessage()); } catch (Throwable ignored) {}
+                return;
+            }
+            if (stats.failed == 0) {
+                writeManifest(manifestFile, apkVersion, newFiles);
+            }
+            try { DebugLog.i(TAG, "Extracted resources for " + apkVersion + ": copied " + stats.copied + ", skipped " + stats.skipped + ", failed " + stats.failed + " in " + (SystemClock.elapsedRealtime() - start) + " ms"); } catch (Throwable ignored) {}
+        }
+    }
+
+    /**
+     * Checks the extracted files under {@code relativePath} (a directory below the resources
+     * root, or empty for all of them) against the manifest of the last extraction, restoring
+     * any that are missing or have the wrong size.
+     *
+     * @return false when the manifest is missing, was written for another APK, lists no files
+     * under {@code relativePath} or a file could not be restored; the caller should then copy
+     * the directory from the APK itself.
+     */
+    public static boolean ensureExtracted(Context context, String relativePath) {
+        if (context == null) {
+            return false;
+        }
+        synchronized (LOCK) {
+            File destRoot = new File(DataDirectoryManager.getDataRoot(context), ASSET_ROOT);
+            JSONObject manifest = readManifest(new File(destRoot, MANIFEST_NAME));
+            JSONObject files = manifest != null ? manifest.optJSONObject(KEY_FILES) : null;
+            if (files == null || manifest.optInt(KEY_FORMAT, 0) != MANIFEST_FORMAT
+                    || !resolveApkVersion(context).equals(manifest.optString(KEY_VERSION, null))) {
+                return false;
+            }
+            String prefix = relativePath == null || relativePath.isEmpty() ? "" : relativePath + "/";
+            Stats stats = new Stats();
+            if (!verifyFastPath(context, destRoot, files, prefix, new byte[COPY_BUFFER_SIZE], stats)) {
+                return false;
+            }
+            if (stats.copied > 0) {
+                try { DebugLog.i(TAG, "Restored " + stats.copied + " missing resources under " + relativePath); } catch (Throwable ignored) {}
+            }
+            return stats.skipped + stats.copied > 0;
+        }
+    }
+
+    /**
+     * Same APK as the last run: only make sure every recorded file whose path starts with
+     * {@code prefix} is still present with the recorded size, restoring individual files from
+     * the APK if they went missing.
+     */
+    private static boolean verifyFastPath(Context context, File destRoot, JSONObject files, String prefix,
+                                          byte[] buffer, Stats stats) {
+        AssetManager assets = context.getAssets();
+        Iterator<String> keys = files.keys();
+        while (keys.hasNext()) {
+            String relative = keys.next();
+            if (!relative.startsWith(prefix)) {
+                continue;
+            }
+            JSONObject entry = files.optJSONObject(relative);
+            if (entry == null) {
+                return false;
+            }
+            File dest = new File(destRoot, relative);
+            if (dest.isFile() && dest.length() == entry.optLong(KEY_SIZE, -1)) {
+                stats.skipped++;
+                continue;
+            }
+            if (copyAsset(assets, ASSET_ROOT + "/" + relative, dest, buffer) < 0) {
+                return false;
+            }
+            stats.copied++;
+        }
+        return true;
+    }
+
+    private static void extractTree(AssetManager assets, String assetPath, File destRoot,
+                                    @Nullable JSONObject oldFiles, JSONObject newFiles,
+                                    byte[] buffer, Stats stats) throws IOException {
+        String[] children = assets.list(assetPath);
+        if (children == null) {
+            return;
+        }
+        if (children.length == 0) {
+            String relative = assetPath.length() > ASSET_ROOT.length() ? assetPath.substring(ASSET_ROOT.length() + 1) : assetPath;
+            extractFile(assets, assetPath, relative, new File(destRoot, relative), oldFiles, newFiles, buffer, stats);
+            return;
+        }
+        for (String child : children) {
+            extractTree(assets, assetPath + "/" + child, destRoot, oldFiles, newFiles, buffer, stats);
+        }
+    }
+
+    private static void extractFile(AssetManager assets, String assetPath, String relative, File dest,
+                                    @Nullable JSONObject oldFiles, JSONObject newFiles,
+                                    byte[] buffer, Stats stats) {
+        long[] sizeAndCrc;
+        try {
+            sizeAndCrc = checksumAsset(assets, assetPath, buffer);
+        } catch (IOException e) {
+            try { DebugLog.e(TAG, "Failed to read asset " + assetPath + ": " + e.getMessage()); } catch (Throwable ignored) {}
+            stats.failed++;
+            return;
+        }
+        JSONObject previous = oldFiles != null ? oldFiles.optJSONObject(relative) : null;
+        boolean copy;
+        if (!dest.isFile()) {
+            copy = true;
+        } else if (previous != null) {
+            // The APK shipped a different file than the one we extracted last time.
+            copy = previous.optLong(KEY_SIZE, -1) != sizeAndCrc[0] || previous.optLong(KEY_CRC, -1) != sizeAndCrc[1];
+        } else if (relative.startsWith("shaders")) {
+            // No record yet: shaders were always refreshed, so compare the on-disk copy.
+            copy = dest.length() != sizeAndCrc[0] || checksumFile(dest, buffer) != sizeAndCrc[1];
+        } else {
+            copy = false;
+        }
+        if (copy) {
+            long written = copyAsset(assets, assetPath, dest, buffer);
+            if (written != sizeAndCrc[0]) {
+                stats.failed++;
+                return;
+            }
+            stats.copied++;
+        } else {
+            stats.skipped++;
+        }
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put(KEY_SIZE, sizeAndCrc[0]);
+            entry.put(KEY_CRC, sizeAndCrc[1]);
+            newFiles.put(relative, entry);
+        } catch (JSONException ignored) {
+        }
+    }
+
+    private static long[] checksumAsset(AssetManager assets, String assetPath, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = assets.open(assetPath, AssetManager.ACCESS_STREAMING)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new long[]{size, crc.getValue()};
+    }
+
+    private static long checksumFile(File file, byte[] buffer) {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Copies through a temporary file so an interrupted run never leaves a truncated
+     * resource behind that the fast path would then accept.
+     */
+    private static long copyAsset(AssetManager assets, String assetPath, File dest, byte[] buffer) {
+        File parent = dest.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            try { DebugLog.e(TAG, "Failed to create parent for asset: " + parent); } catch (Throwable ignored) {}
+            return -1;
+        }
+        File temp = new File(parent, dest.getName() + ".tmp");
+        long total = 0;
+        try (InputStream in = assets.open(assetPath, AssetManager.ACCESS_STREAMING);
+             FileOutputStream out = new FileOutputStream(temp)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            out.flush();
+        } catch (IOException e) {
+            try { DebugLog.e(TAG, "Failed to copy asset " + assetPath + " -> " + dest + ": " + e.getMessage()); } catch (Throwable ignored) {}
+            temp.delete();
+            return -1;
+        }
+        if (!temp.renameTo(dest)) {
+            dest.delete();
+            if (!temp.renameTo(dest)) {
+                temp.delete();
+                return -1;
+            }
+        }
+        return total;
+    }
+
+    private static String resolveApkVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            long code = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? info.getLongVersionCode() : info.versionCode;
+            // lastUpdateTime catches reinstalls of development builds that keep the same version code.
+            return code + ":" + info.lastUpdateTime;
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    @Nullable
+    private static JSONObject readManifest(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(bos.toByteArray(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void writeManifest(File file, String apkVersion, JSONObject files) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file, false))) {
+            JSONObject root = new JSONObject();
+            root.put(KEY_FORMAT, MANIFEST_FORMAT);
+            root.put(KEY_VERSION, apkVersion);
+            root.put(KEY_FILES, files);
+            out.write(root.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException | JSONException e) {
+            try { DebugLog.e(TAG, "Failed to write asset manifest: " + e.getMessage()); } catch (Throwable ignored) {}
+        }
+    }
+
+    private static final class Stats {
+        int copied;
+        int skipped;
+        int failed;
+    }
+}